@@ -0,0 +1,77 @@
+package avalor.flightcenter.benchmark;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.service.impl.MapServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the map colors: the legacy string matrix ({@link MapServiceImpl#getColors}) against the palette
+ * snapshot, both after a tick changed a few cells so no cached copy can be reused.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class ColorsBenchmark {
+    // Cells recolored per tick, about what a small fleet changes
+    private static final int CHANGED_CELLS = 32;
+
+    @Param({"64", "256", "1024", "4096"})
+    public int gridSize;
+
+    private MapServiceImpl mapService;
+    private int[] cells;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        NavigationGrid grid = MapGenerator.grid(gridSize, gridSize, MapGenerator.DEFAULT_SEED);
+        mapService = new MapServiceImpl();
+        mapService.init(grid);
+        cells = MapGenerator.cells(grid.size(), 1 << 16, MapGenerator.DEFAULT_SEED + 5);
+        // Start from a map that is a third colored
+        int[] colored = MapGenerator.cells(grid.size(), grid.size() / 3, MapGenerator.DEFAULT_SEED + 6);
+        for (int cell : colored) {
+            mapService.setColor(cell % gridSize, cell / gridSize, 3 + cell % 7);
+        }
+        mapService.publishChanges();
+    }
+
+    @Benchmark
+    public List<List<String>> getColors() {
+        simulateTick();
+        return mapService.getColors();
+    }
+
+    @Benchmark
+    public byte[] getColorSnapshot() {
+        simulateTick();
+        // Snapshots join their color chunks on first read
+        return mapService.getColorSnapshot().getColors();
+    }
+
+    private void simulateTick() {
+        for (int i = 0; i < CHANGED_CELLS; i++) {
+            int cell = cells[next];
+            next = (next + 1) & (cells.length - 1);
+            mapService.setColor(cell % gridSize, cell / gridSize, 3 + (next & 7));
+        }
+        mapService.publishChanges();
+    }
+}
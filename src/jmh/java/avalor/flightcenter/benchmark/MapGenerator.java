@@ -0,0 +1,85 @@
+package avalor.flightcenter.benchmark;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible map generators for the benchmarks: the same size and seed always give the same map.
+ * <p>
+ * Values are 0..9 like the sample maps, laid out as smooth hills (sums of a few coarse random fields)
+ * so valuable cells cluster the way they do on real terrain, instead of uniform noise.
+ */
+public final class MapGenerator {
+    public static final long DEFAULT_SEED = 0x5eed_f11e_c7e2L;
+    public static final int MAX_VALUE = 9;
+
+    private MapGenerator() {
+    }
+
+    public static int[] values(int width, int height, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] values = new int[width * height];
+        // Three octaves of bilinear value noise, 8, 32 and 128 cells apart
+        int[] spacings = {8, 32, 128};
+        int[] weights = {1, 2, 4};
+        int weightSum = 7;
+        for (int octave = 0; octave < spacings.length; octave++) {
+            int spacing = spacings[octave];
+            int lw = width / spacing + 2;
+            int lh = height / spacing + 2;
+            int[] lattice = new int[lw * lh];
+            for (int i = 0; i < lattice.length; i++) {
+                lattice[i] = random.nextInt(MAX_VALUE + 1);
+            }
+            for (int y = 0; y < height; y++) {
+                int ly = y / spacing;
+                int fy = y % spacing;
+                for (int x = 0; x < width; x++) {
+                    int lx = x / spacing;
+                    int fx = x % spacing;
+                    int top = lattice[ly * lw + lx] * (spacing - fx) + lattice[ly * lw + lx + 1] * fx;
+                    int bottom = lattice[(ly + 1) * lw + lx] * (spacing - fx) + lattice[(ly + 1) * lw + lx + 1] * fx;
+                    values[y * width + x] += weights[octave] * (top * (spacing - fy) + bottom * fy) / (spacing * spacing);
+                }
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.min(MAX_VALUE, (values[i] + random.nextInt(weightSum)) / weightSum);
+        }
+        return values;
+    }
+
+    public static NavigationGrid grid(int width, int height, long seed) {
+        return new NavigationGrid(width, height, values(width, height, seed));
+    }
+
+    /**
+     * The map as an uploaded text file: one row per line, values separated by single spaces.
+     */
+    public static byte[] matrixText(int width, int height, long seed) {
+        int[] values = values(width, height, seed);
+        StringBuilder text = new StringBuilder(values.length * 2);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x > 0) text.append(' ');
+                text.append(values[y * width + x]);
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Cell indices picked uniformly at random, with repeats.
+     */
+    public static int[] cells(int size, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] cells = new int[count];
+        for (int i = 0; i < count; i++) {
+            cells[i] = random.nextInt(size);
+        }
+        return cells;
+    }
+}
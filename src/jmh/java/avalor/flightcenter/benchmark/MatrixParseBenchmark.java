@@ -0,0 +1,47 @@
+package avalor.flightcenter.benchmark;
+
+import avalor.flightcenter.utils.MatrixParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of an uploaded text map, as done by the map upload ({@link MatrixParser#parse}), from memory
+ * so disk and network are left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MatrixParseBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int gridSize;
+
+    private byte[] text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = MapGenerator.matrixText(gridSize, gridSize, MapGenerator.DEFAULT_SEED);
+    }
+
+    @Benchmark
+    public MatrixParser.ParsedMatrix parse() throws IOException {
+        return MatrixParser.parse(new ByteArrayInputStream(text), text.length);
+    }
+}
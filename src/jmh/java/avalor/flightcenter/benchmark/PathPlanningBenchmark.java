@@ -0,0 +1,81 @@
+package avalor.flightcenter.benchmark;
+
+import avalor.flightcenter.calculator.ClusterGraph;
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.calculator.PathPlanner;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PathCalculator#calculatePath} between random cell pairs on an empty sky.
+ * The pairs cycle, so every invocation plans a different route of the same fixed set.
+ * <p>
+ * {@link #calculatePathOverClusters} plans the same pairs over a cluster graph; long routes then only get their
+ * first stretches, as drones do in the simulation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class PathPlanningBenchmark {
+    private static final int PAIRS = 256;
+
+    @Param({"64", "256", "1024", "4096"})
+    public int gridSize;
+
+    @Param({PathCalculator.ASTAR_PLANNER, PathCalculator.JPS_PLANNER})
+    public String planner;
+
+    private NavigationGrid grid;
+    private PathPlanner pathPlanner;
+    private ClusterGraph clusterGraph;
+    private Position[] starts;
+    private Position[] goals;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        grid = MapGenerator.grid(gridSize, gridSize, MapGenerator.DEFAULT_SEED);
+        pathPlanner = PathCalculator.createPlanner(planner);
+        clusterGraph = ClusterGraph.create(grid, 32);
+        int[] startCells = MapGenerator.cells(grid.size(), PAIRS, MapGenerator.DEFAULT_SEED + 1);
+        int[] goalCells = MapGenerator.cells(grid.size(), PAIRS, MapGenerator.DEFAULT_SEED + 2);
+        starts = new Position[PAIRS];
+        goals = new Position[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            starts[i] = grid.positionAt(startCells[i]);
+            goals[i] = grid.positionAt(goalCells[i]);
+        }
+    }
+
+    @Benchmark
+    public List<Position> calculatePath() {
+        int i = next;
+        next = (i + 1) % PAIRS;
+        return PathCalculator.calculatePath(starts[i], goals[i], grid, pathPlanner);
+    }
+
+    @Benchmark
+    public int[] calculatePathOverClusters() {
+        int i = next;
+        next = (i + 1) % PAIRS;
+        return PathCalculator.calculatePathCells(starts[i], goals[i], grid, pathPlanner, clusterGraph, null);
+    }
+}
@@ -0,0 +1,73 @@
+package avalor.flightcenter.benchmark;
+
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.calculator.TargetIndex;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PathCalculator#getClosestTarget} from random positions, with part of the map already visited.
+ * Visiting removes the most valuable cells first, as the simulation does, so later queries fall through
+ * to lower value tiers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class TargetSelectionBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"64", "256", "1024", "4096"})
+    public int gridSize;
+
+    @Param({"0", "50", "90"})
+    public int visitedPercent;
+
+    private NavigationGrid grid;
+    private TargetIndex targetIndex;
+    private Position[] positions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        grid = MapGenerator.grid(gridSize, gridSize, MapGenerator.DEFAULT_SEED);
+        targetIndex = new TargetIndex(grid);
+        int toVisit = (int) ((long) grid.size() * visitedPercent / 100);
+        for (int value = MapGenerator.MAX_VALUE; value >= 0 && toVisit > 0; value--) {
+            for (int cell = 0; cell < grid.size() && toVisit > 0; cell++) {
+                if (grid.getValue(cell) == value) {
+                    targetIndex.remove(cell);
+                    toVisit--;
+                }
+            }
+        }
+        int[] cells = MapGenerator.cells(grid.size(), QUERIES, MapGenerator.DEFAULT_SEED + 3);
+        positions = new Position[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            positions[i] = grid.positionAt(cells[i]);
+        }
+    }
+
+    @Benchmark
+    public Position getClosestTarget() {
+        int i = next;
+        next = (i + 1) % QUERIES;
+        return PathCalculator.getClosestTarget(positions[i], grid, targetIndex, null);
+    }
+}
@@ -0,0 +1,86 @@
+package avalor.flightcenter.benchmark;
+
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.service.SimulationMetrics;
+import avalor.flightcenter.service.impl.MapServiceImpl;
+import avalor.flightcenter.service.impl.PathServiceImpl;
+import avalor.flightcenter.utils.SimulationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulation tick, {@link PathServiceImpl#run()}, of a fleet spread over the map.
+ * <p>
+ * The simulation keeps going across invocations, so the numbers average over the whole coverage run
+ * (planning, moving, restarting once every cell is visited) rather than a single state. The session clock is
+ * stopped; the benchmark thread drives the ticks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class TickBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int gridSize;
+
+    @Param({"1", "16", "256"})
+    public int fleetSize;
+
+    @Param({PathCalculator.ASTAR_PLANNER})
+    public String planner;
+
+    // 0 plans every route on the grid
+    @Param({"0", "32"})
+    public int clusterSize;
+
+    private ForkJoinPool tickPool;
+    private PathServiceImpl pathService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        NavigationGrid grid = MapGenerator.grid(gridSize, gridSize, MapGenerator.DEFAULT_SEED);
+        tickPool = new ForkJoinPool();
+        // Every tick is run by the benchmark; init() starts nothing that could tick on its own
+        SimulationClock clock = SimulationClock.manual(SimulationClock.Mode.REALTIME);
+        MapServiceImpl mapService = new MapServiceImpl();
+        mapService.init(grid);
+        pathService = new PathServiceImpl(ThreadLocal.withInitial(() -> PathCalculator.createPlanner(planner)), tickPool,
+                fleetSize, 262144, 16, clusterSize, 16, null, clock, new SimulationMetrics(new SimpleMeterRegistry()));
+        pathService.setMapService(mapService);
+        pathService.init(grid);
+        int[] cells = MapGenerator.cells(grid.size(), fleetSize, MapGenerator.DEFAULT_SEED + 4);
+        for (int i = 0; i < fleetSize; i++) {
+            pathService.addDrone("drone-" + i, grid.positionAt(cells[i]));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pathService.shutdown();
+        tickPool.shutdownNow();
+    }
+
+    @Benchmark
+    public void tick() {
+        pathService.run();
+    }
+}
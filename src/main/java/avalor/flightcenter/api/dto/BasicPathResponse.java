@@ -5,12 +5,14 @@ import java.util.List;
 public class BasicPathResponse {
     private String droneName;
     private List<PositionDTO> positions;
+    private long version;
 
     public BasicPathResponse() {}
 
-    public BasicPathResponse(String droneName, List<PositionDTO> positions) {
+    public BasicPathResponse(String droneName, List<PositionDTO> positions, long version) {
         this.droneName = droneName;
         this.positions = positions;
+        this.version = version;
     }
 
     public String getDroneName() {
@@ -28,4 +30,12 @@ public class BasicPathResponse {
     public void setPositions(List<PositionDTO> positions) {
         this.positions = positions;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
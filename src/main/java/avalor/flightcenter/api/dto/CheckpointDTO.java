@@ -0,0 +1,39 @@
+package avalor.flightcenter.api.dto;
+
+public class CheckpointDTO {
+    private String sessionId;
+    private long sizeBytes;
+    private long durationMillis;
+
+    public CheckpointDTO() {}
+
+    public CheckpointDTO(String sessionId, long sizeBytes, long durationMillis) {
+        this.sessionId = sessionId;
+        this.sizeBytes = sizeBytes;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package avalor.flightcenter.api.dto;
+
+public class DroneWaypointDTO {
+    private String droneName;
+    private boolean accepted;
+    private PositionDTO nextWaypoint; // null while the drone has no route
+
+    public DroneWaypointDTO() {}
+
+    public String getDroneName() {
+        return droneName;
+    }
+
+    public void setDroneName(String droneName) {
+        this.droneName = droneName;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(boolean accepted) {
+        this.accepted = accepted;
+    }
+
+    public PositionDTO getNextWaypoint() {
+        return nextWaypoint;
+    }
+
+    public void setNextWaypoint(PositionDTO nextWaypoint) {
+        this.nextWaypoint = nextWaypoint;
+    }
+}
@@ -0,0 +1,72 @@
+package avalor.flightcenter.api.dto;
+
+import java.util.List;
+
+public class HistoryPathResponse {
+    private String droneName;
+    private long from;
+    private long total;
+    private long firstAvailable;
+    private long travelledPathValue;
+    private List<PositionDTO> positions;
+
+    public HistoryPathResponse() {}
+
+    public HistoryPathResponse(String droneName, long from, long total, long firstAvailable, long travelledPathValue,
+                               List<PositionDTO> positions) {
+        this.droneName = droneName;
+        this.from = from;
+        this.total = total;
+        this.firstAvailable = firstAvailable;
+        this.travelledPathValue = travelledPathValue;
+        this.positions = positions;
+    }
+
+    public String getDroneName() {
+        return droneName;
+    }
+
+    public void setDroneName(String droneName) {
+        this.droneName = droneName;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public void setFrom(long from) {
+        this.from = from;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getFirstAvailable() {
+        return firstAvailable;
+    }
+
+    public void setFirstAvailable(long firstAvailable) {
+        this.firstAvailable = firstAvailable;
+    }
+
+    public long getTravelledPathValue() {
+        return travelledPathValue;
+    }
+
+    public void setTravelledPathValue(long travelledPathValue) {
+        this.travelledPathValue = travelledPathValue;
+    }
+
+    public List<PositionDTO> getPositions() {
+        return positions;
+    }
+
+    public void setPositions(List<PositionDTO> positions) {
+        this.positions = positions;
+    }
+}
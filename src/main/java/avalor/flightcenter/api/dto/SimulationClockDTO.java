@@ -0,0 +1,105 @@
+package avalor.flightcenter.api.dto;
+
+public class SimulationClockDTO {
+    private String mode;
+    private long periodMillis;
+    private double speed;
+    private boolean running;
+    private long ticks;
+    private long overruns;
+    private long elapsedNanos;
+    private double ticksPerSecond;
+    private long lastTickNanos;
+    private long meanTickNanos;
+    private long maxTickNanos;
+
+    public SimulationClockDTO() {}
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public void setPeriodMillis(long periodMillis) {
+        this.periodMillis = periodMillis;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public void setTicks(long ticks) {
+        this.ticks = ticks;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public void setOverruns(long overruns) {
+        this.overruns = overruns;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public void setTicksPerSecond(double ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public void setLastTickNanos(long lastTickNanos) {
+        this.lastTickNanos = lastTickNanos;
+    }
+
+    public long getMeanTickNanos() {
+        return meanTickNanos;
+    }
+
+    public void setMeanTickNanos(long meanTickNanos) {
+        this.meanTickNanos = meanTickNanos;
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public void setMaxTickNanos(long maxTickNanos) {
+        this.maxTickNanos = maxTickNanos;
+    }
+}
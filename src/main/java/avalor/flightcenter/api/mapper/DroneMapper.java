@@ -23,11 +23,12 @@ public interface DroneMapper {
 
     // DTO -> Domain
     @Mappings({
+            @Mapping(target = "id", ignore = true),
             @Mapping(target = "name", source = "name"),
             @Mapping(target = "currentPosition", source = "currentLocation"),
             @Mapping(target = "targetPosition", source = "targetLocation"),
             @Mapping(target = "targetPath", ignore = true),
-            @Mapping(target = "historyPath", ignore = true)
+            @Mapping(target = "history", ignore = true)
     })
     Drone toDomain(DroneDTO dto);
 
@@ -15,12 +15,11 @@ public interface PositionMapper {
     @Mapping(target = "value", source = "value")
     PositionDTO toDto(Position position);
 
-    // DTO -> Domain: we don't have value/decay/occupied in DTO; initialize value to 0
+    // DTO -> Domain: we don't have decay in DTO; it starts at 0
     @Mapping(target = "posX", source = "x")
     @Mapping(target = "posY", source = "y")
     @Mapping(target = "value", source = "value")
     @Mapping(target = "decay", ignore = true)
-    @Mapping(target = "occupied", ignore = true)
     Position toDomain(PositionDTO dto);
 
     List<PositionDTO> toDtoList(List<Position> positions);
@@ -0,0 +1,11 @@
+package avalor.flightcenter.api.mapper;
+
+import avalor.flightcenter.api.dto.SimulationClockDTO;
+import avalor.flightcenter.utils.SimulationClock;
+import org.mapstruct.Mapper;
+
+@Mapper(componentModel = "spring")
+public interface SimulationClockMapper {
+    // Field names match; the mode enum is mapped to its name
+    SimulationClockDTO toDto(SimulationClock.Stats stats);
+}
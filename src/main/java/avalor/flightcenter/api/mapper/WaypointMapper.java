@@ -0,0 +1,14 @@
+package avalor.flightcenter.api.mapper;
+
+import avalor.flightcenter.api.dto.DroneWaypointDTO;
+import avalor.flightcenter.domain.WaypointUpdate;
+import org.mapstruct.Mapper;
+
+import java.util.List;
+
+@Mapper(componentModel = "spring", uses = {PositionMapper.class})
+public interface WaypointMapper {
+    DroneWaypointDTO toDto(WaypointUpdate update);
+
+    List<DroneWaypointDTO> toDtoList(List<WaypointUpdate> updates);
+}
@@ -0,0 +1,30 @@
+package avalor.flightcenter.calculator;
+
+/**
+ * Plain A* over the 8-connected grid.
+ * Diagonal moves are only allowed when both adjacent straight cells are free, so drones never squeeze
+ * between two occupied cells.
+ */
+public class AStarPlanner extends GridSearchPlanner {
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    @Override
+    protected void expand(int current) {
+        int x = current % width;
+        int y = current / width;
+        int currentCost = cost[current];
+        for (int dir = 0; dir < DX.length; dir++) {
+            int nx = x + DX[dir];
+            int ny = y + DY[dir];
+            if (!isWalkable(nx, ny)) {
+                continue;
+            }
+            boolean diagonal = DX[dir] != 0 && DY[dir] != 0;
+            if (diagonal && (!isWalkable(nx, y) || !isWalkable(x, ny))) {
+                continue;
+            }
+            relax(ny * width + nx, currentCost + (diagonal ? DIAGONAL_COST : STRAIGHT_COST), current);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Abstraction of a navigation grid for hierarchical route planning (HPA*): the grid is cut into square clusters,
+ * neighbouring clusters are connected through entrances on their shared border, and the distances between the
+ * entrances of every cluster are computed in advance. Long routes are then searched over the entrances instead of
+ * the cells, see {@link HierarchicalPlanner}.
+ * <p>
+ * The graph only knows the cells it was told are blocked, e.g. those of drones that stay where they are; moving
+ * drones are left to the grid planners. Blocking or freeing a cell marks the clusters it changes, and
+ * {@link #update()} rebuilds them. Not thread-safe; several threads may read the graph while nobody updates it.
+ */
+public class ClusterGraph {
+    // Grids narrower than this many clusters plan their routes on the cells alone
+    private static final int MIN_CLUSTERS = 4;
+    // Open border runs at least this long get an entrance at both ends, shorter ones one in the middle
+    private static final int LONG_RUN = 6;
+    private static final int[] NO_CELLS = new int[0];
+
+    private final NavigationGrid grid;
+    private final int width;
+    private final int clusterSize;
+    private final int columns;
+    private final BitSet blocked = new BitSet();
+    private final int[] blockedCount;
+    private final BitSet dirty = new BitSet();
+    // Per cluster: entrance cells, the cells across the border each one leads to (two per entrance, -1 if
+    // unused: a corner cell can lead into two clusters) and the distances between the entrances (-1 if none)
+    private final int[][] entrances;
+    private final int[][] peers;
+    private final int[][] distances;
+    private final ClusterSearch search = new ClusterSearch();
+    // Entrances and peers of the cluster being rebuilt
+    private int[] entranceBuffer = new int[64];
+    private int[] peerBuffer = new int[128];
+
+    private ClusterGraph(NavigationGrid grid, int clusterSize) {
+        this.grid = grid;
+        this.width = grid.getWidth();
+        this.clusterSize = clusterSize;
+        this.columns = (width + clusterSize - 1) / clusterSize;
+        int clusters = columns * ((grid.getHeight() + clusterSize - 1) / clusterSize);
+        this.blockedCount = new int[clusters];
+        this.entrances = new int[clusters][];
+        this.peers = new int[clusters][];
+        this.distances = new int[clusters][];
+        dirty.set(0, clusters);
+        update();
+    }
+
+    /**
+     * Builds the graph of a grid with no blocked cells.
+     *
+     * @return the graph, or null if clusters are disabled (size 0) or the grid spans too few of them for the
+     * abstraction to pay off
+     */
+    public static ClusterGraph create(NavigationGrid grid, int clusterSize) {
+        if (grid == null || clusterSize <= 0
+                || Math.max(grid.getWidth(), grid.getHeight()) < MIN_CLUSTERS * clusterSize) {
+            return null;
+        }
+        return new ClusterGraph(grid, clusterSize);
+    }
+
+    public NavigationGrid getGrid() {
+        return grid;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * Whether a route between the cells crosses more than the clusters around the start, so that it is worth
+     * searching over the entrances.
+     */
+    public boolean isLongRange(int start, int goal) {
+        return clusterDistance(clusterOf(start), clusterOf(goal)) > 1;
+    }
+
+    public boolean isBlocked(int cell) {
+        return blocked.get(cell);
+    }
+
+    public void block(int cell) {
+        if (!blocked.get(cell)) {
+            blocked.set(cell);
+            blockedCount[clusterOf(cell)]++;
+            markDirty(cell);
+        }
+    }
+
+    public void unblock(int cell) {
+        if (blocked.get(cell)) {
+            blocked.clear(cell);
+            blockedCount[clusterOf(cell)]--;
+            markDirty(cell);
+        }
+    }
+
+    /**
+     * Rebuilds the entrances and distances of the clusters changed since the last update.
+     *
+     * @return the number of rebuilt clusters
+     */
+    public int update() {
+        int rebuilt = 0;
+        for (int cluster = dirty.nextSetBit(0); cluster >= 0; cluster = dirty.nextSetBit(cluster + 1)) {
+            rebuild(cluster);
+            rebuilt++;
+        }
+        dirty.clear();
+        return rebuilt;
+    }
+
+    int clusterOf(int cell) {
+        return (cell / width) / clusterSize * columns + (cell % width) / clusterSize;
+    }
+
+    /**
+     * Chebyshev distance between two clusters, in clusters.
+     */
+    int clusterDistance(int cluster, int other) {
+        return Math.max(Math.abs(cluster % columns - other % columns), Math.abs(cluster / columns - other / columns));
+    }
+
+    int minX(int cluster) {
+        return cluster % columns * clusterSize;
+    }
+
+    int minY(int cluster) {
+        return cluster / columns * clusterSize;
+    }
+
+    int maxX(int cluster) {
+        return Math.min(width, minX(cluster) + clusterSize) - 1;
+    }
+
+    int maxY(int cluster) {
+        return Math.min(grid.getHeight(), minY(cluster) + clusterSize) - 1;
+    }
+
+    boolean hasBlockedCells(int cluster) {
+        return blockedCount[cluster] > 0;
+    }
+
+    int[] getEntrances(int cluster) {
+        return entrances[cluster];
+    }
+
+    /**
+     * @return the cells across the border entrance {@code i} of the cluster leads to, at {@code 2 * i} and
+     * {@code 2 * i + 1}; -1 if unused
+     */
+    int[] getPeers(int cluster) {
+        return peers[cluster];
+    }
+
+    /**
+     * @return the distance between entrances {@code i} and {@code j} of the cluster within the cluster, in the cost
+     * units of the grid planners, or -1 if they are not connected
+     */
+    int getDistance(int cluster, int i, int j) {
+        return distances[cluster][i * entrances[cluster].length + j];
+    }
+
+    /**
+     * @return the index of the cell among the entrances of its cluster, or -1
+     */
+    int entranceIndex(int cluster, int cell) {
+        int[] cells = entrances[cluster];
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == cell) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // A cell on the border of its cluster also changes the entrances of the cluster across
+    private void markDirty(int cell) {
+        int cluster = clusterOf(cell);
+        dirty.set(cluster);
+        int x = cell % width;
+        int y = cell / width;
+        if (x == minX(cluster) && x > 0) {
+            dirty.set(cluster - 1);
+        }
+        if (x == maxX(cluster) && x < width - 1) {
+            dirty.set(cluster + 1);
+        }
+        if (y == minY(cluster) && y > 0) {
+            dirty.set(cluster - columns);
+        }
+        if (y == maxY(cluster) && y < grid.getHeight() - 1) {
+            dirty.set(cluster + columns);
+        }
+    }
+
+    private void rebuild(int cluster) {
+        int count = 0;
+        int x0 = minX(cluster);
+        int y0 = minY(cluster);
+        int x1 = maxX(cluster);
+        int y1 = maxY(cluster);
+        // Both clusters of a border find the same runs, so their entrances face each other
+        if (y0 > 0) {
+            count = addEntrances(count, x0, y0, 1, 0, x1 - x0 + 1, 0, -1);
+        }
+        if (y1 < grid.getHeight() - 1) {
+            count = addEntrances(count, x0, y1, 1, 0, x1 - x0 + 1, 0, 1);
+        }
+        if (x0 > 0) {
+            count = addEntrances(count, x0, y0, 0, 1, y1 - y0 + 1, -1, 0);
+        }
+        if (x1 < width - 1) {
+            count = addEntrances(count, x1, y0, 0, 1, y1 - y0 + 1, 1, 0);
+        }
+        int[] cells = Arrays.copyOf(entranceBuffer, count);
+        int[] distance = new int[count * count];
+        // Distances are symmetric: each search only goes on to the entrances after its own
+        search.prepare(this, cluster);
+        for (int i = 0; i < count; i++) {
+            search.run(cells[i], cells, i + 1, count);
+            for (int j = i + 1; j < count; j++) {
+                int d = search.distanceTo(cells[j]);
+                distance[i * count + j] = d;
+                distance[j * count + i] = d;
+            }
+        }
+        entrances[cluster] = count == 0 ? NO_CELLS : cells;
+        peers[cluster] = count == 0 ? NO_CELLS : Arrays.copyOf(peerBuffer, 2 * count);
+        distances[cluster] = count == 0 ? NO_CELLS : distance;
+    }
+
+    /**
+     * Adds the entrances of one border: the runs of cells that are open on both sides. The border runs
+     * {@code length} cells from (x, y) along (stepX, stepY); the cluster across lies towards (acrossX, acrossY).
+     */
+    private int addEntrances(int count, int x, int y, int stepX, int stepY, int length, int acrossX, int acrossY) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = i < length && isOpen(x + i * stepX, y + i * stepY, acrossX, acrossY);
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                int runLength = i - runStart;
+                if (runLength >= LONG_RUN) {
+                    count = addEntrance(count, x + runStart * stepX, y + runStart * stepY, acrossX, acrossY);
+                    count = addEntrance(count, x + (i - 1) * stepX, y + (i - 1) * stepY, acrossX, acrossY);
+                } else {
+                    int middle = runStart + (runLength - 1) / 2;
+                    count = addEntrance(count, x + middle * stepX, y + middle * stepY, acrossX, acrossY);
+                }
+                runStart = -1;
+            }
+        }
+        return count;
+    }
+
+    private boolean isOpen(int x, int y, int acrossX, int acrossY) {
+        return !blocked.get(y * width + x) && !blocked.get((y + acrossY) * width + x + acrossX);
+    }
+
+    // Corner cells can be an entrance of two borders; they are kept once, with both peers
+    private int addEntrance(int count, int x, int y, int acrossX, int acrossY) {
+        int cell = y * width + x;
+        int peer = (y + acrossY) * width + x + acrossX;
+        for (int i = 0; i < count; i++) {
+            if (entranceBuffer[i] == cell) {
+                peerBuffer[2 * i + 1] = peer;
+                return count;
+            }
+        }
+        if (count == entranceBuffer.length) {
+            entranceBuffer = Arrays.copyOf(entranceBuffer, 2 * count);
+            peerBuffer = Arrays.copyOf(peerBuffer, 4 * count);
+        }
+        entranceBuffer[count] = cell;
+        peerBuffer[2 * count] = peer;
+        peerBuffer[2 * count + 1] = -1;
+        return count + 1;
+    }
+}
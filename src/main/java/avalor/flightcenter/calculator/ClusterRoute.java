@@ -0,0 +1,26 @@
+package avalor.flightcenter.calculator;
+
+/**
+ * Route of one drone over a {@link ClusterGraph}: the cluster entrances on its way to the goal, and how far
+ * {@link HierarchicalPlanner} planned it on the grid so far. The planner goes on with the next stretches from
+ * there, without searching the clusters again, as long as the drone flies the stretches it got.
+ */
+public class ClusterRoute {
+    int goal = -1;
+    int[] waypoints = new int[0];
+    int waypointCount = 0;
+    // First waypoint not planned on the grid yet, and the cell the planned stretches end on
+    int next = 0;
+    int resumeCell = -1;
+
+    boolean continuesFrom(int start, int goalCell) {
+        return goal == goalCell && resumeCell == start && next < waypointCount;
+    }
+
+    public void clear() {
+        goal = -1;
+        waypointCount = 0;
+        next = 0;
+        resumeCell = -1;
+    }
+}
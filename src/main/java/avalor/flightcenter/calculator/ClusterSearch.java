@@ -0,0 +1,138 @@
+package avalor.flightcenter.calculator;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra search confined to one cluster of a {@link ClusterGraph}: the distances from a cell to cells of its
+ * cluster, moving like the grid planners but around the blocked cells of the graph only. A cluster without
+ * blocked cells needs no search; its distances are octile. Keeps reusable search state and is therefore not
+ * thread-safe.
+ */
+final class ClusterSearch {
+    private final IndexedMinHeap open = new IndexedMinHeap();
+    // Per cell of the cluster, row by row; a generation stamp marks the entries of the current search
+    private boolean[] free = new boolean[0];
+    private int[] distance = new int[0];
+    private int[] reached = new int[0];
+    private int[] wanted = new int[0];
+    private int generation = 0;
+    private int width;
+    private int minX;
+    private int minY;
+    private int columns;
+    private int rows;
+    private int source;
+    private boolean octile;
+
+    /**
+     * Takes the blocked cells of the cluster for the following searches.
+     */
+    void prepare(ClusterGraph graph, int cluster) {
+        width = graph.getGrid().getWidth();
+        minX = graph.minX(cluster);
+        minY = graph.minY(cluster);
+        columns = graph.maxX(cluster) - minX + 1;
+        rows = graph.maxY(cluster) - minY + 1;
+        octile = !graph.hasBlockedCells(cluster);
+        if (octile) {
+            return;
+        }
+        int cells = columns * rows;
+        if (free.length < cells) {
+            free = new boolean[cells];
+            distance = new int[cells];
+            reached = new int[cells];
+            wanted = new int[cells];
+            generation = 0;
+        }
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                free[y * columns + x] = !graph.isBlocked((minY + y) * width + minX + x);
+            }
+        }
+        open.ensureNodeCapacity(cells);
+    }
+
+    /**
+     * Computes the distances from a cell of the prepared cluster, which may itself be blocked, until the given
+     * cells of the cluster are reached.
+     */
+    void run(int sourceCell, int[] targets, int from, int to) {
+        source = sourceCell;
+        if (octile) {
+            return;
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(wanted, 0);
+            generation = 1;
+        }
+        int remaining = 0;
+        for (int i = from; i < to; i++) {
+            int target = local(targets[i]);
+            if (wanted[target] != generation) {
+                wanted[target] = generation;
+                remaining++;
+            }
+        }
+        open.clear();
+        int start = local(sourceCell);
+        distance[start] = 0;
+        reached[start] = generation;
+        open.push(start, 0, 0);
+        while (!open.isEmpty() && remaining > 0) {
+            int current = open.poll();
+            if (wanted[current] == generation) {
+                remaining--;
+            }
+            int x = current % columns;
+            int y = current / columns;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if ((dx == 0 && dy == 0) || !isFree(x + dx, y + dy, start)) {
+                        continue;
+                    }
+                    boolean diagonal = dx != 0 && dy != 0;
+                    // Same corner rule as the grid planners
+                    if (diagonal && (!isFree(x + dx, y, start) || !isFree(x, y + dy, start))) {
+                        continue;
+                    }
+                    int next = (y + dy) * columns + x + dx;
+                    int cost = distance[current] + (diagonal ? GridSearchPlanner.DIAGONAL_COST : GridSearchPlanner.STRAIGHT_COST);
+                    if (reached[next] != generation) {
+                        reached[next] = generation;
+                        distance[next] = cost;
+                        open.push(next, cost, 0);
+                    } else if (cost < distance[next]) {
+                        distance[next] = cost;
+                        open.decreaseKey(next, cost, 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the distance from the source of the last search to one of its targets, in the cost units of the grid
+     * planners, or -1 if it cannot be reached within the cluster
+     */
+    int distanceTo(int cell) {
+        if (octile) {
+            return GridSearchPlanner.octile(cell % width - source % width, cell / width - source / width);
+        }
+        int index = local(cell);
+        return reached[index] == generation ? distance[index] : -1;
+    }
+
+    private boolean isFree(int x, int y, int start) {
+        if (x < 0 || x >= columns || y < 0 || y >= rows) {
+            return false;
+        }
+        int index = y * columns + x;
+        return free[index] || index == start;
+    }
+
+    private int local(int cell) {
+        return (cell / width - minY) * columns + cell % width - minX;
+    }
+}
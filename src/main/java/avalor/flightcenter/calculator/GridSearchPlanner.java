@@ -0,0 +1,163 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.util.Arrays;
+
+/**
+ * Shared search state for the grid planners.
+ * Per-cell arrays are sized once for the grid and reused between searches; a generation stamp marks which
+ * entries belong to the current search, so nothing has to be cleared or allocated per query.
+ * Straight moves cost 10 and diagonal moves cost 14, which keeps the octile heuristic in integer arithmetic.
+ */
+abstract class GridSearchPlanner implements PathPlanner {
+    static final int STRAIGHT_COST = 10;
+    static final int DIAGONAL_COST = 14;
+
+    protected final IndexedMinHeap open = new IndexedMinHeap();
+    protected NavigationGrid grid;
+    protected int width;
+    protected int height;
+    protected int goal;
+    protected int goalX;
+    protected int goalY;
+    // Rectangle the search stays in, bounds inclusive; the whole grid unless a bounded search was asked for
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+    protected int[] cost = new int[0];
+    protected int[] parent = new int[0];
+    // 2 * generation when a cell was opened, 2 * generation + 1 once it is closed
+    private int[] stamp = new int[0];
+    private int generation = 0;
+
+    @Override
+    public int[] plan(NavigationGrid navigationGrid, int start, int goalCell) {
+        if (navigationGrid == null) {
+            return NO_PATH;
+        }
+        return plan(navigationGrid, start, goalCell, 0, 0, navigationGrid.getWidth() - 1, navigationGrid.getHeight() - 1);
+    }
+
+    @Override
+    public int[] plan(NavigationGrid navigationGrid, int start, int goalCell, int fromX, int fromY, int toX, int toY) {
+        if (navigationGrid == null || start == goalCell
+                || start < 0 || start >= navigationGrid.size() || goalCell < 0 || goalCell >= navigationGrid.size()) {
+            return NO_PATH;
+        }
+        prepare(navigationGrid, goalCell);
+        minX = Math.max(0, fromX);
+        minY = Math.max(0, fromY);
+        maxX = Math.min(width - 1, toX);
+        maxY = Math.min(height - 1, toY);
+        openCell(start, 0, -1);
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            stamp[current] = 2 * generation + 1;
+            if (current == goal) {
+                return reconstructPath(start);
+            }
+            expand(current);
+        }
+        return NO_PATH;
+    }
+
+    /**
+     * Pushes the successors of the given closed cell into the open set.
+     */
+    protected abstract void expand(int current);
+
+    protected boolean isWalkable(int x, int y) {
+        if (x < minX || x > maxX || y < minY || y > maxY) {
+            return false;
+        }
+        int index = y * width + x;
+        return index == goal || !grid.isOccupied(index);
+    }
+
+    /**
+     * Opens the cell or lowers its cost if a cheaper way to reach it was found.
+     */
+    protected void relax(int index, int newCost, int from) {
+        int s = stamp[index];
+        if (s == 2 * generation + 1) {
+            return;
+        }
+        if (s != 2 * generation) {
+            openCell(index, newCost, from);
+        } else if (newCost < cost[index]) {
+            cost[index] = newCost;
+            parent[index] = from;
+            int h = heuristic(index);
+            open.decreaseKey(index, newCost + h, h);
+        }
+    }
+
+    protected static int octile(int dx, int dy) {
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        return STRAIGHT_COST * Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    private int heuristic(int index) {
+        return octile(index % width - goalX, index / width - goalY);
+    }
+
+    private void openCell(int index, int newCost, int from) {
+        stamp[index] = 2 * generation;
+        cost[index] = newCost;
+        parent[index] = from;
+        int h = heuristic(index);
+        open.push(index, newCost + h, h);
+    }
+
+    private void prepare(NavigationGrid navigationGrid, int goalCell) {
+        int size = navigationGrid.size();
+        if (stamp.length < size) {
+            stamp = new int[size];
+            cost = new int[size];
+            parent = new int[size];
+            generation = 0;
+        }
+        open.ensureNodeCapacity(size);
+        open.clear();
+        if (++generation >= Integer.MAX_VALUE / 2) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        grid = navigationGrid;
+        width = navigationGrid.getWidth();
+        height = navigationGrid.getHeight();
+        goal = goalCell;
+        goalX = goalCell % width;
+        goalY = goalCell / width;
+    }
+
+    /**
+     * Walks the parent links back from the goal, expanding every link into single-cell steps.
+     * Links are always straight or diagonal lines, so stepping by the sign of the offset covers them.
+     */
+    private int[] reconstructPath(int start) {
+        int length = 0;
+        for (int node = goal; node != start; node = parent[node]) {
+            int from = parent[node];
+            length += Math.max(Math.abs(node % width - from % width), Math.abs(node / width - from / width));
+        }
+        int[] path = new int[length];
+        int slot = length;
+        for (int node = goal; node != start; node = parent[node]) {
+            int from = parent[node];
+            int x = node % width;
+            int y = node / width;
+            int stepX = Integer.signum(from % width - x);
+            int stepY = Integer.signum(from / width - y);
+            while (x != from % width || y != from / width) {
+                path[--slot] = y * width + x;
+                x += stepX;
+                y += stepY;
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,225 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Plans long routes over a {@link ClusterGraph}: A* over the cluster entrances finds the way to the goal, and only
+ * the next stretches of it are planned cell by cell, by a grid planner kept to the clusters around the drone. The
+ * drone asks for the following stretches once it has flown these, so the cells of a long route are only planned
+ * when the drone gets there, around the drones it meets then; its {@link ClusterRoute} keeps the entrances in
+ * between. Routes that stay near the start are planned on the grid in one go. Keeps reusable search state and is
+ * therefore not thread-safe.
+ */
+public class HierarchicalPlanner {
+    private final IndexedMinHeap open = new IndexedMinHeap();
+    private final ClusterSearch startSearch = new ClusterSearch();
+    private final ClusterSearch goalSearch = new ClusterSearch();
+    // Cell -> search node; nodes are the start, the goal and the entrances reached
+    private final LongIntHashMap nodes = new LongIntHashMap(1024, -1);
+    private int[] nodeCell = new int[1024];
+    private int[] nodeCost = new int[1024];
+    private int[] nodeParent = new int[1024];
+    private boolean[] nodeClosed = new boolean[1024];
+    private int nodeCount = 0;
+    // Route of callers that do not keep theirs
+    private final ClusterRoute scratchRoute = new ClusterRoute();
+    private int[] cells = new int[256];
+    private ClusterGraph graph;
+    private int goal;
+
+    /**
+     * Plans the route from the start cell to the goal cell, or its next stretches when the goal lies beyond the
+     * clusters around the start: at least two clusters long, unless the drones around the start leave no way
+     * through. A route that goes on where the previous stretches of the drone ended follows the entrances found
+     * then.
+     *
+     * @param route the route of the drone over the clusters, updated for the next call; null to search anew
+     * @return the cell indices to fly through, excluding the start and ending at the goal or on the way to it, or
+     * {@link PathPlanner#NO_PATH} if the goal cannot be reached
+     */
+    public int[] plan(ClusterGraph clusterGraph, PathPlanner planner, int start, int goalCell, ClusterRoute route) {
+        NavigationGrid grid = clusterGraph.getGrid();
+        if (start == goalCell || start < 0 || start >= grid.size() || goalCell < 0 || goalCell >= grid.size()) {
+            return PathPlanner.NO_PATH;
+        }
+        if (route != null && route.continuesFrom(start, goalCell)) {
+            int[] stretches = refine(clusterGraph, planner, start, route);
+            if (stretches.length > 0) {
+                return stretches;
+            }
+            // Drones stopped on the way since the entrances were found
+        }
+        ClusterRoute target = route == null ? scratchRoute : route;
+        target.clear();
+        if (!clusterGraph.isLongRange(start, goalCell)) {
+            return planner.plan(grid, start, goalCell);
+        }
+        graph = clusterGraph;
+        goal = goalCell;
+        boolean found = search(start, target);
+        graph = null;
+        return found ? refine(clusterGraph, planner, start, target) : PathPlanner.NO_PATH;
+    }
+
+    /**
+     * A* from the start to the goal over the entrances of the clusters; stores the entrances on the way in the route.
+     *
+     * @return whether the goal can be reached
+     */
+    private boolean search(int start, ClusterRoute route) {
+        int startCluster = graph.clusterOf(start);
+        int goalCluster = graph.clusterOf(goal);
+        int[] startEntrances = graph.getEntrances(startCluster);
+        int[] goalEntrances = graph.getEntrances(goalCluster);
+        if (startEntrances.length == 0 || goalEntrances.length == 0) {
+            return false;
+        }
+        startSearch.prepare(graph, startCluster);
+        startSearch.run(start, startEntrances, 0, startEntrances.length);
+        goalSearch.prepare(graph, goalCluster);
+        goalSearch.run(goal, goalEntrances, 0, goalEntrances.length);
+        open.clear();
+        nodes.clear();
+        nodeCount = 0;
+        relax(start, 0, -1);
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            nodeClosed[current] = true;
+            int cell = nodeCell[current];
+            if (cell == goal) {
+                collectWaypoints(current, route);
+                return true;
+            }
+            int cost = nodeCost[current];
+            int cluster = graph.clusterOf(cell);
+            if (cell == start) {
+                for (int cellTo : startEntrances) {
+                    int distance = startSearch.distanceTo(cellTo);
+                    if (distance >= 0) {
+                        relax(cellTo, cost + distance, current);
+                    }
+                }
+            }
+            int entrance = graph.entranceIndex(cluster, cell);
+            if (entrance >= 0) {
+                int[] entrances = graph.getEntrances(cluster);
+                for (int i = 0; i < entrances.length; i++) {
+                    int distance = graph.getDistance(cluster, entrance, i);
+                    if (i != entrance && distance >= 0) {
+                        relax(entrances[i], cost + distance, current);
+                    }
+                }
+                int[] peers = graph.getPeers(cluster);
+                for (int i = 2 * entrance; i <= 2 * entrance + 1; i++) {
+                    if (peers[i] >= 0) {
+                        relax(peers[i], cost + GridSearchPlanner.STRAIGHT_COST, current);
+                    }
+                }
+            }
+            if (cluster == goalCluster) {
+                int distance = goalSearch.distanceTo(cell);
+                if (distance >= 0) {
+                    relax(goal, cost + distance, current);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void relax(int cell, int cost, int from) {
+        int node = nodes.get(cell);
+        boolean opened = node >= 0;
+        if (!opened) {
+            node = addNode(cell);
+        } else if (nodeClosed[node] || cost >= nodeCost[node]) {
+            return;
+        }
+        nodeCost[node] = cost;
+        nodeParent[node] = from;
+        int h = heuristic(cell);
+        if (opened) {
+            open.decreaseKey(node, cost + h, h);
+        } else {
+            open.push(node, cost + h, h);
+        }
+    }
+
+    private int addNode(int cell) {
+        if (nodeCount == nodeCell.length) {
+            int capacity = 2 * nodeCount;
+            nodeCell = Arrays.copyOf(nodeCell, capacity);
+            nodeCost = Arrays.copyOf(nodeCost, capacity);
+            nodeParent = Arrays.copyOf(nodeParent, capacity);
+            nodeClosed = Arrays.copyOf(nodeClosed, capacity);
+        }
+        int node = nodeCount++;
+        open.ensureNodeCapacity(nodeCount);
+        nodeCell[node] = cell;
+        nodeClosed[node] = false;
+        nodes.put(cell, node);
+        return node;
+    }
+
+    private int heuristic(int cell) {
+        int width = graph.getGrid().getWidth();
+        return GridSearchPlanner.octile(cell % width - goal % width, cell / width - goal / width);
+    }
+
+    // The entrances after the start, up to the goal
+    private void collectWaypoints(int goalNode, ClusterRoute route) {
+        int count = 0;
+        for (int node = goalNode; nodeParent[node] >= 0; node = nodeParent[node]) {
+            count++;
+        }
+        if (route.waypoints.length < count) {
+            route.waypoints = new int[count];
+        }
+        int slot = count;
+        for (int node = goalNode; nodeParent[node] >= 0; node = nodeParent[node]) {
+            route.waypoints[--slot] = nodeCell[node];
+        }
+        route.goal = goal;
+        route.waypointCount = count;
+    }
+
+    /**
+     * Plans the cells from the start, which the route has reached, to its farthest waypoint in the clusters around
+     * the start, and on from there until the stretches cover two clusters or reach the goal.
+     */
+    private int[] refine(ClusterGraph clusterGraph, PathPlanner planner, int start, ClusterRoute route) {
+        NavigationGrid grid = clusterGraph.getGrid();
+        int size = clusterGraph.getClusterSize();
+        int[] waypoints = route.waypoints;
+        int length = 0;
+        int from = start;
+        int next = route.next;
+        while (next < route.waypointCount && length < 2 * size) {
+            int cluster = clusterGraph.clusterOf(from);
+            int last = next;
+            while (last + 1 < route.waypointCount
+                    && clusterGraph.clusterDistance(cluster, clusterGraph.clusterOf(waypoints[last + 1])) <= 1) {
+                last++;
+            }
+            int[] stretch = planner.plan(grid, from, waypoints[last],
+                    clusterGraph.minX(cluster) - size, clusterGraph.minY(cluster) - size,
+                    clusterGraph.maxX(cluster) + size, clusterGraph.maxY(cluster) + size);
+            if (stretch.length == 0) {
+                // Drones in the way that the graph does not know about; fly what has been planned so far
+                break;
+            }
+            if (cells.length < length + stretch.length) {
+                cells = Arrays.copyOf(cells, Math.max(length + stretch.length, 2 * cells.length));
+            }
+            System.arraycopy(stretch, 0, cells, length, stretch.length);
+            length += stretch.length;
+            from = waypoints[last];
+            next = last + 1;
+        }
+        route.next = next;
+        route.resumeCell = from;
+        return length == 0 ? PathPlanner.NO_PATH : Arrays.copyOf(cells, length);
+    }
+}
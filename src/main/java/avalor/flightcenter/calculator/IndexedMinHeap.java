@@ -0,0 +1,122 @@
+package avalor.flightcenter.calculator;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over integer node ids with decrease-key support.
+ * Priorities are compared first by the primary key and then by the secondary key.
+ * The backing arrays grow on demand and are kept between searches, so steady-state use allocates nothing.
+ */
+final class IndexedMinHeap {
+    private int[] nodes = new int[1024];
+    private int[] primary = new int[1024];
+    private int[] secondary = new int[1024];
+    // Heap slot of every node id; only meaningful while the node is in the heap
+    private int[] slotOf = new int[0];
+    private int size = 0;
+
+    /**
+     * Makes room for node ids below the given count; may be called while nodes are in the heap.
+     */
+    void ensureNodeCapacity(int nodeCount) {
+        if (slotOf.length < nodeCount) {
+            slotOf = Arrays.copyOf(slotOf, nodeCount);
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(int node, int key, int tieBreak) {
+        if (size == nodes.length) {
+            int capacity = nodes.length << 1;
+            nodes = Arrays.copyOf(nodes, capacity);
+            primary = Arrays.copyOf(primary, capacity);
+            secondary = Arrays.copyOf(secondary, capacity);
+        }
+        nodes[size] = node;
+        primary[size] = key;
+        secondary[size] = tieBreak;
+        slotOf[node] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Lowers the priority of a node that is already in the heap.
+     */
+    void decreaseKey(int node, int key, int tieBreak) {
+        int slot = slotOf[node];
+        primary[slot] = key;
+        secondary[slot] = tieBreak;
+        siftUp(slot);
+    }
+
+    int poll() {
+        int top = nodes[0];
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int slot) {
+        int node = nodes[slot];
+        int key = primary[slot];
+        int tieBreak = secondary[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(key, tieBreak, parent)) {
+                break;
+            }
+            move(parent, slot);
+            slot = parent;
+        }
+        place(slot, node, key, tieBreak);
+    }
+
+    private void siftDown(int slot) {
+        int node = nodes[slot];
+        int key = primary[slot];
+        int tieBreak = secondary[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = (slot << 1) + 1;
+            int right = child + 1;
+            if (right < size && less(primary[right], secondary[right], child)) {
+                child = right;
+            }
+            if (!lessThanValues(primary[child], secondary[child], key, tieBreak)) {
+                break;
+            }
+            move(child, slot);
+            slot = child;
+        }
+        place(slot, node, key, tieBreak);
+    }
+
+    private boolean less(int key, int tieBreak, int slot) {
+        return lessThanValues(key, tieBreak, primary[slot], secondary[slot]);
+    }
+
+    private static boolean lessThanValues(int key, int tieBreak, int otherKey, int otherTieBreak) {
+        return key < otherKey || (key == otherKey && tieBreak < otherTieBreak);
+    }
+
+    private void move(int from, int to) {
+        place(to, nodes[from], primary[from], secondary[from]);
+    }
+
+    private void place(int slot, int node, int key, int tieBreak) {
+        nodes[slot] = node;
+        primary[slot] = key;
+        secondary[slot] = tieBreak;
+        slotOf[node] = slot;
+    }
+}
@@ -0,0 +1,135 @@
+package avalor.flightcenter.calculator;
+
+/**
+ * Jump Point Search over the 8-connected grid, using the same movement rules as {@link AStarPlanner}
+ * (no diagonal squeezing between occupied cells). Straight and diagonal runs without forced neighbours are
+ * skipped in a single scan, so only jump points ever enter the open set.
+ */
+public class JumpPointPlanner extends GridSearchPlanner {
+
+    @Override
+    protected void expand(int current) {
+        int x = current % width;
+        int y = current / width;
+        int from = parent[current];
+        if (from < 0) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (dx == 0 && dy == 0) {
+                        continue;
+                    }
+                    if (dx != 0 && dy != 0 && (!isWalkable(x + dx, y) || !isWalkable(x, y + dy))) {
+                        continue;
+                    }
+                    jumpFrom(current, x, y, dx, dy);
+                }
+            }
+            return;
+        }
+        int dx = Integer.signum(x - from % width);
+        int dy = Integer.signum(y - from / width);
+        if (dx != 0 && dy != 0) {
+            boolean vertical = isWalkable(x, y + dy);
+            boolean horizontal = isWalkable(x + dx, y);
+            if (vertical) {
+                jumpFrom(current, x, y, 0, dy);
+            }
+            if (horizontal) {
+                jumpFrom(current, x, y, dx, 0);
+            }
+            if (vertical && horizontal) {
+                jumpFrom(current, x, y, dx, dy);
+            }
+        } else if (dx != 0) {
+            boolean up = isWalkable(x, y - 1);
+            boolean down = isWalkable(x, y + 1);
+            if (isWalkable(x + dx, y)) {
+                jumpFrom(current, x, y, dx, 0);
+                if (down) {
+                    jumpFrom(current, x, y, dx, 1);
+                }
+                if (up) {
+                    jumpFrom(current, x, y, dx, -1);
+                }
+            }
+            if (down) {
+                jumpFrom(current, x, y, 0, 1);
+            }
+            if (up) {
+                jumpFrom(current, x, y, 0, -1);
+            }
+        } else {
+            boolean left = isWalkable(x - 1, y);
+            boolean right = isWalkable(x + 1, y);
+            if (isWalkable(x, y + dy)) {
+                jumpFrom(current, x, y, 0, dy);
+                if (right) {
+                    jumpFrom(current, x, y, 1, dy);
+                }
+                if (left) {
+                    jumpFrom(current, x, y, -1, dy);
+                }
+            }
+            if (right) {
+                jumpFrom(current, x, y, 1, 0);
+            }
+            if (left) {
+                jumpFrom(current, x, y, -1, 0);
+            }
+        }
+    }
+
+    private void jumpFrom(int current, int x, int y, int dx, int dy) {
+        int jumpPoint = jump(x + dx, y + dy, dx, dy);
+        if (jumpPoint < 0) {
+            return;
+        }
+        int distance = octile(jumpPoint % width - x, jumpPoint / width - y);
+        relax(jumpPoint, cost[current] + distance, current);
+    }
+
+    /**
+     * Scans from (x, y) in the given direction and returns the first jump point, or -1 if the run hits an obstacle.
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        if (dx == 0 || dy == 0) {
+            return jumpStraight(x, y, dx, dy);
+        }
+        while (isWalkable(x, y)) {
+            int index = y * width + x;
+            if (index == goal) {
+                return index;
+            }
+            if (jumpStraight(x + dx, y, dx, 0) >= 0 || jumpStraight(x, y + dy, 0, dy) >= 0) {
+                return index;
+            }
+            if (!isWalkable(x + dx, y) || !isWalkable(x, y + dy)) {
+                return -1;
+            }
+            x += dx;
+            y += dy;
+        }
+        return -1;
+    }
+
+    private int jumpStraight(int x, int y, int dx, int dy) {
+        while (isWalkable(x, y)) {
+            int index = y * width + x;
+            if (index == goal) {
+                return index;
+            }
+            if (dx != 0) {
+                if ((isWalkable(x, y - 1) && !isWalkable(x - dx, y - 1))
+                        || (isWalkable(x, y + 1) && !isWalkable(x - dx, y + 1))) {
+                    return index;
+                }
+            } else if ((isWalkable(x - 1, y) && !isWalkable(x - 1, y - dy))
+                    || (isWalkable(x + 1, y) && !isWalkable(x + 1, y - dy))) {
+                return index;
+            }
+            x += dx;
+            y += dy;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,326 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.util.Arrays;
+
+/**
+ * Bounded LRU cache of planned routes of one grid, so drones do not re-plan routes that are still valid.
+ * <p>
+ * A route planned from a start to a goal is reused for any later lookup towards the same goal whose start lies
+ * on the route (its suffix is returned) or next to a cell of it (a step onto the route, then its suffix). Like the
+ * planners, a diagonal step onto the route needs both corner cells free. The spliced route can be a step or two
+ * longer than a fresh plan, which is what a rerouted drone that side-stepped a blocked cell needs.
+ * <p>
+ * Routes avoid the cells that were occupied when they were planned. When a cell becomes occupied afterwards,
+ * only the routes through it are affected, and only the part before that cell: starts before it can no longer
+ * use the route, the suffix after it stays valid. Routes are found through a per-region index (16x16 cells),
+ * so an occupancy change only looks at the routes crossing its region. Cells that become free again do not
+ * invalidate anything. Loading another grid (or restarting the coverage) requires a {@link #reset}.
+ * <p>
+ * The cache is bounded by the total number of cached cells. Not thread-safe.
+ */
+public class PathCache {
+    private static final int REGION_SHIFT = 4;
+
+    private final int maxCells;
+    private NavigationGrid grid;
+    private int width = 0;
+    private int regionsX = 0;
+    private int storedCells = 0;
+
+    // Route slots; cells[0] is the start the route was planned from, the goal is the last cell
+    private int[][] paths = new int[16][];
+    private int[] pathGoal = new int[16];
+    // Highest route position occupied since the route was cached; starts before it cannot use the route
+    private int[] blockedAt = new int[16];
+    // Bumped when a slot is freed, so the region entries of the old route are recognized as stale
+    private int[] pathStamp = new int[16];
+    private int[] pathEntries = new int[16];
+    // LRU list over the live slots, most recently used first; freed slots are chained through lruNext
+    private int[] lruPrev = new int[16];
+    private int[] lruNext = new int[16];
+    private int lruHead = -1;
+    private int lruTail = -1;
+    private int freeSlot = -1;
+    private int slotCount = 0;
+
+    // Region index: one entry per run of consecutive route cells in the same region, chained per region
+    private int[] regionHead = new int[0];
+    private int[] entryPath = new int[64];
+    private int[] entryStamp = new int[64];
+    private int[] entryOffset = new int[64];
+    private int[] entryNext = new int[64];
+    private int entryCount = 0;
+    private int liveEntries = 0;
+
+    public PathCache(int maxCells) {
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Drops every cached route and prepares the cache for the given grid (or disables it for null).
+     */
+    public void reset(NavigationGrid grid) {
+        for (int p = lruHead; p != -1; p = lruNext[p]) {
+            paths[p] = null;
+        }
+        Arrays.fill(pathStamp, 0, slotCount, 0);
+        slotCount = 0;
+        freeSlot = -1;
+        lruHead = -1;
+        lruTail = -1;
+        storedCells = 0;
+        entryCount = 0;
+        liveEntries = 0;
+        this.grid = grid;
+        if (grid == null) {
+            width = 0;
+            regionsX = 0;
+            regionHead = new int[0];
+            return;
+        }
+        width = grid.getWidth();
+        regionsX = (width + (1 << REGION_SHIFT) - 1) >> REGION_SHIFT;
+        int regionsY = (grid.getHeight() + (1 << REGION_SHIFT) - 1) >> REGION_SHIFT;
+        if (regionHead.length != regionsX * regionsY) {
+            regionHead = new int[regionsX * regionsY];
+        }
+        Arrays.fill(regionHead, -1);
+    }
+
+    public int getStoredCells() {
+        return storedCells;
+    }
+
+    /**
+     * Returns a cached route from the start cell to the goal cell, excluding the start and including the goal,
+     * or null if no cached route can be reused.
+     */
+    public int[] find(int start, int goal) {
+        if (regionHead.length == 0) {
+            return null;
+        }
+        int region = regionOf(goal);
+        int bestPath = -1;
+        int bestFrom = 0;
+        int bestLength = Integer.MAX_VALUE;
+        for (int e = regionHead[region], prev = -1; e != -1; e = entryNext[e]) {
+            int p = entryPath[e];
+            if (pathStamp[p] != entryStamp[e]) {
+                // Stale entry of an evicted route
+                if (prev == -1) {
+                    regionHead[region] = entryNext[e];
+                } else {
+                    entryNext[prev] = entryNext[e];
+                }
+                continue;
+            }
+            prev = e;
+            if (pathGoal[p] != goal || p == bestPath) {
+                continue;
+            }
+            int[] cells = paths[p];
+            // The furthest match along the route leaves the shortest remainder
+            for (int j = cells.length - 1; j >= blockedAt[p] && cells.length - 1 - j < bestLength; j--) {
+                if (cells[j] == start) {
+                    bestPath = p;
+                    bestFrom = j + 1;
+                    bestLength = cells.length - 1 - j;
+                    break;
+                }
+                if (j > blockedAt[p] && cells.length - j < bestLength && canStep(start, cells[j])) {
+                    bestPath = p;
+                    bestFrom = j;
+                    bestLength = cells.length - j;
+                    break;
+                }
+            }
+        }
+        if (bestPath < 0 || bestLength == 0) {
+            return null;
+        }
+        touch(bestPath);
+        return Arrays.copyOfRange(paths[bestPath], bestFrom, paths[bestPath].length);
+    }
+
+    /**
+     * Caches a route planned from the start cell, given without the start and including the goal.
+     * The least recently used routes are evicted to stay within the cell budget.
+     */
+    public void put(int start, int[] path) {
+        if (regionHead.length == 0 || path.length == 0 || path.length + 1 > maxCells) {
+            return;
+        }
+        while (storedCells + path.length + 1 > maxCells) {
+            remove(lruTail);
+        }
+        int[] cells = new int[path.length + 1];
+        cells[0] = start;
+        System.arraycopy(path, 0, cells, 1, path.length);
+
+        int p = allocateSlot();
+        paths[p] = cells;
+        pathGoal[p] = cells[cells.length - 1];
+        blockedAt[p] = 0;
+        storedCells += cells.length;
+        lruPrev[p] = -1;
+        lruNext[p] = lruHead;
+        if (lruHead != -1) {
+            lruPrev[lruHead] = p;
+        }
+        lruHead = p;
+        if (lruTail == -1) {
+            lruTail = p;
+        }
+        pathEntries[p] = addEntries(p);
+        liveEntries += pathEntries[p];
+        // Entries of evicted routes are only unlinked when their region is walked; rebuild once they dominate
+        if (entryCount > 2 * liveEntries + 1024) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Records that the cell became occupied: routes through it are cut before the cell.
+     */
+    public void occupied(int cell) {
+        if (regionHead.length == 0) {
+            return;
+        }
+        int region = regionOf(cell);
+        for (int e = regionHead[region], prev = -1; e != -1; e = entryNext[e]) {
+            int p = entryPath[e];
+            if (pathStamp[p] != entryStamp[e]) {
+                if (prev == -1) {
+                    regionHead[region] = entryNext[e];
+                } else {
+                    entryNext[prev] = entryNext[e];
+                }
+                continue;
+            }
+            int[] cells = paths[p];
+            // The goal may be occupied, the planners allow it
+            int last = cells.length - 1;
+            for (int i = Math.max(entryOffset[e], blockedAt[p] + 1); i < last && regionOf(cells[i]) == region; i++) {
+                if (cells[i] == cell) {
+                    blockedAt[p] = i;
+                    break;
+                }
+            }
+            if (blockedAt[p] >= last) {
+                remove(p);
+                if (prev == -1) {
+                    regionHead[region] = entryNext[e];
+                } else {
+                    entryNext[prev] = entryNext[e];
+                }
+                continue;
+            }
+            prev = e;
+        }
+    }
+
+    private int addEntries(int p) {
+        int[] cells = paths[p];
+        int entries = 0;
+        int region = -1;
+        for (int i = 0; i < cells.length; i++) {
+            int r = regionOf(cells[i]);
+            if (r == region) {
+                continue;
+            }
+            region = r;
+            if (entryCount == entryPath.length) {
+                int capacity = entryCount << 1;
+                entryPath = Arrays.copyOf(entryPath, capacity);
+                entryStamp = Arrays.copyOf(entryStamp, capacity);
+                entryOffset = Arrays.copyOf(entryOffset, capacity);
+                entryNext = Arrays.copyOf(entryNext, capacity);
+            }
+            int e = entryCount++;
+            entryPath[e] = p;
+            entryStamp[e] = pathStamp[p];
+            entryOffset[e] = i;
+            entryNext[e] = regionHead[r];
+            regionHead[r] = e;
+            entries++;
+        }
+        return entries;
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(regionHead, -1);
+        entryCount = 0;
+        for (int p = lruTail; p != -1; p = lruPrev[p]) {
+            addEntries(p);
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeSlot != -1) {
+            int p = freeSlot;
+            freeSlot = lruNext[p];
+            return p;
+        }
+        if (slotCount == paths.length) {
+            int capacity = slotCount << 1;
+            paths = Arrays.copyOf(paths, capacity);
+            pathGoal = Arrays.copyOf(pathGoal, capacity);
+            blockedAt = Arrays.copyOf(blockedAt, capacity);
+            pathStamp = Arrays.copyOf(pathStamp, capacity);
+            pathEntries = Arrays.copyOf(pathEntries, capacity);
+            lruPrev = Arrays.copyOf(lruPrev, capacity);
+            lruNext = Arrays.copyOf(lruNext, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void remove(int p) {
+        storedCells -= paths[p].length;
+        liveEntries -= pathEntries[p];
+        paths[p] = null;
+        pathStamp[p]++;
+        unlinkLru(p);
+        lruNext[p] = freeSlot;
+        freeSlot = p;
+    }
+
+    private void touch(int p) {
+        if (lruHead == p) {
+            return;
+        }
+        unlinkLru(p);
+        lruPrev[p] = -1;
+        lruNext[p] = lruHead;
+        lruPrev[lruHead] = p;
+        lruHead = p;
+    }
+
+    private void unlinkLru(int p) {
+        if (lruPrev[p] != -1) {
+            lruNext[lruPrev[p]] = lruNext[p];
+        } else {
+            lruHead = lruNext[p];
+        }
+        if (lruNext[p] != -1) {
+            lruPrev[lruNext[p]] = lruPrev[p];
+        } else {
+            lruTail = lruPrev[p];
+        }
+    }
+
+    // A step onto the route follows the corner rule of the planners: no diagonal between two occupied cells
+    private boolean canStep(int from, int to) {
+        int dx = to % width - from % width;
+        int dy = to / width - from / width;
+        if (Math.abs(dx) > 1 || Math.abs(dy) > 1) {
+            return false;
+        }
+        return dx == 0 || dy == 0 || (!grid.isOccupied(from + dx) && !grid.isOccupied(from + dy * width));
+    }
+
+    private int regionOf(int cell) {
+        return ((cell / width) >> REGION_SHIFT) * regionsX + ((cell % width) >> REGION_SHIFT);
+    }
+}
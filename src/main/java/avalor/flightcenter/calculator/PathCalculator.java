@@ -1,167 +1,96 @@
 package avalor.flightcenter.calculator;
 
+import avalor.flightcenter.domain.NavigationGrid;
 import avalor.flightcenter.domain.Position;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntPredicate;
 
 public class PathCalculator {
-    static private final Double MAX_DISTANCE = 6.0;
+    public static final String ASTAR_PLANNER = "astar";
+    public static final String JPS_PLANNER = "jps";
+    // Like the grid planners, searches over the cluster entrances keep per-search state for every thread
+    private static final ThreadLocal<HierarchicalPlanner> HIERARCHICAL_PLANNERS = ThreadLocal.withInitial(HierarchicalPlanner::new);
 
     private PathCalculator() {
     }
 
-    public synchronized static List<Position> calculatePath(Position startPosition, Position targetPosition, List<List<Position>> navigationPlanes) {
-        if (startPosition == null || targetPosition == null || navigationPlanes == null || navigationPlanes.isEmpty()) {
-            return new ArrayList<>();
+    public static PathPlanner createPlanner(String plannerType) {
+        if (plannerType == null || ASTAR_PLANNER.equalsIgnoreCase(plannerType)) {
+            return new AStarPlanner();
         }
-
-        List<Position> path = new ArrayList<>();
-        Position crtPosition = Position.builder(startPosition).build();
-        // Get the closest position from the most valuable targets available
-        Position nextTarget = Position.builder(targetPosition).build();
-        // Add an intermediate point if the target is too far away, to limit the path execution time
-        nextTarget = getIntermediatePosition(startPosition, nextTarget, MAX_DISTANCE);
-        // Compute path
-        while (crtPosition != null && !crtPosition.equals(nextTarget)) {
-            // Get the next node towards the target
-            crtPosition = getNextPositionInPath(navigationPlanes, crtPosition, nextTarget);
-            if (crtPosition != null) {
-                path.add(crtPosition);
-            }
+        if (JPS_PLANNER.equalsIgnoreCase(plannerType)) {
+            return new JumpPointPlanner();
         }
-
-        return path;
+        throw new IllegalArgumentException("Unknown path planner: " + plannerType);
     }
 
-    public static Position getClosestTarget(Position crtPosition, List<List<Position>> navigationPlanes, List<Position> visitedPositions) {
-
-        if (crtPosition == null) {
-            return null;
-        }
-        // Gte the most valuable targets
-        List<Position> mostValuableTargets = getMostValuableTargets(navigationPlanes, visitedPositions);
-        if (mostValuableTargets.isEmpty()) {
-            return null;
-        }
-        Position closestPosition = null;
-        double minDistance = Double.MAX_VALUE;
-        for (Position target : mostValuableTargets) {
-            if (crtPosition.equals(target)) continue;
-
-            double distance = calculateDistance(crtPosition, target);
-            if (distance < minDistance) {
-                minDistance = distance;
-                closestPosition = target;
-            }
+    public static List<Position> calculatePath(Position startPosition, Position targetPosition, NavigationGrid navigationGrid, PathPlanner planner) {
+        if (navigationGrid == null) {
+            return new ArrayList<>();
         }
-        return closestPosition;
+        return toPositions(calculatePathCells(startPosition, targetPosition, navigationGrid, planner), navigationGrid);
     }
 
-    private static List<Position> getMostValuableTargets(List<List<Position>> navigationPlanes, List<Position> exclude) {
-        List<Position> allPositions = new ArrayList<>();
-        for (List<Position> row : navigationPlanes) {
-            for (Position position : row) {
-                if (exclude != null && exclude.contains(position)) {
-                    continue;
-                }
-                allPositions.add(Position.builder(position).build());
-            }
+    /**
+     * Same as {@link #calculatePath}, as cell indices.
+     */
+    public static int[] calculatePathCells(Position startPosition, Position targetPosition, NavigationGrid navigationGrid, PathPlanner planner) {
+        if (startPosition == null || targetPosition == null || navigationGrid == null || planner == null) {
+            return PathPlanner.NO_PATH;
         }
-        if (allPositions.isEmpty()) {
-            return allPositions;
+        if (!navigationGrid.isInBounds(startPosition.getPosX(), startPosition.getPosY())
+                || !navigationGrid.isInBounds(targetPosition.getPosX(), targetPosition.getPosY())) {
+            return PathPlanner.NO_PATH;
         }
-        allPositions.sort(
-                java.util.Comparator
-                        .comparingInt((Position p) -> p.getValue() + p.getDecay())
-                        .thenComparingInt(Position::getValue)
-                        .reversed()
-        );
-        final int maxValue = allPositions.getFirst().getValue();
-        allPositions = allPositions.stream().filter(n -> n.getValue() == maxValue).toList();
-        return allPositions;
-    }
 
-    private static double calculateDistance(Position source, Position destination) {
-        if (source == null || destination == null) {
-            return Double.MAX_VALUE;
-        }
-        return Math.hypot(source.getPosX() - destination.getPosX(), source.getPosY() - destination.getPosY());
+        // Plan the whole route in one go; the planner avoids occupied cells
+        return planner.plan(navigationGrid,
+                navigationGrid.index(startPosition.getPosX(), startPosition.getPosY()),
+                navigationGrid.index(targetPosition.getPosX(), targetPosition.getPosY()));
     }
 
-    private static Position getNextPositionInPath(List<List<Position>> navigationPlanes, Position startPosition, Position targetPosition) {
-        if (startPosition == null || targetPosition == null) {
-            System.out.println("Start or target position is null.");
-            return null;
-        }
-
-        if (navigationPlanes == null || navigationPlanes.isEmpty()) {
-            System.out.println("Navigation planes incorrectly initialized");
-            return null;
+    /**
+     * Same as {@link #calculatePathCells(Position, Position, NavigationGrid, PathPlanner)}, over the cluster graph
+     * of the grid if there is one: a target beyond the clusters around the start then only gets the next
+     * stretches of its route, see {@link HierarchicalPlanner}.
+     *
+     * @param clusterRoute route of the drone over the clusters, kept between the calls; may be null
+     */
+    public static int[] calculatePathCells(Position startPosition, Position targetPosition, NavigationGrid navigationGrid,
+                                           PathPlanner planner, ClusterGraph clusterGraph, ClusterRoute clusterRoute) {
+        if (clusterGraph == null || clusterGraph.getGrid() != navigationGrid
+                || startPosition == null || targetPosition == null || planner == null) {
+            return calculatePathCells(startPosition, targetPosition, navigationGrid, planner);
         }
-        int widthBoundary = navigationPlanes.getFirst().size();
-        int heightBoundary = navigationPlanes.size();
-
-        if (startPosition.getPosX() >= widthBoundary || startPosition.getPosY() >= heightBoundary || targetPosition.getPosX() >= widthBoundary || targetPosition.getPosY() >= heightBoundary) {
-            System.out.println("Start or target position is out of bounds.");
-            return null;
+        if (!navigationGrid.isInBounds(startPosition.getPosX(), startPosition.getPosY())
+                || !navigationGrid.isInBounds(targetPosition.getPosX(), targetPosition.getPosY())) {
+            return PathPlanner.NO_PATH;
         }
+        return HIERARCHICAL_PLANNERS.get().plan(clusterGraph, planner,
+                navigationGrid.index(startPosition.getPosX(), startPosition.getPosY()),
+                navigationGrid.index(targetPosition.getPosX(), targetPosition.getPosY()), clusterRoute);
+    }
 
-        int nextX = startPosition.getPosX();
-        int nextY = startPosition.getPosY();
-        int targetX = targetPosition.getPosX();
-        int targetY = targetPosition.getPosY();
-        String direction;
-
-        if (nextX == targetX && nextY == targetY) {
-            System.out.println("Already at target location( " + nextX + "," + nextY + " )");
-            return Position.builder(navigationPlanes.get(nextY).get(nextX)).build();
-        } else if (nextX != targetX && nextY != targetY) {
-            direction = "DIAGONALLY";
-        } else if (nextX != targetX) {
-            direction = nextX > targetX ? "LEFT" : "RIGHT";
-        } else direction = nextY > targetY ? "UP" : "DOWN";
-
-        switch (direction) {
-            case "DIAGONALLY":
-                nextX += (nextX > targetX) ? -1 : 1;
-                nextY += (nextY > targetY) ? -1 : 1;
-                break;
-            case "DOWN":
-                nextY += (nextY < heightBoundary - 1) ? 1 : 0;
-                break;
-            case "UP":
-                nextY += (nextY > 0) ? -1 : 0;
-                break;
-            case "LEFT":
-                nextX += (nextX > 0) ? -1 : 0;
-                break;
-            case "RIGHT":
-                nextX += (nextX < widthBoundary - 1) ? 1 : 0;
-                break;
-            default:
-                throw new IllegalStateException("Unexpected value: " + direction);
+    public static List<Position> toPositions(int[] cells, NavigationGrid navigationGrid) {
+        List<Position> path = new ArrayList<>(cells.length);
+        for (int cell : cells) {
+            path.add(navigationGrid.positionAt(cell));
         }
-
-        return Position.builder(navigationPlanes.get(nextY).get(nextX)).build();
+        return path;
     }
 
-    private static Position getIntermediatePosition(Position startPosition, Position targetPosition, double maximumDistance) {
-        double dx = targetPosition.getPosX() - startPosition.getPosX();
-        double dy = targetPosition.getPosY() - startPosition.getPosY();
-        double distance = Math.hypot(dx, dy);
-
-        // If target is within allowed distance, return the target itself
-        if (Double.compare(distance, maximumDistance) < 0) {
-            return Position.builder(targetPosition).build();
+    /**
+     * Returns the closest cell among the most valuable cells that are still available in the target index.
+     */
+    public static Position getClosestTarget(Position crtPosition, NavigationGrid navigationGrid, TargetIndex targetIndex, IntPredicate excluded) {
+        if (crtPosition == null || navigationGrid == null || targetIndex == null) {
+            return null;
         }
-
-        // Compute an intermediate point along the vector from start to target
-        double ratio = maximumDistance / distance;
-        double intX = startPosition.getPosX() + dx * ratio;
-        double intY = startPosition.getPosY() + dy * ratio;
-
-        // Use floor to make sure we stay within the max distance boundary
-        return new Position((int) Math.floor(intX), (int) Math.floor(intY), 0);
+        int crtCell = navigationGrid.index(crtPosition.getPosX(), crtPosition.getPosY());
+        int target = targetIndex.findClosestMostValuable(crtPosition.getPosX(), crtPosition.getPosY(),
+                cell -> cell == crtCell || (excluded != null && excluded.test(cell)));
+        return target < 0 ? null : navigationGrid.positionAt(target);
     }
 }
@@ -0,0 +1,31 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+/**
+ * Plans a route between two cells of the 8-connected navigation grid.
+ * Occupied cells are treated as obstacles, except for the goal cell itself.
+ * Implementations keep reusable search state and are therefore not thread-safe.
+ */
+public interface PathPlanner {
+    int[] NO_PATH = new int[0];
+
+    /**
+     * Plans the full route from the start cell to the goal cell.
+     *
+     * @return the cell indices to fly through, excluding the start and including the goal,
+     * or {@link #NO_PATH} if the goal cannot be reached
+     */
+    int[] plan(NavigationGrid grid, int start, int goal);
+
+    /**
+     * Same as {@link #plan(NavigationGrid, int, int)}, without leaving the given rectangle of cells (bounds
+     * inclusive), e.g. for one stretch of a longer route. Both cells must lie in the rectangle.
+     * <p>
+     * The rectangle only narrows the search; planners that cannot bound it plan over the whole grid, which
+     * finds a route whenever the bounded search would.
+     */
+    default int[] plan(NavigationGrid grid, int start, int goal, int minX, int minY, int maxX, int maxY) {
+        return plan(grid, start, goal);
+    }
+}
@@ -0,0 +1,157 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Space-time reservations of the drones: which drone holds which cell at which tick. Drones plan their next
+ * moves around the cells the others reserved, so their routes do not cross in time.
+ * <p>
+ * Every drone holds one contiguous run of ticks, starting where it is now, so the table holds at most one entry
+ * per drone and reserved tick. Ticks compare with wrap-around, like {@code a - b > 0}; only a window of them is
+ * ever reserved. {@link #advanceTo(int)} drops the ticks that have passed. Not thread-safe.
+ */
+public class ReservationTable {
+    private static final int NONE = -1;
+    private static final int[] NO_CELLS = new int[0];
+
+    // (tick, cell) -> drone id
+    private final LongIntHashMap holders = new LongIntHashMap(1024, NONE);
+    // Per drone id: reserved cells, oldest first, the tick of cells[first] and the end of the run
+    private int[][] cells = new int[0][];
+    private int[] firstTick = new int[0];
+    private int[] first = new int[0];
+    private int[] length = new int[0];
+    // Last tick of the planned moves; the run may go on holding the last cell
+    private int[] plannedUntil = new int[0];
+
+    /**
+     * @return the drone holding the cell at the tick, or -1
+     */
+    public int getHolder(int cell, int tick) {
+        return holders.get(key(cell, tick));
+    }
+
+    /**
+     * @return the cell the drone holds at the tick, or -1
+     */
+    public int getCell(int droneId, int tick) {
+        if (droneId >= length.length) {
+            return NONE;
+        }
+        int offset = tick - firstTick[droneId];
+        return offset >= 0 && first[droneId] + offset < length[droneId] ? cells[droneId][first[droneId] + offset] : NONE;
+    }
+
+    /**
+     * Last tick of the moves planned by the latest {@link #reserve} of the drone; only meaningful while it holds
+     * reservations.
+     */
+    public int getPlannedUntil(int droneId) {
+        return droneId < plannedUntil.length ? plannedUntil[droneId] : 0;
+    }
+
+    /**
+     * Replaces the reservations of the drone: its start cell at {@code tick} and the planned steps at the
+     * following ticks. The last step is then held up to {@code holdUntil}, as long as no other drone needs the
+     * cell, so drones that planned later do not fly into a drone that waits for its next window.
+     */
+    public void reserve(int droneId, int tick, int startCell, int[] steps, int stepCount, int holdUntil) {
+        release(droneId);
+        ensureDrone(droneId);
+        int span = Math.max(stepCount, holdUntil - tick) + 1;
+        int[] run = cells[droneId].length >= span ? cells[droneId] : new int[span];
+        int count = 0;
+        run[count++] = startCell;
+        for (int i = 0; i < stepCount; i++) {
+            run[count++] = steps[i];
+        }
+        int last = run[count - 1];
+        while (tick + count - holdUntil <= 0 && isFreeFor(droneId, last, tick + count)
+                && isFreeFor(droneId, last, tick + count + 1)) {
+            run[count++] = last;
+        }
+        for (int i = 0; i < count; i++) {
+            // Planned steps never collide; a drone that could not plan around the others does not take their cells
+            long key = key(run[i], tick + i);
+            if (holders.get(key) == NONE) {
+                holders.put(key, droneId);
+            }
+        }
+        cells[droneId] = run;
+        firstTick[droneId] = tick;
+        first[droneId] = 0;
+        length[droneId] = count;
+        plannedUntil[droneId] = tick + stepCount;
+    }
+
+    public void release(int droneId) {
+        if (droneId >= length.length) {
+            return;
+        }
+        int[] run = cells[droneId];
+        for (int i = first[droneId]; i < length[droneId]; i++) {
+            removeIfHeld(droneId, run[i], firstTick[droneId] + i - first[droneId]);
+        }
+        first[droneId] = 0;
+        length[droneId] = 0;
+    }
+
+    /**
+     * Drops the reservations of the ticks before the given one.
+     */
+    public void advanceTo(int tick) {
+        for (int droneId = 0; droneId < length.length; droneId++) {
+            int[] run = cells[droneId];
+            while (first[droneId] < length[droneId] && firstTick[droneId] - tick < 0) {
+                removeIfHeld(droneId, run[first[droneId]], firstTick[droneId]);
+                first[droneId]++;
+                firstTick[droneId]++;
+            }
+        }
+    }
+
+    public void clear() {
+        holders.clear();
+        Arrays.fill(first, 0);
+        Arrays.fill(length, 0);
+    }
+
+    /**
+     * Number of reserved (tick, cell) pairs.
+     */
+    public int size() {
+        return holders.size();
+    }
+
+    private boolean isFreeFor(int droneId, int cell, int tick) {
+        int holder = getHolder(cell, tick);
+        return holder == NONE || holder == droneId;
+    }
+
+    private void removeIfHeld(int droneId, int cell, int tick) {
+        long key = key(cell, tick);
+        if (holders.get(key) == droneId) {
+            holders.remove(key);
+        }
+    }
+
+    private void ensureDrone(int droneId) {
+        if (droneId < length.length) {
+            return;
+        }
+        int capacity = Math.max(droneId + 1, length.length * 2);
+        int oldCapacity = cells.length;
+        cells = Arrays.copyOf(cells, capacity);
+        Arrays.fill(cells, oldCapacity, capacity, NO_CELLS);
+        firstTick = Arrays.copyOf(firstTick, capacity);
+        first = Arrays.copyOf(first, capacity);
+        length = Arrays.copyOf(length, capacity);
+        plannedUntil = Arrays.copyOf(plannedUntil, capacity);
+    }
+
+    private static long key(int cell, int tick) {
+        return (long) (tick & Integer.MAX_VALUE) << 32 | (cell & 0xFFFFFFFFL);
+    }
+}
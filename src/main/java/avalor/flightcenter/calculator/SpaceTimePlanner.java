@@ -0,0 +1,208 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.utils.LongIntHashMap;
+
+/**
+ * Windowed cooperative A*: plans the next moves of one drone over cells and ticks, around the cells the other
+ * drones reserved in a {@link ReservationTable}.
+ * <p>
+ * The route planned without the other drones guides the search: it aims for the route cell the drone would reach
+ * at the end of the window and may wait in place or side-step to get there. The drone then goes on along the rest
+ * of the route, and plans its next window before it runs out of reserved moves.
+ * <p>
+ * Every move, diagonal or not, and every wait takes one tick, so the cost of a search node is its tick and the
+ * Chebyshev distance is an exact lower bound. A drone may not enter a cell another drone holds one tick before
+ * or after, so moves never depend on which drone is advanced first within a tick. Drones without reservations
+ * are obstacles. Keeps reusable search state and is therefore not thread-safe.
+ */
+public class SpaceTimePlanner {
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1, 0};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1, 0};
+    // Ticks a drone stays where its route ends: one to get the next target, one to plan the route to it, and the
+    // tick it leaves in
+    private static final int TARGET_HOLD_TICKS = 3;
+
+    private final int window;
+    private final int horizon;
+    private final int maxNodes;
+    private final IndexedMinHeap open = new IndexedMinHeap();
+    // (depth, cell) -> search node
+    private final LongIntHashMap nodes;
+    private final int[] nodeCell;
+    private final int[] nodeDepth;
+    private final int[] nodeParent;
+    private int nodeCount = 0;
+    private NavigationGrid grid;
+    private ReservationTable reservations;
+    private int droneId;
+    private int now;
+    private int goal;
+    private int rejoinIndex = -1;
+
+    /**
+     * @param window number of route cells planned per search; the search looks twice as many ticks ahead
+     */
+    public SpaceTimePlanner(int window) {
+        this.window = window;
+        this.horizon = 2 * window;
+        this.maxNodes = Math.max(256, 8 * window * window);
+        this.nodes = new LongIntHashMap(maxNodes, -1);
+        this.nodeCell = new int[maxNodes];
+        this.nodeDepth = new int[maxNodes];
+        this.nodeParent = new int[maxNodes];
+        open.ensureNodeCapacity(maxNodes);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Number of ticks a search looks ahead.
+     */
+    public int getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Plans the moves of the drone from {@code start}, where it is at tick {@code now}, towards the cell of its
+     * route at the end of the window. The reservations of the drone itself must have been released.
+     *
+     * @param route     the next cells of the route of the drone, as planned without the other drones
+     * @param endsRoute whether the route ends with these cells; the drone then stays on the last one while it
+     *                  gets its next target and plans the route to it, as it does where a plan ends off the route
+     * @return the cells to be at from tick {@code now + 1} on, repeating a cell to wait; ending on the route cell
+     * {@link #getRejoinIndex()}, or closer to it if it cannot be reached in time. Null if the drone cannot get
+     * any closer
+     */
+    public int[] plan(NavigationGrid navigationGrid, ReservationTable reservationTable, int drone, int start,
+                      int[] route, int routeLength, boolean endsRoute, int tick) {
+        if (routeLength == 0) {
+            return null;
+        }
+        grid = navigationGrid;
+        reservations = reservationTable;
+        droneId = drone;
+        now = tick;
+        int goalIndex = Math.min(window, routeLength) - 1;
+        goal = route[goalIndex];
+        rejoinIndex = -1;
+        open.clear();
+        nodes.clear();
+        nodeCount = 0;
+
+        int best = addNode(start, 0, -1);
+        int bestDistance = chebyshev(start);
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            int cell = nodeCell[current];
+            if (cell == goal && current != 0 && !(endsRoute && isHeldAfterArrival(cell, now + nodeDepth[current]))) {
+                rejoinIndex = goalIndex;
+                return reconstruct(current);
+            }
+            // Off the route the drone stops to plan a new one, like on a reached target
+            int distance = chebyshev(cell);
+            if ((distance < bestDistance || (distance == bestDistance && nodeDepth[current] < nodeDepth[best]))
+                    && !isHeldAfterArrival(cell, now + nodeDepth[current])) {
+                best = current;
+                bestDistance = distance;
+            }
+            if (nodeDepth[current] < horizon) {
+                expand(current, cell);
+            }
+        }
+        // Boxed in for the whole horizon, or the search ran out of nodes: get as close as possible
+        return bestDistance < chebyshev(start) ? reconstruct(best) : null;
+    }
+
+    /**
+     * Index of the route cell the last plan ends on, or -1 if it could not reach the route in time.
+     */
+    public int getRejoinIndex() {
+        return rejoinIndex;
+    }
+
+    private void expand(int current, int cell) {
+        int width = grid.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        int depth = nodeDepth[current] + 1;
+        int tick = now + depth;
+        for (int dir = 0; dir < DX.length; dir++) {
+            int nx = x + DX[dir];
+            int ny = y + DY[dir];
+            if (!grid.isInBounds(nx, ny)) {
+                continue;
+            }
+            int next = ny * width + nx;
+            boolean waiting = next == cell;
+            if (!waiting && isObstacle(next)) {
+                continue;
+            }
+            // Same corner rule as the route planners: no squeezing between two obstacles
+            boolean diagonal = DX[dir] != 0 && DY[dir] != 0;
+            if (diagonal && (isObstacle(ny * width + x) || isObstacle(y * width + nx))) {
+                continue;
+            }
+            if (isHeldByOther(next, tick) || isHeldByOther(next, tick + 1)
+                    || (!waiting && isHeldByOther(next, tick - 1))) {
+                continue;
+            }
+            if (nodes.containsKey(key(next, depth)) || nodeCount == maxNodes) {
+                continue;
+            }
+            addNode(next, depth, current);
+        }
+    }
+
+    private int addNode(int cell, int depth, int parent) {
+        int node = nodeCount++;
+        nodeCell[node] = cell;
+        nodeDepth[node] = depth;
+        nodeParent[node] = parent;
+        nodes.put(key(cell, depth), node);
+        int h = chebyshev(cell);
+        int width = grid.getWidth();
+        open.push(node, depth + h, GridSearchPlanner.octile(cell % width - goal % width, cell / width - goal / width));
+        return node;
+    }
+
+    // Occupied by a drone that is not moving along reservations of its own
+    private boolean isObstacle(int cell) {
+        int occupant = grid.getOccupant(cell);
+        return occupant >= 0 && occupant != droneId && reservations.getCell(occupant, now) != cell;
+    }
+
+    private boolean isHeldByOther(int cell, int tick) {
+        int holder = reservations.getHolder(cell, tick);
+        return holder >= 0 && holder != droneId;
+    }
+
+    private boolean isHeldAfterArrival(int cell, int arrival) {
+        // The tick after the arrival was checked when entering the cell
+        for (int tick = arrival + 2; tick <= arrival + TARGET_HOLD_TICKS; tick++) {
+            if (isHeldByOther(cell, tick)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int chebyshev(int cell) {
+        int width = grid.getWidth();
+        return Math.max(Math.abs(cell % width - goal % width), Math.abs(cell / width - goal / width));
+    }
+
+    private int[] reconstruct(int node) {
+        int[] steps = new int[nodeDepth[node]];
+        for (int n = node; nodeParent[n] >= 0; n = nodeParent[n]) {
+            steps[nodeDepth[n] - 1] = nodeCell[n];
+        }
+        return steps;
+    }
+
+    private static long key(int cell, int depth) {
+        return (long) depth << 32 | cell;
+    }
+}
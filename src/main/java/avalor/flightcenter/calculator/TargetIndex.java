@@ -0,0 +1,326 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Incremental index answering "most valuable unvisited cell closest to (x, y)".
+ * <p>
+ * Cells are bucketed into value tiers (highest value first) and every tier is laid out as an implicit,
+ * balanced k-d tree inside one shared array. Each tree node keeps the number of cells still available
+ * in its subtree, so visited cells are removed in place in O(log n) and exhausted subtrees are pruned
+ * from the nearest-neighbour search. A tier's tree is only built the first time a query reaches it,
+ * so indexing a large map costs a counting pass over the values.
+ * <p>
+ * Decay does not change the ranking: a cell only stops decaying once it is occupied, and occupied
+ * cells are visited, so all the cells still in the index always share the same decay.
+ * The index is not thread-safe.
+ */
+public class TargetIndex {
+    // Value ranges up to this size (or up to the cell count) are tiered with a direct lookup table
+    private static final int DIRECT_TIER_RANGE = 1 << 16;
+
+    private final NavigationGrid grid;
+    private final int width;
+    // Distinct cell values, highest first; tier t covers the slots [tierStart[t], tierStart[t + 1])
+    private final int[] tierValues;
+    private final int[] tierStart;
+    // Tier of every value in [tierLookupBase, tierLookupBase + tierLookup.length), or null to binary search tierValues
+    private final int[] tierLookup;
+    private final int tierLookupBase;
+    private final boolean[] built;
+    // Cells of every tier, arranged as an implicit k-d tree (split on x at even depths, on y at odd depths)
+    private final int[] cells;
+    // Available cells in the subtree rooted at each slot
+    private final int[] available;
+    private final BitSet removed;
+    private int availableCells;
+
+    // Search state of the running query
+    private int bestCell;
+    private long bestDistance;
+
+    public TargetIndex(NavigationGrid navigationGrid) {
+        this.grid = navigationGrid;
+        this.width = navigationGrid.getWidth();
+        int size = navigationGrid.size();
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            int value = navigationGrid.getValue(i);
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+        long range = (long) max - min + 1;
+        if (range <= Math.max(size, DIRECT_TIER_RANGE)) {
+            // Counting pass: count every value, then number the values present from the highest down
+            tierLookup = new int[(int) range];
+            tierLookupBase = min;
+            for (int i = 0; i < size; i++) {
+                tierLookup[navigationGrid.getValue(i) - min]++;
+            }
+            int tiers = 0;
+            for (int v = tierLookup.length - 1; v >= 0; v--) {
+                if (tierLookup[v] != 0) {
+                    tiers++;
+                }
+            }
+            tierValues = new int[tiers];
+            tierStart = new int[tiers + 1];
+            for (int v = tierLookup.length - 1, t = 0; v >= 0; v--) {
+                if (tierLookup[v] != 0) {
+                    tierValues[t] = min + v;
+                    tierStart[t + 1] = tierStart[t] + tierLookup[v];
+                    tierLookup[v] = t++;
+                }
+            }
+        } else {
+            tierLookup = null;
+            tierLookupBase = 0;
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = navigationGrid.getValue(i);
+            }
+            Arrays.sort(sorted);
+            int tiers = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    tiers++;
+                }
+            }
+            tierValues = new int[tiers];
+            for (int i = size - 1, t = 0; i >= 0; i--) {
+                if (i == size - 1 || sorted[i] != sorted[i + 1]) {
+                    tierValues[t++] = sorted[i];
+                }
+            }
+            tierStart = new int[tiers + 1];
+            for (int i = 0; i < size; i++) {
+                tierStart[tierOf(sorted[i]) + 1]++;
+            }
+            for (int t = 0; t < tiers; t++) {
+                tierStart[t + 1] += tierStart[t];
+            }
+        }
+        int tiers = tierValues.length;
+
+        cells = new int[size];
+        int[] cursor = Arrays.copyOf(tierStart, tiers);
+        for (int i = 0; i < size; i++) {
+            cells[cursor[tierOf(navigationGrid.getValue(i))]++] = i;
+        }
+
+        available = new int[size];
+        removed = new BitSet(size);
+        built = new boolean[tiers];
+        availableCells = size;
+    }
+
+    public int getAvailableCells() {
+        return availableCells;
+    }
+
+    public boolean isAvailable(int cell) {
+        return !removed.get(cell);
+    }
+
+    /**
+     * Takes a cell out of the index, typically because it has been visited.
+     */
+    public void remove(int cell) {
+        if (removed.get(cell)) {
+            return;
+        }
+        removed.set(cell);
+        availableCells--;
+        int tier = tierOf(grid.getValue(cell));
+        if (!built[tier]) {
+            // Counted when the tier is built
+            return;
+        }
+        int lo = tierStart[tier];
+        int hi = tierStart[tier + 1];
+        int axis = 0;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            available[mid]--;
+            long key = key(cell, axis);
+            long nodeKey = key(cells[mid], axis);
+            if (key == nodeKey) {
+                return;
+            }
+            if (key < nodeKey) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+            axis ^= 1;
+        }
+    }
+
+    /**
+     * Puts every cell back into the index.
+     */
+    public void reset() {
+        removed.clear();
+        for (int t = 0; t < tierValues.length; t++) {
+            if (built[t]) {
+                recount(tierStart[t], tierStart[t + 1]);
+            }
+        }
+        availableCells = cells.length;
+    }
+
+    /**
+     * Finds the closest available cell among the most valuable ones.
+     * Ties on distance go to the lowest cell index, i.e. the first cell in row-major order.
+     *
+     * @param excluded cells that are available but must not be returned (e.g. targets locked by other drones)
+     * @return the cell index, or -1 if no cell qualifies
+     */
+    public int findClosestMostValuable(int x, int y, IntPredicate excluded) {
+        for (int t = 0; t < tierValues.length; t++) {
+            int lo = tierStart[t];
+            int hi = tierStart[t + 1];
+            if (!built[t]) {
+                build(lo, hi, 0);
+                recount(lo, hi);
+                built[t] = true;
+            }
+            if (available[(lo + hi) >>> 1] == 0) {
+                continue;
+            }
+            bestCell = -1;
+            bestDistance = Long.MAX_VALUE;
+            search(lo, hi, 0, x, y, excluded);
+            if (bestCell >= 0) {
+                return bestCell;
+            }
+        }
+        return -1;
+    }
+
+    private void search(int lo, int hi, int axis, int x, int y, IntPredicate excluded) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (available[mid] == 0) {
+            return;
+        }
+        int cell = cells[mid];
+        int cellX = cell % width;
+        int cellY = cell / width;
+        if (!removed.get(cell) && (excluded == null || !excluded.test(cell))) {
+            long dx = cellX - x;
+            long dy = cellY - y;
+            long distance = dx * dx + dy * dy;
+            if (distance < bestDistance || (distance == bestDistance && cell < bestCell)) {
+                bestDistance = distance;
+                bestCell = cell;
+            }
+        }
+        long diff = axis == 0 ? x - cellX : y - cellY;
+        boolean leftFirst = diff < 0 || (diff == 0 && key(y * width + x, axis) < key(cell, axis));
+        if (leftFirst) {
+            search(lo, mid, axis ^ 1, x, y, excluded);
+            if (diff * diff <= bestDistance) {
+                search(mid + 1, hi, axis ^ 1, x, y, excluded);
+            }
+        } else {
+            search(mid + 1, hi, axis ^ 1, x, y, excluded);
+            if (diff * diff <= bestDistance) {
+                search(lo, mid, axis ^ 1, x, y, excluded);
+            }
+        }
+    }
+
+    private void build(int lo, int hi, int axis) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        build(lo, mid, axis ^ 1);
+        build(mid + 1, hi, axis ^ 1);
+    }
+
+    private int recount(int lo, int hi) {
+        if (lo >= hi) {
+            return 0;
+        }
+        int mid = (lo + hi) >>> 1;
+        available[mid] = (removed.get(cells[mid]) ? 0 : 1) + recount(lo, mid) + recount(mid + 1, hi);
+        return available[mid];
+    }
+
+    /**
+     * Quickselect: moves the k-th smallest cell of [lo, hi] (by axis key) to slot k,
+     * with smaller keys before it and larger keys after it.
+     */
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            int pivotSlot = medianOfThree(lo, (lo + hi) >>> 1, hi, axis);
+            long pivot = key(cells[pivotSlot], axis);
+            swap(pivotSlot, hi);
+            int store = lo;
+            for (int i = lo; i < hi; i++) {
+                if (key(cells[i], axis) < pivot) {
+                    swap(i, store++);
+                }
+            }
+            swap(store, hi);
+            if (store == k) {
+                return;
+            }
+            if (k < store) {
+                hi = store - 1;
+            } else {
+                lo = store + 1;
+            }
+        }
+    }
+
+    private int medianOfThree(int a, int b, int c, int axis) {
+        long ka = key(cells[a], axis);
+        long kb = key(cells[b], axis);
+        long kc = key(cells[c], axis);
+        if (ka < kb) {
+            return kb < kc ? b : (ka < kc ? c : a);
+        }
+        return ka < kc ? a : (kb < kc ? c : b);
+    }
+
+    // Coordinate on the split axis, with the cell index as tie-breaker so every key is unique
+    private long key(int cell, int axis) {
+        int coordinate = axis == 0 ? cell % width : cell / width;
+        return ((long) coordinate << 32) | cell;
+    }
+
+    private int tierOf(int value) {
+        if (tierLookup != null) {
+            return tierLookup[value - tierLookupBase];
+        }
+        int lo = 0;
+        int hi = tierValues.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tierValues[mid] > value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void swap(int a, int b) {
+        int tmp = cells[a];
+        cells[a] = cells[b];
+        cells[b] = tmp;
+    }
+}
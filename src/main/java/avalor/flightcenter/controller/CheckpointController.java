@@ -0,0 +1,62 @@
+package avalor.flightcenter.controller;
+
+import avalor.flightcenter.api.dto.CheckpointDTO;
+import avalor.flightcenter.service.SessionRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/simulation/checkpoint")
+public class CheckpointController {
+
+    private final SessionRegistry sessionRegistry;
+
+    public CheckpointController(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    /**
+     * Writes a checkpoint of the session now, in addition to the periodic ones.
+     */
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CheckpointDTO> checkpoint(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) throws IOException {
+        long start = System.nanoTime();
+        try {
+            long size = sessionRegistry.checkpoint(sessionId);
+            return ResponseEntity.ok(new CheckpointDTO(sessionId, size, elapsedMillis(start)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * Replaces the session state with its last checkpoint.
+     */
+    @PostMapping(value = "/restore", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CheckpointDTO> restore(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) throws IOException {
+        long start = System.nanoTime();
+        try {
+            long size = sessionRegistry.restore(sessionId);
+            return ResponseEntity.ok(new CheckpointDTO(sessionId, size, elapsedMillis(start)));
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
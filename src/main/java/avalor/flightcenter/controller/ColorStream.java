@@ -0,0 +1,290 @@
+package avalor.flightcenter.controller;
+
+import avalor.flightcenter.domain.ColorDelta;
+import avalor.flightcenter.domain.ColorSnapshot;
+import avalor.flightcenter.service.MapService;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Server-sent event stream of the map colors.
+ * A subscriber first gets a "snapshot" event (or the "delta" events it missed, when it reconnects with a
+ * Last-Event-ID still in the retained window), then one "delta" event per tick. Event ids are the delta
+ * sequence numbers; a resync delta is sent to subscribers as a fresh snapshot.
+ * <p>
+ * Subscribers that draw from another source (e.g. map tiles) can opt out of snapshots: they only get deltas,
+ * and a "resync" event carrying just the sequence number when every cell may have changed.
+ * <p>
+ * Events are written off the simulation thread, one task at a time per stream, on a sender pool shared by all
+ * streams, so a slow client never stalls the tick. At most {@link #MAX_QUEUED_DELTAS} deltas wait per stream; when
+ * the senders fall further behind, the queued deltas are replaced by a single resync. A subscriber whose event
+ * has been stuck in a write for {@link #STALL_MILLIS} is dropped; subscriptions end after
+ * {@link #TIMEOUT_MILLIS}, and clients reconnect with the last event id they got.
+ */
+final class ColorStream {
+    static final int MAX_QUEUED_DELTAS = 64;
+    static final long STALL_MILLIS = 10_000;
+    static final long TIMEOUT_MILLIS = 30 * 60_000;
+    private static final int[] NO_CELLS = new int[0];
+    private static final byte[] NO_COLORS = new byte[0];
+
+    private final MapService mapService;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Subscriptions still catching up; deltas are queued for them too
+    private final AtomicInteger joining = new AtomicInteger();
+    private final Executor sender;
+    // Subscriptions and closing; deltas wait in their own bounded queue, guarded by its monitor
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ColorDelta> queuedDeltas = new ArrayDeque<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Consumer<ColorDelta> listener;
+
+    ColorStream(MapService mapService, Executor sender) {
+        this.mapService = mapService;
+        this.sender = sender;
+        this.listener = delta -> {
+            if (!subscribers.isEmpty() || joining.get() > 0) {
+                dropStalled();
+                enqueue(delta);
+            }
+        };
+        mapService.addChangeListener(listener);
+    }
+
+    /**
+     * Detaches from the map service and ends every subscription.
+     */
+    void close() {
+        mapService.removeChangeListener(listener);
+        enqueue(() -> {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.emitter.complete();
+            }
+            subscribers.clear();
+        });
+    }
+
+    SseEmitter subscribe(Long lastSeq, boolean snapshots) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(TIMEOUT_MILLIS), snapshots);
+        SseEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> {
+            subscribers.remove(subscriber);
+            emitter.complete();
+        });
+        emitter.onError(e -> subscribers.remove(subscriber));
+        joining.incrementAndGet();
+        enqueue(() -> {
+            // Events published while catching up may be sent twice; clients skip sequence numbers they already applied
+            List<ColorDelta> missed = lastSeq == null ? null : mapService.getChangesSince(lastSeq);
+            boolean sent = true;
+            if (missed == null) {
+                ColorSnapshot snapshot = mapService.getColorSnapshot();
+                sent = snapshots
+                        ? send(subscriber, snapshot.getSeq(), "snapshot", snapshotJson(snapshot))
+                        : send(subscriber, snapshot.getSeq(), "resync", resyncJson(snapshot.getSeq()));
+            } else {
+                for (ColorDelta delta : missed) {
+                    if (!(sent = send(subscriber, delta.getSeq(), "delta", deltaJson(delta)))) {
+                        break;
+                    }
+                }
+            }
+            if (sent) {
+                subscribers.add(subscriber);
+            }
+            joining.decrementAndGet();
+        });
+        return emitter;
+    }
+
+    // Runs the tasks of this stream in order, at most one at a time
+    private void enqueue(Runnable task) {
+        pending.add(task);
+        scheduleDrain();
+    }
+
+    private void enqueue(ColorDelta delta) {
+        synchronized (queuedDeltas) {
+            if (queuedDeltas.size() >= MAX_QUEUED_DELTAS) {
+                // The subscribers reload the whole map instead of catching up delta by delta
+                queuedDeltas.clear();
+                delta = new ColorDelta(delta.getSeq(), true, NO_CELLS, NO_COLORS);
+            }
+            queuedDeltas.addLast(delta);
+        }
+        scheduleDrain();
+    }
+
+    private ColorDelta pollDelta() {
+        synchronized (queuedDeltas) {
+            return queuedDeltas.pollFirst();
+        }
+    }
+
+    private boolean hasQueuedDeltas() {
+        synchronized (queuedDeltas) {
+            return !queuedDeltas.isEmpty();
+        }
+    }
+
+    /**
+     * Drops the subscribers whose current event has been in a write for too long. The emitter cannot be completed
+     * while the write holds it, so the sender completes it once the write returns.
+     */
+    private void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long since = subscriber.sendingSince;
+            if (since != 0 && now - since > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS)) {
+                subscriber.stalled = true;
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            sender.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Runnable task = pending.poll();
+                if (task != null) {
+                    task.run();
+                    continue;
+                }
+                ColorDelta delta = pollDelta();
+                if (delta == null) {
+                    break;
+                }
+                broadcast(delta);
+            }
+        } finally {
+            draining.set(false);
+            if (!pending.isEmpty() || hasQueuedDeltas()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void broadcast(ColorDelta delta) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        // Encode once; event builders are single-use, so each subscriber gets its own
+        if (!delta.isResync()) {
+            String json = deltaJson(delta);
+            for (Subscriber subscriber : subscribers) {
+                send(subscriber, delta.getSeq(), "delta", json);
+            }
+            return;
+        }
+        String resync = resyncJson(delta.getSeq());
+        ColorSnapshot snapshot = null;
+        String snapshotJson = null;
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.snapshots) {
+                send(subscriber, delta.getSeq(), "resync", resync);
+                continue;
+            }
+            if (snapshot == null) {
+                snapshot = mapService.getColorSnapshot();
+                snapshotJson = snapshotJson(snapshot);
+            }
+            send(subscriber, snapshot.getSeq(), "snapshot", snapshotJson);
+        }
+    }
+
+    private boolean send(Subscriber subscriber, long seq, String name, String json) {
+        if (subscriber.stalled) {
+            return false;
+        }
+        subscriber.sendingSince = System.nanoTime();
+        try {
+            subscriber.emitter.send(SseEmitter.event()
+                    .id(Long.toString(seq))
+                    .name(name)
+                    .data(json, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return false;
+        } finally {
+            subscriber.sendingSince = 0;
+        }
+        if (subscriber.stalled) {
+            subscriber.emitter.completeWithError(new IOException("Color stream subscriber stalled"));
+            return false;
+        }
+        return true;
+    }
+
+    private static String resyncJson(long seq) {
+        return "{\"seq\":" + seq + "}";
+    }
+
+    // {"seq":12,"cells":[...],"colors":[...]} with palette indices
+    private static String deltaJson(ColorDelta delta) {
+        int[] cells = delta.getCells();
+        byte[] colors = delta.getColors();
+        StringBuilder json = new StringBuilder(32 + cells.length * 10);
+        json.append("{\"seq\":").append(delta.getSeq()).append(",\"cells\":[");
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(cells[i]);
+        }
+        json.append("],\"colors\":[");
+        for (int i = 0; i < colors.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(colors[i]);
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    // {"seq":12,"width":..,"height":..,"palette":[...],"colors":"<base64 palette indices>"}
+    private static String snapshotJson(ColorSnapshot snapshot) {
+        StringBuilder json = new StringBuilder(96 + snapshot.getColors().length * 4 / 3);
+        json.append("{\"seq\":").append(snapshot.getSeq())
+                .append(",\"width\":").append(snapshot.getWidth())
+                .append(",\"height\":").append(snapshot.getHeight())
+                .append(",\"palette\":[");
+        String[] palette = snapshot.getPalette();
+        for (int i = 0; i < palette.length; i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(palette[i]).append('"');
+        }
+        json.append("],\"colors\":\"").append(Base64.getEncoder().encodeToString(snapshot.getColors())).append("\"}");
+        return json.toString();
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final boolean snapshots;
+        // Start of the write in progress, 0 when idle; set once the subscriber is dropped for a stalled write
+        private volatile long sendingSince = 0;
+        private volatile boolean stalled = false;
+
+        private Subscriber(SseEmitter emitter, boolean snapshots) {
+            this.emitter = emitter;
+            this.snapshots = snapshots;
+        }
+    }
+}
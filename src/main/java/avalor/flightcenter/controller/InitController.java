@@ -6,11 +6,13 @@ import avalor.flightcenter.api.dto.PositionDTO;
 import avalor.flightcenter.api.mapper.PositionMapper;
 import avalor.flightcenter.domain.Position;
 import avalor.flightcenter.service.PathService;
+import avalor.flightcenter.service.SessionRegistry;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -19,16 +21,17 @@ import java.util.List;
 @RequestMapping("/init")
 public class InitController {
 
-    private final PathService pathService;
+    private final SessionRegistry sessionRegistry;
     private final PositionMapper positionMapper;
 
-    public InitController(PathService pathService, PositionMapper positionMapper) {
-        this.pathService = pathService;
+    public InitController(SessionRegistry sessionRegistry, PositionMapper positionMapper) {
+        this.sessionRegistry = sessionRegistry;
         this.positionMapper = positionMapper;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> init(@RequestBody BasicInitRequest request) {
+    public ResponseEntity<Void> init(@RequestBody BasicInitRequest request,
+                                     @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
         if (request == null) {
             return ResponseEntity.badRequest().build();
         }
@@ -36,6 +39,12 @@ public class InitController {
         if (drones == null || drones.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
+        PathService pathService;
+        try {
+            pathService = sessionRegistry.getOrCreate(sessionId).getPathService();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        }
         for (DroneDTO d : drones) {
             if (d == null) continue;
             String name = d.getName();
@@ -1,27 +1,59 @@
 package avalor.flightcenter.controller;
 
 import avalor.flightcenter.api.dto.BasicLocationRequest;
+import avalor.flightcenter.api.dto.DroneWaypointDTO;
 import avalor.flightcenter.api.dto.PositionDTO;
 import avalor.flightcenter.api.mapper.PositionMapper;
+import avalor.flightcenter.api.mapper.WaypointMapper;
 import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.PositionReport;
+import avalor.flightcenter.service.SessionRegistry;
+import avalor.flightcenter.service.SimulationSession;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 @RestController
 @RequestMapping("/location")
 public class LocationController {
 
+    private final SessionRegistry sessionRegistry;
     private final PositionMapper positionMapper;
+    private final WaypointMapper waypointMapper;
+    private final ObjectMapper objectMapper;
+    private final int maxBatchSize;
 
-    public LocationController(PositionMapper positionMapper) {
+    public LocationController(SessionRegistry sessionRegistry, PositionMapper positionMapper,
+                              WaypointMapper waypointMapper, ObjectMapper objectMapper,
+                              @Value("${flightcenter.location.max-batch-size:10000}") int maxBatchSize) {
+        this.sessionRegistry = sessionRegistry;
         this.positionMapper = positionMapper;
+        this.waypointMapper = waypointMapper;
+        this.objectMapper = objectMapper;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public BasicLocationRequest postLocation(@RequestBody BasicLocationRequest request) {
+    public BasicLocationRequest postLocation(@RequestBody BasicLocationRequest request,
+                                             @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        // Reporting drones keep their session alive
+        sessionRegistry.find(sessionId);
         // Validate minimal requirements
         if (request == null) {
             throw new IllegalArgumentException("Request body must not be null");
@@ -39,4 +71,69 @@ public class LocationController {
         // For now, this endpoint echoes the request back. In the future, you can route to a service.
         return request;
     }
+
+    /**
+     * Applies the positions of many drones in one go and returns their next waypoints, in request order.
+     * Entries without a drone name or current location are answered as not accepted.
+     * The array is parsed entry by entry, so an oversized batch is rejected without reading the rest of it.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<DroneWaypointDTO>> postLocations(InputStream body,
+                                                                @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) throws IOException {
+        List<BasicLocationRequest> requests = new ArrayList<>();
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return ResponseEntity.badRequest().build();
+            }
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    // Truncated array
+                    return ResponseEntity.badRequest().build();
+                }
+                if (requests.size() == maxBatchSize) {
+                    return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+                }
+                requests.add(objectMapper.readValue(parser, BasicLocationRequest.class));
+            }
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return applyBatch(sessionId, requests);
+    }
+
+    /**
+     * Same as the JSON batch, with one location request per line; lines are parsed as they arrive.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<DroneWaypointDTO>> postLocationStream(InputStream body,
+                                                                     @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) throws IOException {
+        List<BasicLocationRequest> requests = new ArrayList<>();
+        try (MappingIterator<BasicLocationRequest> lines = objectMapper.readerFor(BasicLocationRequest.class).readValues(body)) {
+            while (lines.hasNextValue()) {
+                if (requests.size() == maxBatchSize) {
+                    return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+                }
+                requests.add(lines.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            // A malformed line rejects the whole batch, as in the JSON variant
+            return ResponseEntity.badRequest().build();
+        }
+        return applyBatch(sessionId, requests);
+    }
+
+    private ResponseEntity<List<DroneWaypointDTO>> applyBatch(String sessionId, List<BasicLocationRequest> requests) {
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        List<PositionReport> reports = new ArrayList<>(requests.size());
+        for (BasicLocationRequest request : requests) {
+            boolean valid = request != null && request.getCurrentLocation() != null;
+            // Invalid entries keep their slot; the service rejects them, so the answers stay aligned with the requests
+            reports.add(new PositionReport(request == null ? null : request.getDroneName(),
+                    valid ? positionMapper.toDomain(request.getCurrentLocation()) : null));
+        }
+        return ResponseEntity.ok(waypointMapper.toDtoList(session.getPathService().recordDronePositions(reports)));
+    }
 }
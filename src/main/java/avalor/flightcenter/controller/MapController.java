@@ -1,114 +1,211 @@
 package avalor.flightcenter.controller;
 
-import avalor.flightcenter.service.MapService;
-import avalor.flightcenter.service.PathService;
+import avalor.flightcenter.domain.ColorSnapshot;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.service.SessionRegistry;
+import avalor.flightcenter.service.SimulationSession;
+import avalor.flightcenter.service.TileService;
+import avalor.flightcenter.utils.GridFile;
+import avalor.flightcenter.utils.MatrixParser;
+import avalor.flightcenter.utils.RunLength;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
-import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Controller
 @RequestMapping("/map")
 public class MapController {
 
-    private static final int MAX_CELLS_FOR_FULL_RENDER = 1_000_000; // safeguard to avoid 1M+ DOM nodes
-    private final MapService mapService;
-    private final PathService pathService;
+    // Threads writing the color streams of all sessions
+    private static final int STREAM_SENDER_THREADS = 4;
+    private final SessionRegistry sessionRegistry;
+    private final String startupMapFile;
+    private final ConcurrentMap<SimulationSession, ColorStream> colorStreams = new ConcurrentHashMap<>();
+    private final ExecutorService streamSenders;
 
-    public MapController(MapService mapService, PathService pathService) {
-        this.mapService = mapService;
-        this.pathService = pathService;
-        pathService.setMapService(mapService);
+    public MapController(SessionRegistry sessionRegistry,
+                         @Value("${flightcenter.map.file:}") String startupMapFile) {
+        this.sessionRegistry = sessionRegistry;
+        this.startupMapFile = startupMapFile;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.streamSenders = Executors.newFixedThreadPool(STREAM_SENDER_THREADS, r -> {
+            Thread thread = new Thread(r, "color-stream-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sessionRegistry.addRemovalListener(session -> {
+            ColorStream stream = colorStreams.remove(session);
+            if (stream != null) {
+                stream.close();
+            }
+        });
+    }
+
+    // Maps the configured binary map file, if any, and starts the simulation of the default session on the full grid
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadStartupMap() throws IOException {
+        if (startupMapFile == null || startupMapFile.isBlank()) {
+            return;
+        }
+        SimulationSession session = sessionRegistry.getOrCreate(SessionRegistry.DEFAULT_SESSION);
+        if (session.getMapService().getNavigationGrid() != null) {
+            // Resumed from a checkpoint
+            return;
+        }
+        GridFile gridFile = GridFile.load(Path.of(startupMapFile), true);
+        session.getMapService().init(gridFile.getGrid());
+        session.getPathService().init(gridFile.getGrid());
     }
 
     @GetMapping
-    public String uploadForm() {
+    public String uploadForm(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                             Model model) {
+        model.addAttribute("sessionId", sessionId);
+        // Show the viewer when a map is already loaded, e.g. from the startup map file
+        SimulationSession session = sessionRegistry.find(sessionId);
+        NavigationGrid grid = session == null ? null : session.getMapService().getNavigationGrid();
+        if (grid != null) {
+            addViewerAttributes(session, grid, model);
+        }
         return "map";
     }
 
     @PostMapping("/reset")
-    public String reset(Model model) {
+    public String reset(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                        Model model) {
         // Reset the services
-        pathService.reset();
-        mapService.reset();
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session != null) {
+            session.getPathService().reset();
+            session.getMapService().reset();
+        }
         // Clear the map attributes, so they can be re-initialized on the next upload
-        model.addAttribute("matrix", null);
-        model.addAttribute("colors", null);
+        model.addAttribute("mapLoaded", null);
         model.addAttribute("rows", null);
         model.addAttribute("cols", null);
-        model.addAttribute("renderedRows", null);
-        model.addAttribute("renderedCols", null);
-        model.addAttribute("sampleStep", null);
-        model.addAttribute("sampled", null);
+        model.addAttribute("maxZoom", null);
+        model.addAttribute("tileSize", null);
         model.addAttribute("maxVal", null);
         model.addAttribute("minVal", null);
-        return "redirect:/map";
+        model.addAttribute("sessionId", null);
+        return "redirect:/map?sessionId=" + (session == null ? SessionRegistry.DEFAULT_SESSION : session.getId());
     }
 
     // Returns latest computed colors for the last rendered matrix (if any)
     @GetMapping(value = "/colors", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public List<List<String>> getLatestColors() {
-        List<List<String>> local = mapService.getColors();
+    public List<List<String>> getLatestColors(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        SimulationSession session = sessionRegistry.find(sessionId);
+        List<List<String>> local = session == null ? null : session.getMapService().getColors();
         if (local == null || local.isEmpty()) {
             return List.of();
         }
         return local;
     }
 
+    /**
+     * Binary form of the latest colors: one palette index per cell, row-major, optionally run-length encoded
+     * ({@code encoding=rle}, see {@link RunLength}). Dimensions, palette and sequence number are sent as headers.
+     */
+    @GetMapping(value = "/colors", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<byte[]> getLatestColorIndices(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                                                        @RequestParam(value = "encoding", required = false) String encoding) {
+        boolean rle = "rle".equalsIgnoreCase(encoding);
+        if (encoding != null && !rle && !"raw".equalsIgnoreCase(encoding)) {
+            return ResponseEntity.badRequest().build();
+        }
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        ColorSnapshot snapshot = session.getMapService().getColorSnapshot();
+        byte[] body = rle ? RunLength.encode(snapshot.getColors()) : snapshot.getColors();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("X-Map-Width", Integer.toString(snapshot.getWidth()))
+                .header("X-Map-Height", Integer.toString(snapshot.getHeight()))
+                .header("X-Color-Seq", Long.toString(snapshot.getSeq()))
+                .header("X-Color-Palette", String.join(",", snapshot.getPalette()))
+                .header("X-Color-Encoding", rle ? "rle" : "raw")
+                .body(body);
+    }
+
+    // Live color updates: a snapshot, then one delta of (cell index, palette index) pairs per tick
+    @GetMapping(value = "/colors/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<SseEmitter> streamColors(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                                                   @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                   @RequestParam(value = "snapshots", defaultValue = "true") boolean snapshots) {
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        ColorStream stream = colorStreams.computeIfAbsent(session, s -> new ColorStream(s.getMapService(), streamSenders));
+        return ResponseEntity.ok(stream.subscribe(lastEventId, snapshots));
+    }
+
+    /**
+     * PNG tile of the full-resolution map; zoom level {@code maxZoom} shows one cell per pixel.
+     */
+    @GetMapping("/tiles/{z}/{x}/{y}.png")
+    @ResponseBody
+    public ResponseEntity<byte[]> getTile(@PathVariable("z") int zoom, @PathVariable("x") int tileX,
+                                          @PathVariable("y") int tileY,
+                                          @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                                          @RequestParam(value = "layer", required = false) String layer) {
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        byte[] tile;
+        try {
+            tile = session.getTileService().getTile(zoom, tileX, tileY, layer);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (tile == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Color tiles change every tick; the viewer refetches the tiles touched by the color stream
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .header("Cache-Control", "no-store")
+                .body(tile);
+    }
+
     @PostMapping
-    public String handleUpload(@RequestParam("file") MultipartFile file, Model model) {
+    public String handleUpload(@RequestParam("file") MultipartFile file,
+                               @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                               Model model) {
+        model.addAttribute("sessionId", sessionId);
         if (file == null || file.isEmpty()) {
             model.addAttribute("error", "Please select a non-empty .txt file containing a numeric matrix.");
             return "map";
         }
         try {
-            List<List<Integer>> matrix = parseMatrix(file);
-            int rows = matrix.size();
-            int cols = matrix.getFirst().size();
-
-            int cells = rows * cols;
-            int sampleStep = 1;
-            boolean sampled = false;
-            if (cells > MAX_CELLS_FOR_FULL_RENDER) {
-                // Compute a sampling step to keep rendered cells under threshold
-                double factor = Math.ceil(Math.sqrt((double) cells / MAX_CELLS_FOR_FULL_RENDER));
-                sampleStep = Math.max(1, (int) factor);
-                sampled = sampleStep > 1;
-            }
-
-            List<List<Integer>> toRender;
-            if (sampled) {
-                toRender = downsample(matrix, sampleStep);
-            } else {
-                toRender = matrix;
-            }
-
-            // Initialize the services with the new data matrix
-            mapService.init(toRender.size(), toRender.getFirst().size());
-            pathService.init(toRender);
-
-            model.addAttribute("matrix", toRender);
-            model.addAttribute("colors", mapService.getColors());
-            model.addAttribute("maxVal", findMax(matrix));
-            model.addAttribute("minVal", findMin(matrix));
-            model.addAttribute("rows", rows);
-            model.addAttribute("cols", cols);
-            model.addAttribute("renderedRows", toRender.size());
-            model.addAttribute("renderedCols", toRender.getFirst().size());
-            model.addAttribute("sampleStep", sampleStep);
-            model.addAttribute("sampled", sampled);
-            return "map";
-        } catch (IllegalArgumentException e) {
+            MatrixParser.ParsedMatrix matrix = parseMatrix(file);
+            NavigationGrid grid = new NavigationGrid(matrix.getCols(), matrix.getRows(), matrix.getValues());
+            return renderMap(sessionId, grid, matrix.getMinValue(), matrix.getMaxValue(), model);
+        } catch (IllegalArgumentException | IllegalStateException e) {
             model.addAttribute("error", e.getMessage());
             return "map";
         } catch (IOException e) {
@@ -117,65 +214,68 @@ public class MapController {
         }
     }
 
-    private List<List<Integer>> parseMatrix(MultipartFile file) throws IOException {
-        List<List<Integer>> matrix = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            int expectedCols = -1;
-            int lineNo = 0;
-            while ((line = br.readLine()) != null) {
-                lineNo++;
-                line = line.trim();
-                if (line.isEmpty()) {
-                    continue; // skip blank lines
-                }
-                String[] parts = line.split("\\s+");
-                List<Integer> row = new ArrayList<>(parts.length);
-                for (String p : parts) {
-                    if (!StringUtils.hasText(p)) continue;
-                    try {
-                        row.add(Integer.parseInt(p));
-                    } catch (NumberFormatException nfe) {
-                        throw new IllegalArgumentException("Invalid number at line " + lineNo + ": '" + p + "'");
-                    }
-                }
-                if (row.isEmpty()) continue;
-                if (expectedCols == -1) {
-                    expectedCols = row.size();
-                } else if (row.size() != expectedCols) {
-                    throw new IllegalArgumentException("Inconsistent row length at line " + lineNo + ". Expected " + expectedCols + ", got " + row.size());
-                }
-                matrix.add(row);
-            }
+    @PostMapping("/binary")
+    public String handleBinaryUpload(@RequestParam("file") MultipartFile file,
+                                     @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId,
+                                     Model model) {
+        model.addAttribute("sessionId", sessionId);
+        if (file == null || file.isEmpty()) {
+            model.addAttribute("error", "Please select a non-empty " + GridFile.EXTENSION + " map file.");
+            return "map";
         }
-        if (matrix.isEmpty()) {
-            throw new IllegalArgumentException("The provided file does not contain any numbers.");
+        try {
+            GridFile gridFile = mapUploadedFile(file);
+            return renderMap(sessionId, gridFile.getGrid(), gridFile.getMinValue(), gridFile.getMaxValue(), model);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            model.addAttribute("error", e.getMessage());
+            return "map";
+        } catch (IOException e) {
+            model.addAttribute("error", "Failed to read file: " + e.getMessage());
+            return "map";
         }
-        return matrix;
     }
 
-    private List<List<Integer>> downsample(List<List<Integer>> matrix, int step) {
-        List<List<Integer>> sampled = new ArrayList<>();
-        for (int i = 0; i < matrix.size(); i += step) {
-            List<Integer> row = matrix.get(i);
-            List<Integer> outRow = new ArrayList<>();
-            for (int j = 0; j < row.size(); j += step) {
-                outRow.add(row.get(j));
-            }
-            sampled.add(outRow);
-        }
-        return sampled;
+    // The simulation runs on the full grid; the page only loads the tiles in view
+    private String renderMap(String sessionId, NavigationGrid grid, int minValue, int maxValue, Model model) {
+        SimulationSession session = sessionRegistry.getOrCreate(sessionId);
+        // Initialize the services with the new data matrix
+        session.getMapService().init(grid);
+        session.getPathService().init(grid);
+
+        addViewerAttributes(session, grid, model);
+        model.addAttribute("maxVal", maxValue);
+        model.addAttribute("minVal", minValue);
+        return "map";
     }
 
-    private int findMax(List<List<Integer>> matrix) {
-        int max = Integer.MIN_VALUE;
-        for (List<Integer> row : matrix) for (int v : row) if (v > max) max = v;
-        return max;
+    private void addViewerAttributes(SimulationSession session, NavigationGrid grid, Model model) {
+        model.addAttribute("mapLoaded", true);
+        model.addAttribute("sessionId", session.getId());
+        model.addAttribute("rows", grid.getHeight());
+        model.addAttribute("cols", grid.getWidth());
+        model.addAttribute("maxZoom", session.getTileService().getMaxZoom());
+        model.addAttribute("tileSize", TileService.TILE_SIZE);
     }
 
-    private int findMin(List<List<Integer>> matrix) {
-        int min = Integer.MAX_VALUE;
-        for (List<Integer> row : matrix) for (int v : row) if (v < min) min = v;
-        return min;
+    private MatrixParser.ParsedMatrix parseMatrix(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return MatrixParser.parse(in, file.getSize());
+        }
+    }
+
+    // Spools the upload to a temporary file and maps it; the mapping outlives the deleted file
+    private GridFile mapUploadedFile(MultipartFile file) throws IOException {
+        Path tmp = Files.createTempFile("flightcenter-map-", GridFile.EXTENSION);
+        try {
+            file.transferTo(tmp);
+            return GridFile.load(tmp, true);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                // Platforms that lock mapped files release them on exit
+                tmp.toFile().deleteOnExit();
+            }
+        }
     }
 }
@@ -1,34 +1,99 @@
 package avalor.flightcenter.controller;
 
 import avalor.flightcenter.api.dto.BasicPathResponse;
-import avalor.flightcenter.api.dto.PositionDTO;
+import avalor.flightcenter.api.dto.HistoryPathResponse;
 import avalor.flightcenter.api.mapper.PositionMapper;
-import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.HistoryPage;
+import avalor.flightcenter.domain.PathUpdate;
 import avalor.flightcenter.service.PathService;
+import avalor.flightcenter.service.SessionRegistry;
+import avalor.flightcenter.service.SimulationSession;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/path")
 public class PathController {
 
-    private final PathService pathService;
+    private final SessionRegistry sessionRegistry;
     private final PositionMapper positionMapper;
+    private final long maxWaitMillis;
+    private final int maxHistoryPage;
 
-    public PathController(PathService pathService, PositionMapper positionMapper) {
-        this.pathService = pathService;
+    public PathController(SessionRegistry sessionRegistry, PositionMapper positionMapper,
+                          @Value("${flightcenter.path.max-wait-ms:30000}") long maxWaitMillis,
+                          @Value("${flightcenter.history.max-page-size:1000}") int maxHistoryPage) {
+        this.sessionRegistry = sessionRegistry;
         this.positionMapper = positionMapper;
+        this.maxWaitMillis = maxWaitMillis;
+        this.maxHistoryPage = maxHistoryPage;
     }
 
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public BasicPathResponse getPath(@RequestParam("droneName") String droneName) {
-        List<Position> positions = pathService.getPathForDrone(droneName);
-        List<PositionDTO> dtoList = positionMapper.toDtoList(positions);
-        return new BasicPathResponse(droneName, dtoList);
+    public BasicPathResponse getPath(@RequestParam("droneName") String droneName,
+                                     @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        SimulationSession session = sessionRegistry.find(sessionId);
+        // An unknown session has no drones, so the path is empty
+        return toResponse(droneName, session == null ? null : session.getPathService().getPathUpdate(droneName));
+    }
+
+    /**
+     * Long-poll variant of {@link #getPath}: answers as soon as the route version of the drone differs from
+     * {@code sinceVersion}, or with the unchanged route after {@code waitMs}. The request does not hold a
+     * thread while it waits.
+     */
+    @GetMapping(value = "/updates", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<BasicPathResponse> awaitPath(@RequestParam("droneName") String droneName,
+                                                       @RequestParam(value = "sinceVersion", defaultValue = "-1") long sinceVersion,
+                                                       @RequestParam(value = "waitMs", required = false) Long waitMs,
+                                                       @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        long timeout = waitMs == null ? maxWaitMillis : Math.max(1, Math.min(waitMs, maxWaitMillis));
+        DeferredResult<BasicPathResponse> result = new DeferredResult<>(timeout);
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session == null) {
+            result.setResult(toResponse(droneName, null));
+            return result;
+        }
+        PathService pathService = session.getPathService();
+        Consumer<PathUpdate> listener = update -> result.setResult(toResponse(droneName, update));
+        result.onTimeout(() -> result.setResult(toResponse(droneName, pathService.getPathUpdate(droneName))));
+        result.onCompletion(() -> pathService.unwatchPath(droneName, listener));
+        pathService.watchPath(droneName, sinceVersion, listener);
+        return result;
+    }
+
+    /**
+     * Pages through the cells the drone has flown through, oldest first. Pages start at {@code from}, or at the
+     * oldest position still kept when older ones were dropped; the next page starts at {@code from} plus the
+     * number of positions returned.
+     */
+    @GetMapping(value = "/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    public HistoryPathResponse getHistory(@RequestParam("droneName") String droneName,
+                                          @RequestParam(value = "from", defaultValue = "0") long from,
+                                          @RequestParam(value = "limit", required = false) Integer limit,
+                                          @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        int pageSize = limit == null ? maxHistoryPage : Math.max(0, Math.min(limit, maxHistoryPage));
+        SimulationSession session = sessionRegistry.find(sessionId);
+        HistoryPage page = session == null ? null : session.getPathService().getHistory(droneName, from, pageSize);
+        if (page == null) {
+            return new HistoryPathResponse(droneName, 0, 0, 0, 0, List.of());
+        }
+        return new HistoryPathResponse(droneName, page.getFrom(), page.getSize(), page.getFirstAvailable(),
+                page.getPathValue(), positionMapper.toDtoList(page.getPositions()));
+    }
+
+    private BasicPathResponse toResponse(String droneName, PathUpdate update) {
+        if (update == null) {
+            return new BasicPathResponse(droneName, List.of(), 0);
+        }
+        return new BasicPathResponse(droneName, positionMapper.toDtoList(update.getPositions()), update.getVersion());
     }
 }
@@ -0,0 +1,56 @@
+package avalor.flightcenter.controller;
+
+import avalor.flightcenter.api.dto.SimulationClockDTO;
+import avalor.flightcenter.api.mapper.SimulationClockMapper;
+import avalor.flightcenter.service.SessionRegistry;
+import avalor.flightcenter.service.SimulationSession;
+import avalor.flightcenter.utils.SimulationClock;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/simulation/clock")
+public class SimulationController {
+
+    private final SessionRegistry sessionRegistry;
+    private final SimulationClockMapper simulationClockMapper;
+
+    public SimulationController(SessionRegistry sessionRegistry, SimulationClockMapper simulationClockMapper) {
+        this.sessionRegistry = sessionRegistry;
+        this.simulationClockMapper = simulationClockMapper;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SimulationClockDTO> getClock(@RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        SimulationSession session = sessionRegistry.find(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(simulationClockMapper.toDto(session.getSimulationClock().getStats()));
+    }
+
+    /**
+     * Changes the clock of the session; omitted settings keep their current value.
+     */
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SimulationClockDTO> configureClock(@RequestParam(value = "mode", required = false) String mode,
+                                                             @RequestParam(value = "periodMs", required = false) Long periodMillis,
+                                                             @RequestParam(value = "speed", required = false) Double speed,
+                                                             @RequestParam(value = "sessionId", defaultValue = SessionRegistry.DEFAULT_SESSION) String sessionId) {
+        try {
+            SimulationClock clock = sessionRegistry.getOrCreate(sessionId).getSimulationClock();
+            SimulationClock.Stats current = clock.getStats();
+            clock.configure(mode == null ? current.getMode() : SimulationClock.Mode.parse(mode),
+                    periodMillis == null ? current.getPeriodMillis() : periodMillis,
+                    speed == null ? current.getSpeed() : speed);
+            return ResponseEntity.ok(simulationClockMapper.toDto(clock.getStats()));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package avalor.flightcenter.domain;
+
+/**
+ * Color changes published at the end of a simulation tick: the cells that changed and their new palette index.
+ * A delta flagged as {@code resync} means the color matrix was cleared or replaced, so consumers must reload
+ * a full {@link ColorSnapshot} instead of applying cell changes.
+ */
+public class ColorDelta {
+    private final long seq;
+    private final boolean resync;
+    private final int[] cells;
+    private final byte[] colors;
+
+    public ColorDelta(long seq, boolean resync, int[] cells, byte[] colors) {
+        this.seq = seq;
+        this.resync = resync;
+        this.cells = cells;
+        this.colors = colors;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+
+    public int[] getCells() {
+        return cells;
+    }
+
+    public byte[] getColors() {
+        return colors;
+    }
+}
@@ -0,0 +1,55 @@
+package avalor.flightcenter.domain;
+
+/**
+ * Full color matrix as palette indices (row-major, {@code y * width + x}), taken after the delta {@code seq}.
+ * Snapshots are shared between readers; the arrays must not be modified.
+ * <p>
+ * The colors are handed over as the chunks of the live matrix at publish time, which the map copies before
+ * writing to them again; they are joined into one array the first time a reader asks for it.
+ */
+public class ColorSnapshot {
+    private final long seq;
+    private final int width;
+    private final int height;
+    private final String[] palette;
+    private byte[][] chunks;
+    private final int chunkShift;
+    private byte[] colors;
+
+    public ColorSnapshot(long seq, int width, int height, String[] palette, byte[][] chunks, int chunkShift) {
+        this.seq = seq;
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String[] getPalette() {
+        return palette;
+    }
+
+    public synchronized byte[] getColors() {
+        if (colors == null) {
+            byte[] joined = new byte[width * height];
+            for (int c = 0; c < chunks.length; c++) {
+                System.arraycopy(chunks[c], 0, joined, c << chunkShift, chunks[c].length);
+            }
+            colors = joined;
+            chunks = null;
+        }
+        return colors;
+    }
+}
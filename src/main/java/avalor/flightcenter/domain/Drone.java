@@ -2,22 +2,41 @@ package avalor.flightcenter.domain;
 
 import jakarta.validation.constraints.NotNull;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Drone {
+    // Stable id assigned by the fleet, used to index per-drone state and to pick the drone color
+    private final int id;
     @NotNull
     private final String name;
-    private final List<Position> historyPath = Collections.synchronizedList(new ArrayList<>());
+    // Cells the drone left, oldest first; guarded by its own lock
+    private final Trajectory history;
     private Position currentPosition;
     private Position targetPosition;
     private List<Position> targetPath;
-
-
-    public Drone(String name, Position initialPosition) {
+    private long pathVersion = 0;
+    // Immutable copy of the current route and the number of its cells flown, so publishing is O(1)
+    private List<Position> routeCopy = List.of();
+    private int routeFlown = 0;
+    // Route state published for readers, replaced by publishPath()
+    private volatile PathUpdate publishedPath;
+
+    /**
+     * @param history trajectory store of the drone, or null to keep the whole trajectory in memory
+     */
+    public Drone(int id, String name, Position initialPosition, Trajectory history) {
+        this.id = id;
         this.name = name;
+        this.history = history == null ? new Trajectory(0, null) : history;
         this.currentPosition = Position.builder(initialPosition).build();
         this.targetPosition = null;
         targetPath = null;
+        publishedPath = new PathUpdate(name, 0, List.of());
+    }
+
+    public int getId() {
+        return id;
     }
 
     public String getName() {
@@ -37,7 +56,7 @@ public class Drone {
     }
 
     public synchronized void setTargetPosition(Position targetPosition) {
-        this.targetPosition = Position.builder(targetPosition).build();
+        this.targetPosition = targetPosition == null ? null : Position.builder(targetPosition).build();
     }
 
     public synchronized List<Position> getTargetPath() {
@@ -45,16 +64,95 @@ public class Drone {
     }
 
     public synchronized void setTargetPath(List<Position> targetPath) {
+        // Re-planning the route the drone still has to fly is not a new version
+        if (!samePath(this.targetPath, targetPath)) {
+            pathVersion++;
+        }
         this.targetPath = targetPath;
+        routeCopy = targetPath == null ? List.of() : List.copyOf(targetPath);
+        routeFlown = 0;
+    }
+
+    public synchronized long getPathVersion() {
+        return pathVersion;
+    }
+
+    /**
+     * Returns the remaining route with its version as of the last {@link #publishPath()}, without locking.
+     */
+    public PathUpdate getPathUpdate() {
+        return publishedPath;
+    }
+
+    /**
+     * Makes the current route visible to {@link #getPathUpdate()} readers.
+     */
+    public synchronized void publishPath() {
+        PathUpdate published = publishedPath;
+        int flown = Math.min(routeFlown, routeCopy.size());
+        if (published.getVersion() == pathVersion && published.getPositions().size() == routeCopy.size() - flown) {
+            return;
+        }
+        publishedPath = new PathUpdate(name, pathVersion, routeCopy.subList(flown, routeCopy.size()));
+    }
+
+    private static boolean samePath(List<Position> a, List<Position> b) {
+        if (a == null || a.isEmpty()) {
+            return b == null || b.isEmpty();
+        }
+        return a.equals(b);
+    }
+
+
+    public long getHistorySize() {
+        return history.size();
+    }
+
+    /**
+     * Reads part of the trajectory without waiting for the drone lock.
+     */
+    public HistoryPage getHistory(long from, int limit) {
+        return history.read(from, limit);
+    }
+
+    public void clearHistory() {
+        history.clear();
+    }
+
+    /**
+     * Drops the trajectory and its spill file, once the drone left the simulation.
+     */
+    public void closeHistory() {
+        history.close();
     }
 
+    /**
+     * Counter bumped by every {@link #clearHistory()}.
+     */
+    public long getHistoryEpoch() {
+        return history.getEpoch();
+    }
 
-    public synchronized List<Position> getHistoryPath() {
-        return historyPath;
+    /**
+     * Copies the trajectory positions still in memory, up to the first {@code size} ones, or returns null if
+     * the history was cleared since the given epoch. Does not wait for the drone lock.
+     */
+    public List<Position> copyRecentHistory(long epoch, long size) {
+        return history.copyRecent(epoch, size);
     }
 
-    public synchronized void clearHistoryPath() {
-        historyPath.clear();
+    /**
+     * Restores the route and history of a drone loaded from a checkpoint.
+     */
+    public synchronized void restoreState(Position targetPosition, List<Position> targetPath, long pathVersion,
+                                          long historySize, long travelledPathValue, List<Position> recentHistory) {
+        setTargetPosition(targetPosition);
+        this.targetPath = targetPath == null ? null : new ArrayList<>(targetPath);
+        this.routeCopy = targetPath == null ? List.of() : List.copyOf(targetPath);
+        this.routeFlown = 0;
+        this.pathVersion = pathVersion;
+        history.restore(historySize, travelledPathValue, recentHistory);
+        publishPath();
     }
 
     public synchronized boolean isTargetReached() {
@@ -68,13 +166,32 @@ public class Drone {
         return targetPath.getFirst();
     }
 
+    /**
+     * Drops the route up to and including the given position, when the route passes through it.
+     *
+     * @return whether the position was on the route
+     */
+    public synchronized boolean skipPathTo(Position position) {
+        if (targetPath == null) {
+            return false;
+        }
+        int reached = targetPath.indexOf(position);
+        if (reached < 0) {
+            return false;
+        }
+        targetPath.subList(0, reached + 1).clear();
+        routeFlown += reached + 1;
+        return true;
+    }
+
     public synchronized Position moveToNextPosition() {
         if (targetPath == null || targetPath.isEmpty()) {
             return null;
         }
         Position nextPosition = targetPath.removeFirst();
+        routeFlown++;
         if (nextPosition != null) {
-            historyPath.add(currentPosition);
+            history.add(currentPosition);
             currentPosition = nextPosition;
             return currentPosition;
         } else {
@@ -82,12 +199,22 @@ public class Drone {
         }
     }
 
-    public synchronized int getTravelledPathValue() {
-        return Optional.of(historyPath)
-                .orElseGet(List::of)
-                .stream()
-                .filter(Objects::nonNull)
-                .mapToInt(p -> p.getValue() + p.getDecay())
-                .sum();
+    /**
+     * Consumes a wait step of the route, i.e. the current position repeated: the drone stays where it is and the
+     * trajectory does not grow.
+     *
+     * @return whether the route started with a wait step
+     */
+    public synchronized boolean holdPosition() {
+        if (targetPath == null || targetPath.isEmpty() || !targetPath.getFirst().equals(currentPosition)) {
+            return false;
+        }
+        targetPath.removeFirst();
+        routeFlown++;
+        return true;
+    }
+
+    public long getTravelledPathValue() {
+        return history.getPathValue();
     }
 }
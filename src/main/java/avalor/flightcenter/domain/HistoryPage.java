@@ -0,0 +1,54 @@
+package avalor.flightcenter.domain;
+
+import java.util.List;
+
+/**
+ * Part of the trajectory of a drone, with the totals of the whole trajectory.
+ */
+public class HistoryPage {
+    private final long size;
+    private final long firstAvailable;
+    private final long from;
+    private final List<Position> positions;
+    private final long pathValue;
+
+    public HistoryPage(long size, long firstAvailable, long from, List<Position> positions, long pathValue) {
+        this.size = size;
+        this.firstAvailable = firstAvailable;
+        this.from = from;
+        this.positions = positions;
+        this.pathValue = pathValue;
+    }
+
+    /**
+     * Number of positions in the whole trajectory.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Index of the oldest position that can still be read; older ones were dropped to bound the memory.
+     */
+    public long getFirstAvailable() {
+        return firstAvailable;
+    }
+
+    /**
+     * Index of the first position of this page.
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    public List<Position> getPositions() {
+        return positions;
+    }
+
+    /**
+     * Sum of the value and decay of all positions of the trajectory.
+     */
+    public long getPathValue() {
+        return pathValue;
+    }
+}
@@ -0,0 +1,298 @@
+package avalor.flightcenter.domain;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Flat, struct-of-arrays representation of the navigation planes.
+ * Every cell is addressed by its index {@code y * width + x}; values, decay and occupancy
+ * are kept in primitive arrays instead of one {@link Position} object per cell.
+ * Values are read through an {@link IntBuffer}, so they can live on the heap or in a memory-mapped map file.
+ * Decay and occupancy always stay on the heap, 12 bytes per cell: drones visit every cell before the navigation
+ * starts over, so allocating them lazily would only postpone the same footprint.
+ * Occupancy holds the id of the occupying drone and is updated with compare-and-set, so drones can
+ * reserve cells concurrently; values and decay are not thread-safe and are guarded by the services.
+ * <p>
+ * Decay is computed lazily. Every decay pass only advances a tick counter; a cell remembers the last pass
+ * that saw it occupied, and its decay is the number of passes since then (or since the last reset), capped
+ * at {@link #MAX_DECAY_VAL}. This gives the same values as incrementing every free cell on every pass.
+ */
+public class NavigationGrid {
+    public static final int MAX_DECAY_VAL = 1000;
+
+    private final int width;
+    private final int height;
+    private final IntBuffer values;
+    // Last decay pass that saw each cell occupied
+    private final int[] zeroDecayTick;
+    // 0 for a free cell, otherwise (id of the occupying drone + 1) << 32 | number of passes done when it was occupied
+    private final AtomicLongArray occupants;
+    // Decay passes done so far, and the pass count at the last decay reset
+    private int tick = 0;
+    private int resetTick = 0;
+    // Set while a checkpoint copies the decay ticks; release() records the values it overwrites
+    private volatile DecayLog decayLog = null;
+
+    public NavigationGrid(int width, int height, int[] values) {
+        this(width, height, values == null ? null : IntBuffer.wrap(values));
+    }
+
+    public NavigationGrid(int width, int height, IntBuffer values) {
+        if (width <= 0 || height <= 0 || values == null || (long) width * height != values.limit()) {
+            throw new IllegalArgumentException("Invalid navigation grid dimensions");
+        }
+        this.width = width;
+        this.height = height;
+        this.values = values;
+        this.zeroDecayTick = new int[values.limit()];
+        this.occupants = new AtomicLongArray(values.limit());
+    }
+
+    public static NavigationGrid fromMatrix(List<List<Integer>> matrix) {
+        if (matrix == null || matrix.isEmpty() || matrix.getFirst().isEmpty()) {
+            throw new IllegalArgumentException("The navigation matrix must not be empty");
+        }
+        int rows = matrix.size();
+        int cols = matrix.getFirst().size();
+        int[] values = new int[rows * cols];
+        for (int y = 0; y < rows; y++) {
+            List<Integer> row = matrix.get(y);
+            if (row.size() != cols) {
+                throw new IllegalArgumentException("Inconsistent row length at row " + y);
+            }
+            for (int x = 0; x < cols; x++) {
+                values[y * cols + x] = row.get(x);
+            }
+        }
+        return new NavigationGrid(cols, rows, values);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return zeroDecayTick.length;
+    }
+
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    public int xOf(int index) {
+        return index % width;
+    }
+
+    public int yOf(int index) {
+        return index / width;
+    }
+
+    public boolean isInBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public int getValue(int index) {
+        return values.get(index);
+    }
+
+    public int getDecay(int index) {
+        long occupant = occupants.get(index);
+        if (occupant != 0 && (int) occupant < tick) {
+            // At least one decay pass saw the cell occupied
+            return 0;
+        }
+        return Math.min(tick - Math.max(zeroDecayTick[index], resetTick), MAX_DECAY_VAL);
+    }
+
+    public boolean isOccupied(int index) {
+        return occupants.get(index) != 0;
+    }
+
+    /**
+     * Returns the id of the drone occupying the cell, or -1 if the cell is free.
+     */
+    public int getOccupant(int index) {
+        return (int) (occupants.get(index) >>> 32) - 1;
+    }
+
+    /**
+     * Atomically reserves a free cell for the given drone.
+     *
+     * @return true if the cell is now held by the drone (including when it already was)
+     */
+    public boolean tryOccupy(int index, int droneId) {
+        return occupants.compareAndSet(index, 0, occupant(droneId, tick)) || getOccupant(index) == droneId;
+    }
+
+    /**
+     * Marks the cell as held by the drone regardless of its current state, e.g. for positions reported by the drone itself.
+     */
+    public void occupy(int index, int droneId) {
+        long current = occupants.get(index);
+        // A cell that stays occupied keeps the tick it was first occupied at
+        occupants.set(index, occupant(droneId, current != 0 ? (int) current : tick));
+    }
+
+    /**
+     * Frees the cell if it is held by the given drone.
+     */
+    public void release(int index, int droneId) {
+        long current = occupants.get(index);
+        if (current == 0 || getOccupant(index) != droneId) {
+            return;
+        }
+        if ((int) current < tick) {
+            DecayLog log = decayLog;
+            if (log != null) {
+                log.record(index, zeroDecayTick[index]);
+            }
+            zeroDecayTick[index] = tick;
+        }
+        occupants.compareAndSet(index, current, 0);
+    }
+
+    /**
+     * Runs one decay pass: free cells decay by one more step, occupied ones stay at zero.
+     */
+    public void advanceTick() {
+        if (tick == Integer.MAX_VALUE) {
+            rebaseTicks();
+        }
+        tick++;
+    }
+
+    /**
+     * Clears the decay of every cell, regardless of occupancy.
+     */
+    public void resetDecay() {
+        resetTick = tick;
+    }
+
+    /**
+     * Shifts every stored tick down so the counter can keep growing. Differences larger than the decay cap
+     * are clamped, which does not change any decay value.
+     */
+    private void rebaseTicks() {
+        DecayLog log = decayLog;
+        if (log != null) {
+            log.broken = true;
+        }
+        int shift = tick - MAX_DECAY_VAL - 1;
+        for (int i = 0; i < zeroDecayTick.length; i++) {
+            zeroDecayTick[i] = Math.max(zeroDecayTick[i] - shift, 0);
+            long current = occupants.get(i);
+            if (current != 0) {
+                occupants.set(i, (current & 0xFFFFFFFF00000000L) | Math.max((int) current - shift, 0));
+            }
+        }
+        resetTick = Math.max(resetTick - shift, 0);
+        tick -= shift;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getResetTick() {
+        return resetTick;
+    }
+
+    /**
+     * Decay pass at which the cell was last seen occupied. May be read while a tick runs; see {@link #startDecayLog}.
+     */
+    public int getZeroDecayTick(int index) {
+        return zeroDecayTick[index];
+    }
+
+    /**
+     * Pass count at which the occupant took the cell, or -1 if the cell is free.
+     */
+    public int getOccupiedSince(int index) {
+        long current = occupants.get(index);
+        return current == 0 ? -1 : (int) current;
+    }
+
+    /**
+     * Starts recording the decay ticks that {@link #release} overwrites, so that a copy of the decay ticks made
+     * while the simulation keeps running can be corrected to the state at this call. Must be called between ticks.
+     *
+     * @throws IllegalStateException if a recording is already running
+     */
+    public synchronized void startDecayLog() {
+        if (decayLog != null) {
+            throw new IllegalStateException("The decay ticks are already being recorded");
+        }
+        decayLog = new DecayLog();
+    }
+
+    /**
+     * Stops the recording. Must be called between ticks, so every recorded release is visible.
+     *
+     * @return pairs of cell index and overwritten decay tick, in write order (the first pair of a cell holds its value
+     * when the recording started), or null if the ticks were rebased meanwhile and a copy cannot be corrected
+     */
+    public synchronized int[] stopDecayLog() {
+        DecayLog log = decayLog;
+        decayLog = null;
+        if (log == null || log.broken) {
+            return null;
+        }
+        return log.entries();
+    }
+
+    /**
+     * Sets the decay counters of a grid restored from a checkpoint; the decay ticks and occupants are restored next.
+     */
+    public void restoreTicks(int tick, int resetTick) {
+        this.tick = tick;
+        this.resetTick = resetTick;
+    }
+
+    public void restoreZeroDecayTick(int index, int decayTick) {
+        zeroDecayTick[index] = decayTick;
+    }
+
+    public void restoreOccupant(int index, int droneId, int sinceTick) {
+        occupants.set(index, occupant(droneId, sinceTick));
+    }
+
+    private static long occupant(int droneId, int sinceTick) {
+        return ((long) (droneId + 1) << 32) | sinceTick;
+    }
+
+    /**
+     * Returns a detached snapshot of the cell at the given index.
+     */
+    public Position positionAt(int index) {
+        return new Position(xOf(index), yOf(index), values.get(index), getDecay(index));
+    }
+
+    public Position positionAt(int x, int y) {
+        return positionAt(index(x, y));
+    }
+
+    // Releases run on the parallel tick workers, so recording is synchronized; it only happens during a checkpoint
+    private static class DecayLog {
+        private int[] pairs = new int[1024];
+        private int size = 0;
+        private volatile boolean broken = false;
+
+        private synchronized void record(int index, int decayTick) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, size << 1);
+            }
+            pairs[size++] = index;
+            pairs[size++] = decayTick;
+        }
+
+        private synchronized int[] entries() {
+            return Arrays.copyOf(pairs, size);
+        }
+    }
+}
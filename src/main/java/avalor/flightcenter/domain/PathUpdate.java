@@ -0,0 +1,36 @@
+package avalor.flightcenter.domain;
+
+import java.util.List;
+
+/**
+ * Route of a drone at a given route version.
+ */
+public class PathUpdate {
+    private final String droneName;
+    private final long version;
+    private final List<Position> positions;
+
+    public PathUpdate(String droneName, long version, List<Position> positions) {
+        this.droneName = droneName;
+        this.version = version;
+        this.positions = positions;
+    }
+
+    public String getDroneName() {
+        return droneName;
+    }
+
+    /**
+     * Bumped whenever the drone gets a different route; stays the same while the drone moves along it.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Remaining route of the drone, empty if it has none. Unmodifiable.
+     */
+    public List<Position> getPositions() {
+        return positions;
+    }
+}
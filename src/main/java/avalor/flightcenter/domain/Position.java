@@ -2,20 +2,25 @@ package avalor.flightcenter.domain;
 
 import java.util.Objects;
 
+/**
+ * Lightweight, immutable view of a navigation cell: its coordinates plus the value and decay
+ * observed when the view was taken. The live cell state is kept by {@link NavigationGrid}.
+ */
 public class Position {
-    private final int MAX_DECAY_VAL = 1000;
     private final int posX;
     private final int posY;
     private final int value;
-    private int decay;
-    private boolean isOccupied;
+    private final int decay;
 
     public Position(int posX, int posY, int value) {
+        this(posX, posY, value, 0);
+    }
+
+    public Position(int posX, int posY, int value, int decay) {
         this.posX = posX;
         this.posY = posY;
         this.value = value;
-        this.decay = 0;
-        this.isOccupied = false;
+        this.decay = Math.min(decay, NavigationGrid.MAX_DECAY_VAL);
     }
 
     // --- Builder ---
@@ -31,8 +36,7 @@ public class Position {
                 .posX(src.posX)
                 .posY(src.posY)
                 .value(src.value)
-                .decay(src.decay)
-                .occupied(src.isOccupied);
+                .decay(src.decay);
     }
 
     public int getPosX() {
@@ -51,18 +55,6 @@ public class Position {
         return decay;
     }
 
-    public void setDecay(int decay) {
-        this.decay = Math.min(decay, MAX_DECAY_VAL);
-    }
-
-    public boolean isOccupied() {
-        return isOccupied;
-    }
-
-    public void setOccupied(boolean isOccupied) {
-        this.isOccupied = isOccupied;
-    }
-
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Position)) {
@@ -81,7 +73,6 @@ public class Position {
         private int posY;
         private int value;
         private int decay;
-        private boolean isOccupied;
 
         public Builder posX(int v) {
             this.posX = v;
@@ -103,16 +94,8 @@ public class Position {
             return this;
         }
 
-        public Builder occupied(boolean v) {
-            this.isOccupied = v;
-            return this;
-        }
-
         public Position build() {
-            Position p = new Position(posX, posY, value);
-            p.setDecay(decay);
-            p.setOccupied(isOccupied);
-            return p;
+            return new Position(posX, posY, value, decay);
         }
     }
 }
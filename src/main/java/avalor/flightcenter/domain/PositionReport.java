@@ -0,0 +1,22 @@
+package avalor.flightcenter.domain;
+
+/**
+ * Position reported by a drone, as part of a batch.
+ */
+public class PositionReport {
+    private final String droneName;
+    private final Position position;
+
+    public PositionReport(String droneName, Position position) {
+        this.droneName = droneName;
+        this.position = position;
+    }
+
+    public String getDroneName() {
+        return droneName;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,319 @@
+package avalor.flightcenter.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Positions a drone has flown through, oldest first, stored compactly instead of one {@link Position} per step.
+ * <p>
+ * Positions are appended to chunks of {@link #CHUNK_ENTRIES} entries. Every entry is the step from the previous
+ * position of the chunk followed by the value and decay of the cell, each as a zigzag varint, so a move to a
+ * neighbour cell takes 4 bytes. The value of the whole trajectory is kept as a running sum.
+ * <p>
+ * At most a given number of full chunks are kept in memory. Older chunks are appended to a spill file when one is
+ * configured and can still be paged through, otherwise they are dropped; the running sum and the size always
+ * cover the whole trajectory. All methods are synchronized on the trajectory, not on its drone.
+ */
+public class Trajectory implements Closeable {
+    public static final int CHUNK_ENTRIES = 1024;
+    private static final Logger LOG = LoggerFactory.getLogger(Trajectory.class);
+
+    private final int memoryChunks;
+    private final Path spillFile;
+    // Full chunks kept in memory, oldest first; the first one starts at entry firstInMemory
+    private final List<byte[]> sealedChunks = new ArrayList<>();
+    private byte[] active = new byte[64];
+    private int activeLength = 0;
+    private int activeCount = 0;
+    private int lastX = 0;
+    private int lastY = 0;
+    private long size = 0;
+    private long firstInMemory = 0;
+    private long pathValue = 0;
+    // Bumped by every clear, so a copy taken across a clear can be detected
+    private long epoch = 0;
+    // Spilled chunks are contiguous and end where the memory chunks start
+    private FileChannel spill = null;
+    private boolean spillFailed = false;
+    private long[] spillOffsets = new long[16];
+    private int spilledChunks = 0;
+    private long spillEnd = 0;
+    private long spillBase = 0;
+
+    /**
+     * @param memoryChunks full chunks kept in memory, 0 or less to keep the whole trajectory in memory
+     * @param spillFile    append-only file receiving the chunks that leave memory, or null to drop them
+     */
+    public Trajectory(int memoryChunks, Path spillFile) {
+        this.memoryChunks = memoryChunks;
+        this.spillFile = spillFile;
+    }
+
+    public synchronized void add(Position position) {
+        if (position == null) {
+            return;
+        }
+        append(position);
+        pathValue += position.getValue() + position.getDecay();
+    }
+
+    /**
+     * Number of positions added since the last clear, including the ones no longer available.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Index of the oldest position that can still be read.
+     */
+    public synchronized long getFirstAvailable() {
+        return spilledChunks > 0 ? spillBase : firstInMemory;
+    }
+
+    /**
+     * Sum of the value and decay of all positions added since the last clear.
+     */
+    public synchronized long getPathValue() {
+        return pathValue;
+    }
+
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Reads up to {@code limit} positions starting at {@code from}, or at the oldest available one if {@code from}
+     * is older.
+     */
+    public synchronized HistoryPage read(long from, int limit) {
+        long first = Math.max(from, getFirstAvailable());
+        List<Position> positions = new ArrayList<>((int) Math.max(0, Math.min(limit, size - first)));
+        long index = first;
+        while (positions.size() < limit && index < size) {
+            long chunkStart;
+            byte[] chunk;
+            int length;
+            if (index < firstInMemory) {
+                int spilled = (int) ((index - spillBase) / CHUNK_ENTRIES);
+                chunkStart = spillBase + (long) spilled * CHUNK_ENTRIES;
+                chunk = readSpilled(spilled);
+                if (chunk == null) {
+                    break;
+                }
+                length = chunk.length;
+            } else {
+                int inMemory = (int) ((index - firstInMemory) / CHUNK_ENTRIES);
+                chunkStart = firstInMemory + (long) inMemory * CHUNK_ENTRIES;
+                chunk = inMemory < sealedChunks.size() ? sealedChunks.get(inMemory) : active;
+                length = inMemory < sealedChunks.size() ? chunk.length : activeLength;
+            }
+            int before = positions.size();
+            decode(chunk, length, (int) (index - chunkStart), limit - before, positions);
+            index += positions.size() - before;
+        }
+        return new HistoryPage(size, getFirstAvailable(), first, positions, pathValue);
+    }
+
+    /**
+     * Copies the positions still in memory up to {@code end}, for a checkpoint taken when the trajectory had
+     * {@code end} positions. The copy ends at {@code end} even if positions were added since.
+     *
+     * @return the copied positions, or null if the trajectory was cleared since the given epoch
+     */
+    public synchronized List<Position> copyRecent(long epoch, long end) {
+        if (epoch != this.epoch || end > size) {
+            return null;
+        }
+        if (end <= firstInMemory) {
+            return List.of();
+        }
+        List<Position> positions = new ArrayList<>((int) (end - firstInMemory));
+        for (int c = 0; c <= sealedChunks.size() && positions.size() < end - firstInMemory; c++) {
+            byte[] chunk = c < sealedChunks.size() ? sealedChunks.get(c) : active;
+            int length = c < sealedChunks.size() ? chunk.length : activeLength;
+            decode(chunk, length, 0, (int) Math.min(CHUNK_ENTRIES, end - firstInMemory - positions.size()), positions);
+        }
+        return positions;
+    }
+
+    /**
+     * Replaces the trajectory with one loaded from a checkpoint: {@code size} positions worth {@code pathValue},
+     * of which only the most recent ones are known.
+     */
+    public synchronized void restore(long size, long pathValue, List<Position> recent) {
+        clear();
+        this.size = size - recent.size();
+        this.firstInMemory = this.size;
+        for (Position position : recent) {
+            append(position);
+        }
+        this.pathValue = pathValue;
+    }
+
+    public synchronized void clear() {
+        sealedChunks.clear();
+        activeLength = 0;
+        activeCount = 0;
+        lastX = 0;
+        lastY = 0;
+        size = 0;
+        firstInMemory = 0;
+        pathValue = 0;
+        epoch++;
+        spilledChunks = 0;
+        spillEnd = 0;
+        spillBase = 0;
+    }
+
+    /**
+     * Drops the trajectory and deletes its spill file.
+     */
+    @Override
+    public synchronized void close() {
+        clear();
+        closeSpill();
+    }
+
+    private void append(Position position) {
+        if (activeLength + 4 * 5 > active.length) {
+            active = Arrays.copyOf(active, Math.max(active.length << 1, activeLength + 4 * 5));
+        }
+        writeVarint(zigzag(position.getPosX() - lastX));
+        writeVarint(zigzag(position.getPosY() - lastY));
+        writeVarint(zigzag(position.getValue()));
+        writeVarint(zigzag(position.getDecay()));
+        lastX = position.getPosX();
+        lastY = position.getPosY();
+        activeCount++;
+        size++;
+        if (activeCount == CHUNK_ENTRIES) {
+            sealedChunks.add(Arrays.copyOf(active, activeLength));
+            activeLength = 0;
+            activeCount = 0;
+            lastX = 0;
+            lastY = 0;
+            if (memoryChunks > 0 && sealedChunks.size() > memoryChunks) {
+                evictOldest();
+            }
+        }
+    }
+
+    // Moves the oldest memory chunk to the spill file, or drops it if there is none
+    private void evictOldest() {
+        byte[] oldest = sealedChunks.removeFirst();
+        if (spillFile != null && !spillFailed) {
+            try {
+                if (spill == null) {
+                    Files.createDirectories(spillFile.getParent());
+                    spill = FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(oldest);
+                long offset = spillEnd;
+                while (buffer.hasRemaining()) {
+                    offset += spill.write(buffer, offset);
+                }
+                if (spilledChunks == 0) {
+                    spillBase = firstInMemory;
+                }
+                if (spilledChunks == spillOffsets.length) {
+                    spillOffsets = Arrays.copyOf(spillOffsets, spilledChunks << 1);
+                }
+                spillOffsets[spilledChunks++] = spillEnd;
+                spillEnd = offset;
+            } catch (IOException e) {
+                LOG.warn("Failed to spill trajectory chunk to {}, older positions are dropped from now on", spillFile, e);
+                spillFailed = true;
+                spilledChunks = 0;
+                closeSpill();
+            }
+        }
+        firstInMemory += CHUNK_ENTRIES;
+    }
+
+    private byte[] readSpilled(int chunk) {
+        long start = spillOffsets[chunk];
+        long end = chunk + 1 < spilledChunks ? spillOffsets[chunk + 1] : spillEnd;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        try {
+            while (buffer.hasRemaining()) {
+                int read = spill.read(buffer, start + buffer.position());
+                if (read < 0) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read trajectory chunk from {}", spillFile, e);
+            return null;
+        }
+        return buffer.array();
+    }
+
+    private void closeSpill() {
+        if (spill == null) {
+            return;
+        }
+        try {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete trajectory spill file {}", spillFile, e);
+        }
+        spill = null;
+    }
+
+    // Decodes the entries of a chunk from 'skip' on, adding at most 'limit' positions
+    private static void decode(byte[] chunk, int length, int skip, int limit, List<Position> out) {
+        int[] cursor = {0};
+        int x = 0;
+        int y = 0;
+        for (int entry = 0; cursor[0] < length && entry - skip < limit; entry++) {
+            x += unzigzag(readVarint(chunk, cursor));
+            y += unzigzag(readVarint(chunk, cursor));
+            int value = unzigzag(readVarint(chunk, cursor));
+            int decay = unzigzag(readVarint(chunk, cursor));
+            if (entry >= skip) {
+                out.add(new Position(x, y, value, decay));
+            }
+        }
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            active[activeLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        active[activeLength++] = (byte) value;
+    }
+
+    private static int readVarint(byte[] chunk, int[] cursor) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = chunk[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,34 @@
+package avalor.flightcenter.domain;
+
+/**
+ * Outcome of one position report: whether it was applied, and where the drone should fly next.
+ */
+public class WaypointUpdate {
+    private final String droneName;
+    private final boolean accepted;
+    private final Position nextWaypoint;
+
+    public WaypointUpdate(String droneName, boolean accepted, Position nextWaypoint) {
+        this.droneName = droneName;
+        this.accepted = accepted;
+        this.nextWaypoint = nextWaypoint;
+    }
+
+    public String getDroneName() {
+        return droneName;
+    }
+
+    /**
+     * False for unknown drones and positions outside the map.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Next cell of the drone's route, or null while it has no route (a new one is planned on the next tick).
+     */
+    public Position getNextWaypoint() {
+        return nextWaypoint;
+    }
+}
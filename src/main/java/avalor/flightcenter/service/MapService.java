@@ -1,6 +1,12 @@
 package avalor.flightcenter.service;
 
+import avalor.flightcenter.domain.ColorDelta;
+import avalor.flightcenter.domain.ColorSnapshot;
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface MapService {
     /**
@@ -8,9 +14,43 @@ public interface MapService {
      * The returned list has the same shape as input.
      */
     List<List<String>> getColors();
-    void init(int rows, int cols);
+    void init(NavigationGrid navigationGrid);
+
+    /**
+     * Grid the colors belong to, or null if no map is loaded.
+     */
+    NavigationGrid getNavigationGrid();
+
     void reset();
     void setColor(int posX, int posY, int value);
     void clear();
 
+    /**
+     * Replaces all colors with the given palette indices (one byte per cell), e.g. from a checkpoint.
+     * Clients are told to reload a snapshot.
+     */
+    void restoreColors(ByteBuffer colors);
+
+    /**
+     * Full color matrix as palette indices, consistent with the last published delta.
+     */
+    ColorSnapshot getColorSnapshot();
+
+    /**
+     * Closes the color changes made since the previous call into a delta and hands it to the listeners.
+     * Called once per simulation tick; nothing is published if no color changed.
+     */
+    void publishChanges();
+
+    /**
+     * Deltas published after {@code seq}, in order, or null if they are no longer retained
+     * (or a resync happened since), in which case a snapshot is needed.
+     */
+    List<ColorDelta> getChangesSince(long seq);
+
+    /**
+     * Registers a listener for published deltas. Listeners run on the simulation thread and must not block.
+     */
+    void addChangeListener(Consumer<ColorDelta> listener);
+    void removeChangeListener(Consumer<ColorDelta> listener);
 }
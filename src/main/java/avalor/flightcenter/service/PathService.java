@@ -1,16 +1,93 @@
 package avalor.flightcenter.service;
 
 import avalor.flightcenter.domain.Drone;
+import avalor.flightcenter.domain.HistoryPage;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.PathUpdate;
 import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.PositionReport;
+import avalor.flightcenter.domain.WaypointUpdate;
+import avalor.flightcenter.utils.RecordingFile;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface PathService {
     void setMapService(MapService service);
-    void init(List<List<Integer>> navigationMatrix);
+    void init(NavigationGrid navigationGrid);
     void reset();
+    /**
+     * Stops the simulation ticks and drops all state; used when the session is discarded.
+     */
+    void shutdown();
     Drone findDroneByName(String name);
+    int getDroneCount();
     Drone addDrone(String droneName, Position initialPosition);
+    /**
+     * Remaining route of the drone as of the last tick or position report, empty if there is none. Unmodifiable.
+     */
     List<Position> getPathForDrone(String droneName);
+
+    /**
+     * Returns the remaining route of the drone with its version, or null if the drone does not exist.
+     * Routes are published by the ticks and position reports, so this never waits for a running tick.
+     */
+    PathUpdate getPathUpdate(String droneName);
+
+    /**
+     * Reads up to {@code limit} positions of the trajectory of the drone, oldest first, starting at {@code from}
+     * or at the oldest position still available. Returns null if the drone does not exist. Does not wait for a
+     * running tick.
+     */
+    HistoryPage getHistory(String droneName, long from, int limit);
+
+    /**
+     * Calls the listener once with the route of the drone as soon as its version differs from the known one:
+     * right away if it already does, otherwise after the tick or position report that changes it. Listeners
+     * run on the simulation threads and must not block.
+     */
+    void watchPath(String droneName, long knownVersion, Consumer<PathUpdate> listener);
+
+    /**
+     * Removes a listener that has not been called yet, e.g. after the client went away.
+     */
+    void unwatchPath(String droneName, Consumer<PathUpdate> listener);
     void recordDronePosition(String droneName, Position newPosition);
+
+    /**
+     * Applies the positions reported by several drones as one state transition: no tick runs in between.
+     * Reports are applied in order, so a later report of the same drone wins.
+     *
+     * @return one update per report, in the same order
+     */
+    List<WaypointUpdate> recordDronePositions(List<PositionReport> reports);
+
+    /**
+     * Writes a checkpoint of the grid, colors and fleet, replacing the file. Only the capture of the fleet waits
+     * for the running tick; the grid is written while the simulation goes on.
+     *
+     * @return the size of the checkpoint in bytes
+     * @throws IllegalStateException if no map is loaded, or the state changed in a way the checkpoint cannot follow
+     */
+    long writeCheckpoint(Path file) throws IOException;
+
+    /**
+     * Replaces the whole state with a checkpoint and resumes the simulation from it.
+     *
+     * @throws IllegalArgumentException if the file is not a valid checkpoint
+     */
+    void restoreCheckpoint(Path file) throws IOException;
+
+    /**
+     * Logs every input and tick of the session from now on, replacing a running recording. Recorded sessions
+     * advance their drones deterministically, so replaying the log reproduces the simulation.
+     */
+    void startRecording(RecordingFile.Writer recording);
+
+    /**
+     * Ends the running recording, if any, with a digest of the current state for the replay to check.
+     */
+    void stopRecording();
 }
@@ -0,0 +1,62 @@
+package avalor.flightcenter.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the running simulation sessions. Every session has its own grid, fleet and tick schedule;
+ * the ticks of all sessions run on one bounded worker pool.
+ */
+public interface SessionRegistry {
+    /**
+     * Session used by requests that do not carry a session id.
+     */
+    String DEFAULT_SESSION = "default";
+
+    /**
+     * Returns the session, creating it if needed, and marks it as used.
+     *
+     * @throws IllegalArgumentException if the session id is not valid
+     * @throws IllegalStateException if the session does not exist and the maximum number of sessions is reached
+     */
+    SimulationSession getOrCreate(String sessionId);
+
+    /**
+     * Returns the session and marks it as used, or null if it does not exist.
+     */
+    SimulationSession find(String sessionId);
+
+    /**
+     * Stops and discards the session.
+     *
+     * @return false if the session did not exist
+     */
+    boolean remove(String sessionId);
+
+    Collection<String> getSessionIds();
+
+    /**
+     * Registers a listener called after a session has been removed or evicted.
+     */
+    void addRemovalListener(Consumer<SimulationSession> listener);
+
+    /**
+     * Writes a checkpoint of the session into the checkpoint directory, replacing the previous one.
+     *
+     * @return the size of the checkpoint in bytes
+     * @throws IllegalStateException if checkpoints are disabled, the session does not exist or has no map,
+     * or another checkpoint of the session is being written
+     */
+    long checkpoint(String sessionId) throws IOException;
+
+    /**
+     * Restores the session from its checkpoint, creating the session if needed.
+     *
+     * @return the size of the checkpoint in bytes
+     * @throws IllegalStateException if checkpoints are disabled or the maximum number of sessions is reached
+     * @throws java.nio.file.NoSuchFileException if the session has no checkpoint
+     * @throws IllegalArgumentException if the session id or the checkpoint is not valid
+     */
+    long restore(String sessionId) throws IOException;
+}
@@ -0,0 +1,160 @@
+package avalor.flightcenter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulation meters, shared by all sessions and exposed through Actuator ({@code /actuator/metrics},
+ * {@code /actuator/prometheus}). Meters are not tagged by session, so thousands of sessions do not turn into
+ * thousands of time series.
+ * <p>
+ * Counters are updated from the tick threads; Micrometer counters and timers are thread-safe and lock-free.
+ */
+@Component
+public class SimulationMetrics {
+    private final Timer tickTimer;
+    private final Timer planningTimer;
+    private final Counter blockedMoves;
+    private final Counter reroutes;
+    private final Counter abandonedTargets;
+    private final Counter visitedCells;
+    private final Counter assignedTargets;
+    private final Counter targetLockConflicts;
+    private final Counter rejectedDrones;
+    private final Counter pathCacheHits;
+    private final Counter pathCacheMisses;
+    private final Counter reservedWindows;
+    private final Counter plannedWaits;
+    private final Counter rebuiltClusters;
+
+    public SimulationMetrics(MeterRegistry registry) {
+        tickTimer = Timer.builder("flightcenter.tick.duration")
+                .description("Duration of one simulation tick")
+                .publishPercentileHistogram()
+                .register(registry);
+        planningTimer = Timer.builder("flightcenter.planning.duration")
+                .description("Route planning latency of one drone")
+                .publishPercentileHistogram()
+                .register(registry);
+        blockedMoves = Counter.builder("flightcenter.moves.blocked")
+                .description("Moves into a cell another drone had reserved")
+                .register(registry);
+        reroutes = Counter.builder("flightcenter.moves.rerouted")
+                .description("Blocked drones that side-stepped to a free neighbour and replan")
+                .register(registry);
+        abandonedTargets = Counter.builder("flightcenter.targets.abandoned")
+                .description("Targets dropped because no route was found")
+                .register(registry);
+        visitedCells = Counter.builder("flightcenter.cells.visited")
+                .description("Cells visited for the first time since the coverage started; its rate is the coverage rate")
+                .register(registry);
+        assignedTargets = Counter.builder("flightcenter.targets.assigned")
+                .description("Targets handed out to drones")
+                .register(registry);
+        targetLockConflicts = Counter.builder("flightcenter.targets.lock.conflicts")
+                .description("Candidate targets skipped because another drone had locked them")
+                .register(registry);
+        rejectedDrones = Counter.builder("flightcenter.fleet.rejected")
+                .description("Drones refused because the fleet was full")
+                .register(registry);
+        pathCacheHits = Counter.builder("flightcenter.path.cache")
+                .description("Route lookups in the path cache")
+                .tag("result", "hit")
+                .register(registry);
+        pathCacheMisses = Counter.builder("flightcenter.path.cache")
+                .description("Route lookups in the path cache")
+                .tag("result", "miss")
+                .register(registry);
+        reservedWindows = Counter.builder("flightcenter.reservations.windows")
+                .description("Cooperative planning windows reserved for drones")
+                .register(registry);
+        plannedWaits = Counter.builder("flightcenter.reservations.waits")
+                .description("Ticks drones were planned to wait in place to let another drone pass")
+                .register(registry);
+        rebuiltClusters = Counter.builder("flightcenter.clusters.rebuilt")
+                .description("Clusters of the hierarchical planning graph rebuilt after drones stopped or left")
+                .register(registry);
+        // Gauges hold their object weakly by default; the ratio must not read NaN once nobody else holds the metrics
+        Gauge.builder("flightcenter.path.cache.hit.ratio", this, SimulationMetrics::pathCacheHitRatio)
+                .description("Share of the route lookups served by the path cache since startup")
+                .strongReference(true)
+                .register(registry);
+    }
+
+    public void recordTick(long nanos) {
+        tickTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPlanning(long nanos) {
+        planningTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void blockedMove() {
+        blockedMoves.increment();
+    }
+
+    public void reroute() {
+        reroutes.increment();
+    }
+
+    public void abandonedTarget() {
+        abandonedTargets.increment();
+    }
+
+    public void visitedCells(int count) {
+        if (count > 0) {
+            visitedCells.increment(count);
+        }
+    }
+
+    public void assignedTargets(int count, int lockConflicts) {
+        if (count > 0) {
+            assignedTargets.increment(count);
+        }
+        if (lockConflicts > 0) {
+            targetLockConflicts.increment(lockConflicts);
+        }
+    }
+
+    public void pathCacheLookups(int hits, int misses) {
+        if (hits > 0) {
+            pathCacheHits.increment(hits);
+        }
+        if (misses > 0) {
+            pathCacheMisses.increment(misses);
+        }
+    }
+
+    public void reservedWindows(int windows, int waits) {
+        if (windows > 0) {
+            reservedWindows.increment(windows);
+        }
+        if (waits > 0) {
+            plannedWaits.increment(waits);
+        }
+    }
+
+    public void rebuiltClusters(int count) {
+        if (count > 0) {
+            rebuiltClusters.increment(count);
+        }
+    }
+
+    /**
+     * Share of the route lookups served by the path cache since startup, 0 before the first lookup.
+     */
+    public double pathCacheHitRatio() {
+        double hits = pathCacheHits.count();
+        double lookups = hits + pathCacheMisses.count();
+        return lookups == 0 ? 0 : hits / lookups;
+    }
+
+    public void rejectedDrone() {
+        rejectedDrones.increment();
+    }
+}
@@ -0,0 +1,56 @@
+package avalor.flightcenter.service;
+
+import avalor.flightcenter.utils.SimulationClock;
+
+/**
+ * One independent simulation: its own map, fleet and tick schedule.
+ */
+public class SimulationSession {
+    private final String id;
+    private final MapService mapService;
+    private final PathService pathService;
+    private final TileService tileService;
+    private final SimulationClock simulationClock;
+    private volatile long lastAccessNanos;
+
+    public SimulationSession(String id, MapService mapService, PathService pathService, TileService tileService,
+                             SimulationClock simulationClock) {
+        this.id = id;
+        this.mapService = mapService;
+        this.pathService = pathService;
+        this.tileService = tileService;
+        this.simulationClock = simulationClock;
+        this.lastAccessNanos = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public MapService getMapService() {
+        return mapService;
+    }
+
+    public PathService getPathService() {
+        return pathService;
+    }
+
+    public TileService getTileService() {
+        return tileService;
+    }
+
+    public SimulationClock getSimulationClock() {
+        return simulationClock;
+    }
+
+    /**
+     * Marks the session as used; sessions that are not used for the idle timeout are evicted.
+     */
+    public void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    public long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+}
@@ -0,0 +1,21 @@
+package avalor.flightcenter.service;
+
+/**
+ * Renders the loaded map as square PNG tiles, at full resolution on the deepest zoom level
+ * and halving the resolution on every level above it; level 0 fits the whole map in one tile.
+ */
+public interface TileService {
+    int TILE_SIZE = 256;
+
+    /**
+     * Deepest zoom level of the loaded map, where one tile pixel is one cell, or -1 if no map is loaded.
+     */
+    int getMaxZoom();
+
+    /**
+     * Returns the PNG tile, or null if no map is loaded or the tile is outside the map.
+     *
+     * @param layer "values", "colors", or "both" to draw the colors over the values
+     */
+    byte[] getTile(int zoom, int tileX, int tileY, String layer);
+}
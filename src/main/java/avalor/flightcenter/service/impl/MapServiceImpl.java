@@ -1,14 +1,46 @@
 package avalor.flightcenter.service.impl;
 
+import avalor.flightcenter.domain.ColorDelta;
+import avalor.flightcenter.domain.ColorSnapshot;
+import avalor.flightcenter.domain.NavigationGrid;
 import avalor.flightcenter.service.MapService;
-import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
-@Service
+/**
+ * Color state of one session's map. Instances are created by the session registry.
+ */
 public class MapServiceImpl implements MapService {
-    private final List<List<String>> colorMatrix = new ArrayList<>();
+    // Published deltas kept for clients catching up after a reconnect
+    private static final int RETAINED_DELTAS = 256;
+    // Cells per color chunk; chunks are shared with the published snapshot until they change again
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    // Palette index of every cell, using the same y * width + x indexing as the navigation grid, in chunks
+    private byte[][] colorChunks = new byte[0][];
+    // Chunks referenced by the published snapshot; they are copied before being written
+    private BitSet sharedChunks = new BitSet();
+    private volatile NavigationGrid navigationGrid = null;
+
+    // Cells changed since the last published delta, each logged once
+    private BitSet dirtyCells = new BitSet();
+    private int[] dirtyLog = new int[64];
+    private int dirtyCount = 0;
+    private boolean resyncPending = false;
+    private long seq = 0;
+    // Read without locking, so readers never wait for a tick
+    private volatile ColorSnapshot publishedSnapshot = new ColorSnapshot(0, 0, 0, PALETTE.clone(), new byte[0][], CHUNK_SHIFT);
+    private final Deque<ColorDelta> retainedDeltas = new ArrayDeque<>();
+    private final List<Consumer<ColorDelta>> changeListeners = new CopyOnWriteArrayList<>();
 
     private static final String[] PALETTE = new String[]{
             "#f7f7f7", // 0 - background / zero
@@ -24,61 +56,185 @@ public class MapServiceImpl implements MapService {
     };
 
     @Override
-    public synchronized List<List<String>> getColors() {
-        if (colorMatrix.isEmpty()) {
-            return List.of();
-        }
-        List<List<String>> copy = new ArrayList<>(colorMatrix.size());
-        for (List<String> row : colorMatrix) {
-            copy.add(List.copyOf(row));
+    public List<List<String>> getColors() {
+        ColorSnapshot snapshot = publishedSnapshot;
+        int cols = snapshot.getWidth();
+        byte[] colors = snapshot.getColors();
+        List<List<String>> copy = new ArrayList<>(snapshot.getHeight());
+        String[] row = new String[cols];
+        for (int i = 0; i < snapshot.getHeight(); i++) {
+            for (int j = 0; j < cols; j++) {
+                row[j] = PALETTE[colors[i * cols + j]];
+            }
+            copy.add(List.of(row));
         }
         return List.copyOf(copy);
     }
 
     @Override
-    public synchronized void init(int rows, int cols) {
-        if (rows <= 0 || cols <= 0) {
-            colorMatrix.clear();
-            return;
-        }
-        colorMatrix.clear();
-        for (int i = 0; i < rows; i++) {
-            List<String> row = new ArrayList<>(cols);
-            for (int j = 0; j < cols; j++) {
-                row.add(PALETTE[0]);
-            }
-            colorMatrix.add(row);
+    public synchronized void init(NavigationGrid grid) {
+        navigationGrid = grid;
+        int size = grid == null ? 0 : grid.size();
+        dirtyCells = new BitSet(size);
+        dirtyCount = 0;
+        // Palette index 0 is the background
+        colorChunks = new byte[(size + CHUNK_MASK) >> CHUNK_SHIFT][];
+        for (int c = 0; c < colorChunks.length; c++) {
+            colorChunks[c] = new byte[Math.min(1 << CHUNK_SHIFT, size - (c << CHUNK_SHIFT))];
         }
+        sharedChunks = new BitSet(colorChunks.length);
+        requestResync();
+        publishSnapshot();
+    }
+
+    @Override
+    public NavigationGrid getNavigationGrid() {
+        return navigationGrid;
     }
 
     @Override
     public synchronized void setColor(int posX, int posY, int value) {
-        if (colorMatrix.isEmpty()) {
+        if (navigationGrid == null || !navigationGrid.isInBounds(posX, posY)) {
             return;
         }
-        if (posY < 0 || posY >= colorMatrix.size()) {
+        byte color = (byte) Math.floorMod(value, PALETTE.length);
+        int cell = navigationGrid.index(posX, posY);
+        int chunk = cell >> CHUNK_SHIFT;
+        if (colorChunks[chunk][cell & CHUNK_MASK] == color) {
             return;
         }
-        List<String> row = colorMatrix.get(posY);
-        if (row == null || posX < 0 || posX >= row.size()) {
-            return;
+        if (sharedChunks.get(chunk)) {
+            colorChunks[chunk] = colorChunks[chunk].clone();
+            sharedChunks.clear(chunk);
+        }
+        colorChunks[chunk][cell & CHUNK_MASK] = color;
+        if (!resyncPending && !dirtyCells.get(cell)) {
+            dirtyCells.set(cell);
+            if (dirtyCount == dirtyLog.length) {
+                dirtyLog = Arrays.copyOf(dirtyLog, dirtyCount << 1);
+            }
+            dirtyLog[dirtyCount++] = cell;
         }
-        String color = PALETTE[Math.floorMod(value, PALETTE.length)];
-        row.set(posX, color);
     }
 
     @Override
     public synchronized void reset() {
-        colorMatrix.clear();
+        init(null);
     }
 
     @Override
-    public void clear() {
-        if (colorMatrix.isEmpty()) {
-            return;
+    public synchronized void clear() {
+        for (int c = 0; c < colorChunks.length; c++) {
+            if (sharedChunks.get(c)) {
+                colorChunks[c] = new byte[colorChunks[c].length];
+            } else {
+                Arrays.fill(colorChunks[c], (byte) 0);
+            }
+        }
+        sharedChunks.clear();
+        requestResync();
+        publishSnapshot();
+    }
+
+    @Override
+    public synchronized void restoreColors(ByteBuffer colors) {
+        if (navigationGrid == null || colors.remaining() != navigationGrid.size()) {
+            throw new IllegalArgumentException("The colors do not match the map");
+        }
+        int offset = colors.position();
+        for (int c = 0; c < colorChunks.length; c++) {
+            byte[] chunk = new byte[colorChunks[c].length];
+            colors.get(offset + (c << CHUNK_SHIFT), chunk);
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = (byte) Math.floorMod(chunk[i], PALETTE.length);
+            }
+            colorChunks[c] = chunk;
+        }
+        sharedChunks.clear();
+        requestResync();
+        publishSnapshot();
+    }
+
+    @Override
+    public ColorSnapshot getColorSnapshot() {
+        return publishedSnapshot;
+    }
+
+    // Publishing shares the chunks instead of copying them; the next write to a chunk copies it
+    private void publishSnapshot() {
+        int width = navigationGrid == null ? 0 : navigationGrid.getWidth();
+        int height = navigationGrid == null ? 0 : navigationGrid.getHeight();
+        publishedSnapshot = new ColorSnapshot(seq, width, height, PALETTE.clone(), colorChunks.clone(), CHUNK_SHIFT);
+        sharedChunks.set(0, colorChunks.length);
+    }
+
+    @Override
+    public void publishChanges() {
+        ColorDelta delta;
+        synchronized (this) {
+            if (!resyncPending && dirtyCount == 0) {
+                return;
+            }
+            if (resyncPending) {
+                delta = new ColorDelta(++seq, true, new int[0], new byte[0]);
+                retainedDeltas.clear();
+                resyncPending = false;
+            } else {
+                int[] cells = Arrays.copyOf(dirtyLog, dirtyCount);
+                byte[] colors = new byte[dirtyCount];
+                for (int i = 0; i < dirtyCount; i++) {
+                    colors[i] = colorChunks[cells[i] >> CHUNK_SHIFT][cells[i] & CHUNK_MASK];
+                    dirtyCells.clear(cells[i]);
+                }
+                delta = new ColorDelta(++seq, false, cells, colors);
+            }
+            dirtyCount = 0;
+            publishSnapshot();
+            retainedDeltas.addLast(delta);
+            if (retainedDeltas.size() > RETAINED_DELTAS) {
+                retainedDeltas.removeFirst();
+            }
         }
-        for (List<String> row : colorMatrix) {
-            row.replaceAll(s -> PALETTE[0]);
+        for (Consumer<ColorDelta> listener : changeListeners) {
+            listener.accept(delta);
         }
     }
+
+    @Override
+    public synchronized List<ColorDelta> getChangesSince(long since) {
+        if (since > seq) {
+            return null;
+        }
+        List<ColorDelta> changes = new ArrayList<>();
+        for (ColorDelta delta : retainedDeltas) {
+            if (delta.getSeq() > since) {
+                if (delta.isResync()) {
+                    return null;
+                }
+                changes.add(delta);
+            }
+        }
+        // Deltas between 'since' and the oldest retained one were dropped
+        if (since < seq && (changes.isEmpty() || changes.getFirst().getSeq() != since + 1)) {
+            return null;
+        }
+        return changes;
+    }
+
+    @Override
+    public void addChangeListener(Consumer<ColorDelta> listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<ColorDelta> listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Every cell changed: drop the pending cell log, the next delta tells clients to reload a snapshot
+    private void requestResync() {
+        dirtyCells.clear();
+        dirtyCount = 0;
+        resyncPending = true;
+    }
 }
@@ -1,28 +1,143 @@
 package avalor.flightcenter.service.impl;
 
+import avalor.flightcenter.calculator.ClusterGraph;
+import avalor.flightcenter.calculator.ClusterRoute;
+import avalor.flightcenter.calculator.PathCache;
 import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.calculator.PathPlanner;
+import avalor.flightcenter.calculator.ReservationTable;
+import avalor.flightcenter.calculator.SpaceTimePlanner;
+import avalor.flightcenter.calculator.TargetIndex;
+import avalor.flightcenter.domain.ColorSnapshot;
 import avalor.flightcenter.domain.Drone;
+import avalor.flightcenter.domain.HistoryPage;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.PathUpdate;
 import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.PositionReport;
+import avalor.flightcenter.domain.Trajectory;
+import avalor.flightcenter.domain.WaypointUpdate;
 import avalor.flightcenter.service.MapService;
 import avalor.flightcenter.service.PathService;
-import avalor.flightcenter.utils.DecaySimulator;
-import org.springframework.stereotype.Service;
+import avalor.flightcenter.service.SimulationMetrics;
+import avalor.flightcenter.utils.CheckpointFile;
+import avalor.flightcenter.utils.IntHashSet;
+import avalor.flightcenter.utils.RecordingFile;
+import avalor.flightcenter.utils.SimulationClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
-@Service
+/**
+ * Fleet simulation of one session. Instances are created by the session registry.
+ */
 public class PathServiceImpl implements PathService, Runnable {
-    private final int MAX_DRONES = 10;
-    private final List<List<Position>> navigationPlanes = Collections.synchronizedList(new ArrayList<>());
-    private final List<Position> visitedPositions = Collections.synchronizedList(new ArrayList<>());
-    private final List<Drone> activeDrones = Collections.synchronizedList(new ArrayList<>());
+    private static final Logger LOG = LoggerFactory.getLogger(PathServiceImpl.class);
+    // Below this fleet size the fork/join overhead outweighs the parallel planning
+    private static final int PARALLEL_TICK_THRESHOLD = 64;
+    // Drones that hold their cell this many ticks count as obstacles for the cluster graph
+    private static final int STATIONARY_TICKS = 8;
+    private final int maxDrones;
+    private NavigationGrid navigationGrid = null;
+    private TargetIndex targetIndex = null;
+    // Visited cells, indexed like the navigation grid, plus a running count for the completion check
+    private final BitSet visitedCells = new BitSet();
+    private int visitedCount = 0;
+    private final List<Drone> activeDrones = new ArrayList<>();
+    // Written under the service lock, read without it by the route watchers
+    private final Map<String, Drone> dronesByName = new ConcurrentHashMap<>();
+    private int nextDroneId = 0;
+    private volatile int droneCount = 0;
     private final ConcurrentMap<String, Position> crtTargets = new ConcurrentHashMap<>();
+    // Cell indices of the targets in crtTargets, for O(1) exclusion checks
+    private final IntHashSet lockedTargets = new IntHashSet();
+    // Target exclusion check that also counts the candidates skipped because of a lock
+    private final IntPredicate lockedTargetFilter;
+    private int lockConflicts = 0;
+    // Planners keep per-search state, so every tick worker gets its own; they are shared by all sessions
+    private final ThreadLocal<PathPlanner> pathPlanners;
+    // Runs the parallel phase of large ticks, shared by all sessions; null advances every drone on the tick thread
+    private final ForkJoinPool tickPool;
+    private final SimulationClock simulationClock;
+    private final SimulationMetrics metrics;
+    // Cell each drone left and entered during the current tick, -1 if it did not move
+    private int[] tickMoves = new int[0];
+    // Route of each drone that needs one this tick: taken from the cache before planning, or planned
+    private int[][] tickPlans = new int[0][];
+    private boolean[] tickPlanned = new boolean[0];
+    private final PathCache pathCache;
+    // Cooperative planning: moves of the next window of every drone, reserved over cells and ticks. Null when
+    // drones only plan their own routes and side-step when they run into each other
+    private final SpaceTimePlanner spaceTimePlanner;
+    private final ReservationTable reservations = new ReservationTable();
+    // Tick counter of the reservations, and the route version of each drone id when its window was reserved
+    private int reservationTick = 0;
+    private long[] reservedVersions = new long[0];
+    private boolean[] windowDue = new boolean[0];
+    // Hierarchical planning: clusters of the grid and the entrances between them, null on small grids or when
+    // disabled. Cells of stationary drones are blocked in it; it is only updated between the planning phases
+    private final int clusterSize;
+    private ClusterGraph clusterGraph = null;
+    // Route of each drone id over the clusters, so the next stretches of a long route need no new search
+    private ClusterRoute[] clusterRoutes = new ClusterRoute[0];
+    // Trajectory chunks kept in memory per drone, and the directory older chunks are spilled to (null drops them)
+    private final int historyChunks;
+    private final Path historyDir;
+    // Guards the fleet and grid state; a lock rather than a monitor, so that virtual request threads waiting
+    // for a tick are parked instead of pinning their carrier thread
+    private final ReentrantLock stateLock = new ReentrantLock();
+    // Clients waiting for a route change, per drone name. Lists are only touched inside compute calls, so
+    // registering a watch does not wait for a running tick
+    private final ConcurrentMap<String, List<PathWatch>> pathWatchers = new ConcurrentHashMap<>();
     private MapService mapService = null;
+    // Log of every input and tick while recording; recorded sessions plan their drones one after the other, so a
+    // replay gets the same result
+    private RecordingFile.Writer recording = null;
+    private long recordingFlushNanos = 0;
+    private boolean deterministicTicks = false;
 
+    /**
+     * @param reservationWindow route cells every drone plans ahead around the reservations of the others, 0 to
+     *                          plan routes independently
+     * @param clusterSize       side of the clusters long routes are planned over, 0 to plan every route on the grid
+     * @param tickPool          pool that plans and moves the drones of large fleets in parallel, null to advance
+     *                          them one after the other
+     */
+    public PathServiceImpl(ThreadLocal<PathPlanner> pathPlanners, ForkJoinPool tickPool, int maxDrones,
+                           int pathCacheCells, int reservationWindow, int clusterSize, int historyChunks,
+                           Path historyDir, SimulationClock simulationClock, SimulationMetrics metrics) {
+        this.pathPlanners = pathPlanners;
+        this.tickPool = tickPool;
+        this.maxDrones = maxDrones;
+        this.pathCache = new PathCache(pathCacheCells);
+        this.spaceTimePlanner = reservationWindow > 0 ? new SpaceTimePlanner(reservationWindow) : null;
+        this.clusterSize = clusterSize;
+        this.historyChunks = historyChunks;
+        this.historyDir = historyDir;
+        this.simulationClock = simulationClock;
+        this.metrics = metrics;
+        this.lockedTargetFilter = cell -> {
+            if (lockedTargets.contains(cell)) {
+                lockConflicts++;
+                return true;
+            }
+            return false;
+        };
+    }
 
     @Override
     public void setMapService(MapService service) {
@@ -30,75 +145,466 @@ public class PathServiceImpl implements PathService, Runnable {
     }
 
     @Override
-    public synchronized void reset() {
-        activeDrones.clear();
-        navigationPlanes.clear();
-        restartNavigation();
+    public void reset() {
+        stateLock.lock();
+        try {
+            record(RecordingFile.Writer::reset);
+            discardDrones();
+            nextDroneId = 0;
+            droneCount = 0;
+            navigationGrid = null;
+            targetIndex = null;
+            clusterGraph = null;
+            restartNavigation();
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     @Override
-    public void init(List<List<Integer>> navigationMatrix) {
-        for (int i = 0; i < navigationMatrix.size(); i++) {
-            List<Integer> row = navigationMatrix.get(i);
-            List<Position> positionRow = new ArrayList<>();
-            for (int j = 0; j < row.size(); j++) {
-                Integer value = row.get(j);
-                positionRow.add(new Position(j, i, value));
-            }
-            navigationPlanes.add(positionRow);
+    public void init(NavigationGrid grid) {
+        stateLock.lock();
+        try {
+            record(recorder -> recorder.grid(grid));
+            navigationGrid = grid;
+            targetIndex = new TargetIndex(grid);
+            clusterGraph = ClusterGraph.create(grid, clusterSize);
+            // Visited cells and locked targets refer to the previous grid
+            restartNavigation();
+            // TODO This is just for testing purposes, remove it when not needed
+            simulationClock.start(this);
+        } finally {
+            stateLock.unlock();
         }
-        // TODO This is just for testing purposes, remove it when not needed
-        DecaySimulator.start(500, this);
     }
 
     @Override
-    public synchronized Drone findDroneByName(String name) {
-        for (Drone drone : activeDrones) {
-            if (drone.getName().equals(name)) {
-                return drone;
+    public void shutdown() {
+        simulationClock.stop();
+        stopRecording();
+        reset();
+    }
+
+    @Override
+    public Drone findDroneByName(String name) {
+        return name == null ? null : dronesByName.get(name);
+    }
+
+    @Override
+    public int getDroneCount() {
+        // Read by the metrics scrape, which must not wait for a tick
+        return droneCount;
+    }
+
+    @Override
+    public Drone addDrone(String droneName, Position initialPos) {
+        Drone existingDrone;
+        stateLock.lock();
+        try {
+            record(recorder -> recorder.addDrone(droneName, initialPos));
+            if (droneName == null) {
+                return null;
+            }
+            existingDrone = dronesByName.get(droneName);
+            if (existingDrone == null) {
+                return registerDrone(droneName, initialPos);
             }
+            // A drone registering again only reports its position
+            applyDronePosition(droneName, initialPos);
+        } finally {
+            stateLock.unlock();
         }
-        return null;
+        // Outside the service lock, like after a tick
+        notifyPathWatchers();
+        return existingDrone;
     }
 
-    @Override
-    public synchronized Drone addDrone(String droneName, Position initialPos) {
-        if (activeDrones.size() >= MAX_DRONES) {
-            System.out.println("Max drones reached");
+    private Drone registerDrone(String droneName, Position initialPos) {
+        if (activeDrones.size() >= maxDrones) {
+            metrics.rejectedDrone();
             return null; // Max drones reached
         }
         if (initialPos == null || positionOutOfBounds(initialPos.getPosX(), initialPos.getPosY())) {
             return null;
         }
 
-        Drone newDrone = new Drone(droneName, initialPos);
+        Drone newDrone = new Drone(nextDroneId, droneName, initialPos, newTrajectory(nextDroneId));
+        nextDroneId++;
         activeDrones.add(newDrone);
-        setDronePositionInPlane(droneName, initialPos);
+        dronesByName.put(droneName, newDrone);
+        droneCount = activeDrones.size();
+        setDronePositionInPlane(newDrone, initialPos);
+        // A max-throughput clock is stopped while there is nothing to simulate
+        if (!simulationClock.isRunning()) {
+            simulationClock.start(this);
+        }
 
         return newDrone;
     }
 
     @Override
     public List<Position> getPathForDrone(String droneName) {
-        List<Position> droneFlightPath = new ArrayList<>();
-        if (droneName == null) {
-            return droneFlightPath;
+        PathUpdate update = getPathUpdate(droneName);
+        return update == null ? List.of() : update.getPositions();
+    }
+
+    @Override
+    public PathUpdate getPathUpdate(String droneName) {
+        Drone drone = droneName == null ? null : findDroneByName(droneName);
+        return drone == null ? null : drone.getPathUpdate();
+    }
+
+    @Override
+    public HistoryPage getHistory(String droneName, long from, int limit) {
+        Drone drone = findDroneByName(droneName);
+        return drone == null ? null : drone.getHistory(from, limit);
+    }
+
+    @Override
+    public void watchPath(String droneName, long knownVersion, Consumer<PathUpdate> listener) {
+        PathWatch watch = new PathWatch(knownVersion, listener);
+        pathWatchers.compute(droneName, (name, watches) -> {
+            List<PathWatch> list = watches == null ? new ArrayList<>() : watches;
+            list.add(watch);
+            return list;
+        });
+        // The route may have changed before the watch was registered
+        notifyPathWatchers(droneName);
+    }
+
+    @Override
+    public void unwatchPath(String droneName, Consumer<PathUpdate> listener) {
+        pathWatchers.computeIfPresent(droneName, (name, watches) -> {
+            watches.removeIf(watch -> watch.listener == listener);
+            return watches.isEmpty() ? null : watches;
+        });
+    }
+
+    private void notifyPathWatchers() {
+        if (pathWatchers.isEmpty()) {
+            return;
         }
-        Drone crtDrone = findDroneByName(droneName);
-        if (crtDrone != null) {
-            droneFlightPath = crtDrone.getTargetPath();
+        for (String droneName : pathWatchers.keySet()) {
+            notifyPathWatchers(droneName);
+        }
+    }
+
+    private void notifyPathWatchers(String droneName) {
+        Drone drone = findDroneByName(droneName);
+        if (drone == null) {
+            // The drone may still register
+            return;
+        }
+        PathUpdate update = drone.getPathUpdate();
+        List<PathWatch> due = new ArrayList<>();
+        pathWatchers.computeIfPresent(droneName, (name, watches) -> {
+            watches.removeIf(watch -> watch.knownVersion != update.getVersion() && due.add(watch));
+            return watches.isEmpty() ? null : watches;
+        });
+        // Listeners are called outside the map lock
+        for (PathWatch watch : due) {
+            watch.listener.accept(update);
         }
-        return droneFlightPath;
     }
 
     @Override
-    public synchronized void recordDronePosition(String droneName, Position newPosition) {
-        if (droneName == null || newPosition == null) {
+    public void recordDronePosition(String droneName, Position newPosition) {
+        stateLock.lock();
+        try {
+            record(recorder -> recorder.position(droneName, newPosition));
+            applyDronePosition(droneName, newPosition);
+        } finally {
+            stateLock.unlock();
+        }
+        notifyPathWatchers();
+    }
+
+    @Override
+    public List<WaypointUpdate> recordDronePositions(List<PositionReport> reports) {
+        List<WaypointUpdate> updates = new ArrayList<>(reports.size());
+        stateLock.lock();
+        try {
+            record(recorder -> recorder.positions(reports));
+            for (PositionReport report : reports) {
+                Drone drone = applyDronePosition(report.getDroneName(), report.getPosition());
+                updates.add(new WaypointUpdate(report.getDroneName(), drone != null,
+                        drone == null ? null : drone.getNextPossibleMove()));
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        notifyPathWatchers();
+        return updates;
+    }
+
+    @Override
+    public long writeCheckpoint(Path file) throws IOException {
+        NavigationGrid grid;
+        ColorSnapshot colors;
+        BitSet visited;
+        int visitedTotal;
+        int tick;
+        int resetTick;
+        int nextId;
+        List<CapturedDrone> fleet;
+        // Only the small, fast-changing state is copied under the lock; the grid is copied by the writer
+        stateLock.lock();
+        try {
+            if (navigationGrid == null) {
+                throw new IllegalStateException("No map loaded");
+            }
+            grid = navigationGrid;
+            // Colors set by position reports since the last tick are part of the checkpoint
+            mapService.publishChanges();
+            colors = mapService.getColorSnapshot();
+            visited = (BitSet) visitedCells.clone();
+            visitedTotal = visitedCount;
+            tick = grid.getTick();
+            resetTick = grid.getResetTick();
+            nextId = nextDroneId;
+            fleet = new ArrayList<>(activeDrones.size());
+            for (Drone drone : activeDrones) {
+                fleet.add(new CapturedDrone(drone, grid));
+            }
+            grid.startDecayLog();
+        } finally {
+            stateLock.unlock();
+        }
+
+        boolean logging = true;
+        try (CheckpointFile.Writer out = CheckpointFile.create(file, grid.getWidth(), grid.getHeight())) {
+            out.writeValues(grid);
+            out.writeColors(colors.getColors());
+            out.writeVisited(visited, visitedTotal);
+            out.writeDecay(grid, tick, resetTick);
+            int[] overwritten;
+            stateLock.lock();
+            try {
+                overwritten = grid.stopDecayLog();
+                logging = false;
+            } finally {
+                stateLock.unlock();
+            }
+            if (overwritten == null) {
+                throw new IllegalStateException("The decay ticks were rebased during the checkpoint");
+            }
+            out.writeDecayOverrides(overwritten);
+            for (CapturedDrone captured : fleet) {
+                List<Position> history = captured.drone.copyRecentHistory(captured.historyEpoch, captured.historySize);
+                if (history == null) {
+                    throw new IllegalStateException("The coverage restarted during the checkpoint");
+                }
+                out.writeDrone(captured.drone.getId(), captured.drone.getName(), captured.currentPosition,
+                        captured.targetPosition, captured.targetPath, captured.pathVersion, captured.occupiedSince,
+                        captured.historySize, captured.travelledPathValue, history);
+            }
+            return out.finish(nextId);
+        } finally {
+            if (logging) {
+                stateLock.lock();
+                try {
+                    grid.stopDecayLog();
+                } finally {
+                    stateLock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void restoreCheckpoint(Path file) throws IOException {
+        // Mapping the file and building the grid and target index do not need the lock
+        CheckpointFile checkpoint = CheckpointFile.load(file);
+        NavigationGrid grid = checkpoint.createGrid();
+        BitSet visited = checkpoint.getVisitedCells();
+        TargetIndex index = new TargetIndex(grid);
+        ClusterGraph clusters = ClusterGraph.create(grid, clusterSize);
+        for (int cell = visited.nextSetBit(0); cell >= 0 && cell < grid.size(); cell = visited.nextSetBit(cell + 1)) {
+            index.remove(cell);
+        }
+        stateLock.lock();
+        try {
+            record(recorder -> recorder.restore(checkpoint.getContent()));
+            discardDrones();
+            navigationGrid = grid;
+            targetIndex = index;
+            clusterGraph = clusters;
+            pathCache.reset(grid);
+            reservations.clear();
+            clearClusterRoutes();
+            crtTargets.clear();
+            lockedTargets.clear();
+            visitedCells.clear();
+            visitedCells.or(visited);
+            visitedCount = visitedCells.cardinality();
+            mapService.init(grid);
+            mapService.restoreColors(checkpoint.getColors());
+            for (CheckpointFile.DroneRecord record : checkpoint.getDrones()) {
+                Drone drone = new Drone(record.getId(), record.getName(), record.getCurrentPosition(),
+                        newTrajectory(record.getId()));
+                drone.restoreState(record.getTargetPosition(), record.getTargetPath(), record.getPathVersion(),
+                        record.getHistorySize(), record.getTravelledPathValue(), record.getHistory());
+                activeDrones.add(drone);
+                dronesByName.put(drone.getName(), drone);
+                Position target = drone.getTargetPosition();
+                if (target != null && !positionOutOfBounds(target.getPosX(), target.getPosY())) {
+                    lockTarget(drone.getName(), target);
+                }
+            }
+            nextDroneId = checkpoint.getNextDroneId();
+            droneCount = activeDrones.size();
+            LOG.info("Restored {}x{} grid with {} drones from {}", grid.getWidth(), grid.getHeight(), droneCount, file);
+            if (!simulationClock.isRunning()) {
+                simulationClock.start(this);
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        notifyPathWatchers();
+    }
+
+    @Override
+    public void startRecording(RecordingFile.Writer recorder) {
+        stateLock.lock();
+        try {
+            stopRecording();
+            recording = recorder;
+            recordingFlushNanos = System.nanoTime();
+            deterministicTicks = true;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    @Override
+    public void stopRecording() {
+        stateLock.lock();
+        try {
+            if (recording == null) {
+                return;
+            }
+            RecordingFile.Writer recorder = recording;
+            recording = null;
+            try {
+                recorder.finish(stateDigest());
+            } catch (IOException e) {
+                LOG.warn("Failed to finish the recording", e);
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Advances the drones of a tick one after the other even for large fleets, so the result does not depend on
+     * the thread timing. Recorded sessions and replays tick deterministically.
+     */
+    public void setDeterministicTicks(boolean deterministic) {
+        stateLock.lock();
+        try {
+            deterministicTicks = deterministic;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Hash of the whole simulation state: grid decay and occupancy, visited cells, colors and fleet. Two sessions
+     * that went through the same inputs and ticks deterministically have the same digest.
+     */
+    long stateDigest() {
+        stateLock.lock();
+        try {
+            long hash = 0xcbf29ce484222325L;
+            hash = mix(hash, nextDroneId);
+            hash = mix(hash, visitedCount);
+            if (navigationGrid != null) {
+                int size = navigationGrid.size();
+                hash = mix(hash, navigationGrid.getWidth());
+                hash = mix(hash, size);
+                for (int i = 0; i < size; i++) {
+                    hash = mix(hash, navigationGrid.getDecay(i));
+                    hash = mix(hash, navigationGrid.getOccupant(i));
+                }
+                for (long word : visitedCells.toLongArray()) {
+                    hash = mix(hash, (int) word);
+                    hash = mix(hash, (int) (word >>> 32));
+                }
+                mapService.publishChanges();
+                for (byte color : mapService.getColorSnapshot().getColors()) {
+                    hash = mix(hash, color);
+                }
+            }
+            for (Drone drone : activeDrones) {
+                hash = mix(hash, drone.getId());
+                hash = mix(hash, drone.getName().hashCode());
+                hash = mix(hash, drone.getCurrentPosition());
+                hash = mix(hash, drone.getTargetPosition());
+                List<Position> path = drone.getTargetPath();
+                hash = mix(hash, path == null ? -1 : path.size());
+                if (path != null) {
+                    for (Position position : path) {
+                        hash = mix(hash, position);
+                    }
+                }
+                hash = mix(hash, (int) drone.getPathVersion());
+                hash = mix(hash, (int) drone.getHistorySize());
+                hash = mix(hash, (int) drone.getTravelledPathValue());
+            }
+            return hash;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    // FNV-1a over 32-bit words
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    private static long mix(long hash, Position position) {
+        if (position == null) {
+            return mix(hash, -1);
+        }
+        return mix(mix(hash, position.getPosX()), position.getPosY());
+    }
+
+    // Recording failures stop the recording, never the simulation
+    private void record(RecordingStep step) {
+        if (recording == null) {
             return;
         }
+        try {
+            step.write(recording);
+        } catch (IOException e) {
+            LOG.warn("Failed to record the simulation, recording stopped", e);
+            try {
+                recording.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+            recording = null;
+        }
+    }
+
+    // Written out about once a second, so a crash loses little of the log
+    private void flushRecording(long now) {
+        if (recording != null && now - recordingFlushNanos > 1_000_000_000L) {
+            recordingFlushNanos = now;
+            record(RecordingFile.Writer::flush);
+        }
+    }
+
+    /**
+     * @return the drone, or null if the report was discarded
+     */
+    private Drone applyDronePosition(String droneName, Position newPosition) {
+        if (droneName == null || newPosition == null) {
+            return null;
+        }
 
         if (positionOutOfBounds(newPosition.getPosX(), newPosition.getPosY())) {
-            return; // Out-of-bounds positions are discarded
+            return null; // Out-of-bounds positions are discarded
         }
         Drone crtDrone = findDroneByName(droneName);
         // If the drone does not exist, try to add it
@@ -106,105 +612,384 @@ public class PathServiceImpl implements PathService, Runnable {
             // Free up the old space in the navigation plane
             Position oldPosition = crtDrone.getCurrentPosition();
             if (oldPosition != null) {
-                setNavigationPlaneOccupied(crtDrone.getName(), crtDrone.getCurrentPosition(), false);
+                releaseNavigationPlane(crtDrone, crtDrone.getCurrentPosition());
             }
             // Set the new position
             crtDrone.setCurrentPosition(Position.builder(newPosition).build());
-            setDronePositionInPlane(droneName, newPosition);
+            setDronePositionInPlane(crtDrone, newPosition);
+            // A drone that left its route gets a new one on the next tick
+            if (!crtDrone.skipPathTo(newPosition) && !newPosition.equals(oldPosition)) {
+                crtDrone.setTargetPath(null);
+            }
+            crtDrone.publishPath();
         }
+        return crtDrone;
     }
 
-    private synchronized void setDronePositionInPlane(String droneName, Position position) {
-        if (!visitedPositions.contains(position)) {
-            visitedPositions.add(position);
+    private void setDronePositionInPlane(Drone drone, Position position) {
+        if (position == null || positionOutOfBounds(position.getPosX(), position.getPosY())) {
+            return;
         }
+        int cell = navigationGrid.index(position.getPosX(), position.getPosY());
         // TODO Is this the right place?
-        setNavigationPlaneOccupied(droneName, position, true);
+        navigationGrid.occupy(cell, drone.getId());
+        pathCache.occupied(cell);
+        markVisited(drone, cell);
+    }
+
+    /**
+     * Records a cell the drone now sits on (already reserved in the grid) as visited and colors it.
+     */
+    private void markVisited(Drone drone, int cell) {
+        if (!visitedCells.get(cell)) {
+            visitedCells.set(cell);
+            visitedCount++;
+            targetIndex.remove(cell);
+            metrics.visitedCells(1);
+        }
+        mapService.setColor(navigationGrid.xOf(cell), navigationGrid.yOf(cell), (drone.getId() + 4));
+    }
+
+    private int cellOf(Position position) {
+        return navigationGrid.index(position.getPosX(), position.getPosY());
     }
 
-    private synchronized boolean positionOutOfBounds(int x, int y) {
-        return navigationPlanes.isEmpty() || x < 0 || x >= navigationPlanes.getFirst().size() || y < 0 || y >= navigationPlanes.size();
+    private boolean positionOutOfBounds(int x, int y) {
+        return navigationGrid == null || !navigationGrid.isInBounds(x, y);
     }
 
     @Override
     public void run() {
-        synchronized (this) {
-            for (Drone drone : activeDrones) {
-                if (visitedPositions.size() < navigationPlanes.size() * navigationPlanes.getFirst().size()) {
-                    List<Position> exclusionList = new ArrayList<>(visitedPositions);
-                    for (String targetName : crtTargets.keySet()) {
-                        exclusionList.add(crtTargets.get(targetName));
-                    }
-                    // If no target is set, or the target us reached of the target has already been visited, find a new destination
-                    if (drone.isTargetReached() || isVisited(drone.getTargetPosition())) {
-                        // Find a new target for this drone
-                        drone.setTargetPosition(PathCalculator.getClosestTarget(drone.getCurrentPosition(), navigationPlanes, exclusionList));
-                        // The path to the target is yet to be determined
-                        drone.setTargetPath(null);
-                        // Free position for make sure other drones are able to fly
-                        setNavigationPlaneOccupied(drone.getName(), drone.getCurrentPosition(), false);
+        long tickStart = System.nanoTime();
+        stateLock.lock();
+        try {
+            // The mode decides what a complete simulation does next, so a replay needs it
+            SimulationClock.Mode mode = simulationClock.getMode();
+            record(recorder -> recorder.tick(mode));
+            if (navigationGrid == null || activeDrones.isEmpty()) {
+                // Max-throughput ticks would only spin; addDrone and init start the clock again
+                stopIfMaxThroughput(mode);
+                return;
+            }
+            if (visitedCount < navigationGrid.size()) {
+                int fleetSize = activeDrones.size();
+                if (tickMoves.length < 2 * fleetSize) {
+                    tickMoves = new int[2 * fleetSize];
+                    tickPlans = new int[fleetSize][];
+                    tickPlanned = new boolean[fleetSize];
+                    windowDue = new boolean[fleetSize];
+                }
+                // Targets are handed out sequentially, so a target is never locked by two drones
+                lockConflicts = 0;
+                int assigned = 0;
+                for (Drone drone : activeDrones) {
+                    if (assignTarget(drone)) {
+                        assigned++;
                     }
-                    // If the drone has a locked target, either continue on the path or get the next path part (long distances)
-                    if (drone.getTargetPosition() != null) {
-                        // The current target is marked as locked
-                        crtTargets.put(drone.getName(), drone.getTargetPosition());
-                        if (drone.getNextPossibleMove() != null) {
-                            if (!droneMovedIntoFreeSpace(drone)) {
-                                // Just wait, but maybe a re-route is needed
-                            }
+                }
+                metrics.assignedTargets(assigned, lockConflicts);
+                // The cache is not thread-safe: look up the routes before planning in parallel
+                int hits = 0;
+                int misses = 0;
+                for (int i = 0; i < fleetSize; i++) {
+                    Drone drone = activeDrones.get(i);
+                    tickPlanned[i] = false;
+                    tickPlans[i] = null;
+                    if (drone.getTargetPosition() != null && drone.getNextPossibleMove() == null) {
+                        tickPlans[i] = pathCache.find(cellOf(drone.getCurrentPosition()), cellOf(drone.getTargetPosition()));
+                        if (tickPlans[i] != null) {
+                            hits++;
                         } else {
-                            // If there is no path set, retrieve a new path towards the target
-                            List<Position> calculatedPath = PathCalculator.calculatePath(drone.getCurrentPosition(), drone.getTargetPosition(), navigationPlanes);
-                            if (!calculatedPath.isEmpty()) {
-                                drone.setTargetPath(calculatedPath);
-                            } else {
-                                // There is no possible path, target is abandoned
-                                drone.setTargetPosition(null);
-                                drone.setTargetPath(null);
-                                crtTargets.remove(drone.getName());
-                            }
+                            misses++;
                         }
                     }
+                }
+                metrics.pathCacheLookups(hits, misses);
+                if (clusterGraph != null) {
+                    updateClusterGraph();
+                }
+                // Planning and moving run in parallel; cells are reserved with compare-and-set on the grid.
+                // The drones that win a contended cell then depend on the thread timing, so deterministic
+                // ticks advance the drones in fleet order
+                if (fleetSize >= PARALLEL_TICK_THRESHOLD && tickPool != null && !deterministicTicks) {
+                    // A parallel stream started inside the pool runs in it rather than in the common pool
+                    tickPool.submit(() -> IntStream.range(0, fleetSize).parallel()
+                            .forEach(i -> advanceDrone(i, activeDrones.get(i)))).join();
                 } else {
-                    printTravelledPathValues();
-                    System.out.println("Target reached; start over");
-                    restartNavigation();
-                    break;
+                    for (int i = 0; i < fleetSize; i++) {
+                        advanceDrone(i, activeDrones.get(i));
+                    }
                 }
+                // Cache the new routes first, so the moves of this tick cut them where they cross
+                for (int i = 0; i < fleetSize; i++) {
+                    if (tickPlanned[i]) {
+                        pathCache.put(cellOf(activeDrones.get(i).getCurrentPosition()), tickPlans[i]);
+                    }
+                    tickPlans[i] = null;
+                }
+                // Cooperative windows are planned one drone after the other, each around the ones before it
+                if (spaceTimePlanner != null) {
+                    reserveWindows();
+                }
+                // Visited cells, target locks and colors are not thread-safe; apply the tick results in fleet order
+                for (int i = 0; i < fleetSize; i++) {
+                    commitDrone(i, activeDrones.get(i));
+                }
+            } else {
+                logTravelledPathValues();
+                // Offline runs end here, keeping the final state
+                if (stopIfMaxThroughput(mode)) {
+                    LOG.info("Target reached; simulation complete");
+                    return;
+                }
+                LOG.info("Target reached; start over");
+                restartNavigation();
             }
-            // Update decay across the whole navigation plane
-            // Increase decay by 1 for non-occupied positions; clear decay for occupied ones
-            applyDecayToNavigationPlanes(1, false);
+            // Decay pass: non-occupied positions decay by 1, occupied ones stay clear.
+            // The grid computes decay lazily, so this only advances its tick counter
+            navigationGrid.advanceTick();
+            reservationTick++;
+            // Push this tick's color changes to the live map viewers
+            mapService.publishChanges();
+            flushRecording(tickStart);
+        } finally {
+            stateLock.unlock();
+        }
+        metrics.recordTick(System.nanoTime() - tickStart);
+        // Outside the service lock: watchers read the published routes
+        notifyPathWatchers();
+    }
+
+    private boolean stopIfMaxThroughput(SimulationClock.Mode mode) {
+        if (mode != SimulationClock.Mode.MAX_THROUGHPUT) {
+            return false;
         }
+        simulationClock.stop();
+        return true;
     }
 
-    private synchronized void printTravelledPathValues() {
+    /**
+     * @return whether the drone got a new target
+     */
+    private boolean assignTarget(Drone drone) {
+        boolean assigned = false;
+        // If no target is set, or the target us reached of the target has already been visited, find a new destination
+        if (drone.isTargetReached() || isVisited(drone.getTargetPosition())) {
+            // Find a new target for this drone
+            drone.setTargetPosition(PathCalculator.getClosestTarget(drone.getCurrentPosition(), navigationGrid, targetIndex, lockedTargetFilter));
+            // The path to the target is yet to be determined
+            drone.setTargetPath(null);
+            assigned = drone.getTargetPosition() != null;
+        }
+        if (drone.getTargetPosition() != null) {
+            // The current target is marked as locked
+            lockTarget(drone.getName(), drone.getTargetPosition());
+        } else {
+            releaseTarget(drone.getName());
+        }
+        return assigned;
+    }
+
+    /**
+     * Runs on the tick workers: must not take the service lock or touch non-thread-safe state.
+     */
+    private void advanceDrone(int slot, Drone drone) {
+        tickMoves[2 * slot] = -1;
+        tickMoves[2 * slot + 1] = -1;
+        // If the drone has a locked target, either continue on the path or plan the route to it
+        if (drone.getTargetPosition() == null) {
+            return;
+        }
+        if (drone.getNextPossibleMove() != null) {
+            Position from = drone.getCurrentPosition();
+            if (droneMovedIntoFreeSpace(drone)) {
+                tickMoves[2 * slot] = navigationGrid.index(from.getPosX(), from.getPosY());
+                tickMoves[2 * slot + 1] = navigationGrid.index(drone.getCurrentPosition().getPosX(), drone.getCurrentPosition().getPosY());
+            }
+            // Otherwise just wait, but maybe a re-route is needed
+        } else {
+            // If there is no path set, take the cached route or plan a new path towards the target
+            int[] calculatedPath = tickPlans[slot];
+            if (calculatedPath == null) {
+                long planningStart = System.nanoTime();
+                calculatedPath = PathCalculator.calculatePathCells(drone.getCurrentPosition(), drone.getTargetPosition(),
+                        navigationGrid, pathPlanners.get(), clusterGraph,
+                        clusterGraph == null ? null : clusterRoutes[drone.getId()]);
+                metrics.recordPlanning(System.nanoTime() - planningStart);
+                tickPlans[slot] = calculatedPath;
+                // Only complete routes are cached; the first stretches of a long one are of no use to other drones
+                tickPlanned[slot] = calculatedPath.length > 0
+                        && calculatedPath[calculatedPath.length - 1] == cellOf(drone.getTargetPosition());
+            }
+            if (calculatedPath.length > 0) {
+                drone.setTargetPath(PathCalculator.toPositions(calculatedPath, navigationGrid));
+            } else {
+                // There is no possible path, target is abandoned
+                metrics.abandonedTarget();
+                drone.setTargetPosition(null);
+                drone.setTargetPath(null);
+            }
+        }
+    }
+
+    private void commitDrone(int slot, Drone drone) {
+        int from = tickMoves[2 * slot];
+        int to = tickMoves[2 * slot + 1];
+        if (to >= 0) {
+            pathCache.occupied(to);
+            if (clusterGraph != null) {
+                clusterGraph.unblock(from);
+            }
+            // A cell taken over by another drone in the same tick gets that drone's color instead
+            if (!navigationGrid.isOccupied(from)) {
+                mapService.setColor(navigationGrid.xOf(from), navigationGrid.yOf(from), 3);
+            }
+            markVisited(drone, to);
+        }
+        if (drone.getTargetPosition() == null) {
+            releaseTarget(drone.getName());
+        }
+        drone.publishPath();
+    }
+
+    /**
+     * Blocks the cells of stopped drones in the cluster graph and rebuilds the clusters changed since the last
+     * tick. Runs before the drones plan, which only read the graph.
+     */
+    private void updateClusterGraph() {
+        int tick = navigationGrid.getTick();
         for (Drone drone : activeDrones) {
-            System.out.println("Travelled path info for drone " + drone.getName() + " Number of steps: " + drone.getHistoryPath().size()
-                    + ". Path value: " + drone.getTravelledPathValue());
-            System.out.println("Current position: " + drone.getCurrentPosition() + ", Target position: " + drone.getTargetPosition()
-                    + ", Target assigned: " + (drone.getTargetPosition() != null));
+            Position position = drone.getCurrentPosition();
+            if (position == null || positionOutOfBounds(position.getPosX(), position.getPosY())) {
+                continue;
+            }
+            int cell = cellOf(position);
+            int since = navigationGrid.getOccupiedSince(cell);
+            if (since >= 0 && tick - since >= STATIONARY_TICKS && navigationGrid.getOccupant(cell) == drone.getId()) {
+                clusterGraph.block(cell);
+            }
+        }
+        metrics.rebuiltClusters(clusterGraph.update());
+        if (clusterRoutes.length < nextDroneId) {
+            int oldLength = clusterRoutes.length;
+            clusterRoutes = Arrays.copyOf(clusterRoutes, Math.max(nextDroneId, 2 * oldLength));
+            for (int id = oldLength; id < clusterRoutes.length; id++) {
+                clusterRoutes[id] = new ClusterRoute();
+            }
         }
     }
 
-    private synchronized boolean droneMovedIntoFreeSpace(Drone drone) {
+    /**
+     * Plans the next window of the drones whose reserved moves run low, or whose route changed since. Runs after
+     * the moves of the tick: the window starts where the drones are for the next tick.
+     */
+    private void reserveWindows() {
+        int now = reservationTick + 1;
+        reservations.advanceTo(now);
+        if (reservedVersions.length < nextDroneId) {
+            reservedVersions = Arrays.copyOf(reservedVersions, Math.max(nextDroneId, 2 * reservedVersions.length));
+        }
+        int window = spaceTimePlanner.getWindow();
+        // Stale reservations are dropped before any drone plans, so nobody plans around moves that will not happen
+        for (int i = 0; i < activeDrones.size(); i++) {
+            Drone drone = activeDrones.get(i);
+            int id = drone.getId();
+            List<Position> route = drone.getTargetPath();
+            int reserved = reservations.getPlannedUntil(id) - now;
+            boolean onSchedule = reservations.getCell(id, now) == cellOf(drone.getCurrentPosition())
+                    && reservedVersions[id] == drone.getPathVersion();
+            // Hovering drones are obstacles to the others
+            windowDue[i] = route != null && !route.isEmpty()
+                    && !(onSchedule && (reserved >= window / 2 || reserved >= route.size()));
+            if (windowDue[i] || route == null || route.isEmpty()) {
+                reservations.release(id);
+            }
+        }
+        int[] routeCells = new int[window];
+        int windows = 0;
+        int waits = 0;
+        for (int i = 0; i < activeDrones.size(); i++) {
+            if (!windowDue[i]) {
+                continue;
+            }
+            windowDue[i] = false;
+            Drone drone = activeDrones.get(i);
+            int id = drone.getId();
+            List<Position> route = drone.getTargetPath();
+            int cell = cellOf(drone.getCurrentPosition());
+            int routeLength = Math.min(window, route.size());
+            for (int c = 0; c < routeLength; c++) {
+                routeCells[c] = cellOf(route.get(c));
+            }
+            int[] steps = spaceTimePlanner.plan(navigationGrid, reservations, id, cell, routeCells, routeLength,
+                    routeLength == route.size(), now);
+            if (steps == null) {
+                // Boxed in: the drone keeps its route and finds out on the move whether it is free
+                continue;
+            }
+            List<Position> windowRoute = new ArrayList<>(steps.length + route.size());
+            Position previous = drone.getCurrentPosition();
+            for (int step : steps) {
+                if (step == cellOf(previous)) {
+                    waits++;
+                } else {
+                    previous = navigationGrid.positionAt(step);
+                }
+                windowRoute.add(previous);
+            }
+            // Off the route, the drone plans a new one once the window is flown
+            int rejoin = spaceTimePlanner.getRejoinIndex();
+            if (rejoin >= 0) {
+                windowRoute.addAll(route.subList(rejoin + 1, route.size()));
+            }
+            drone.setTargetPath(windowRoute);
+            reservations.reserve(id, now, cell, steps, steps.length, now + spaceTimePlanner.getHorizon());
+            reservedVersions[id] = drone.getPathVersion();
+            windows++;
+        }
+        metrics.reservedWindows(windows, waits);
+    }
+
+    private void logTravelledPathValues() {
+        if (!LOG.isDebugEnabled()) {
+            return;
+        }
+        for (Drone drone : activeDrones) {
+            LOG.debug("Travelled path info for drone {} Number of steps: {}. Path value: {}",
+                    drone.getName(), drone.getHistorySize(), drone.getTravelledPathValue());
+            LOG.debug("Current position: {}, Target position: {}, Target assigned: {}",
+                    drone.getCurrentPosition(), drone.getTargetPosition(), drone.getTargetPosition() != null);
+        }
+    }
+
+    private boolean droneMovedIntoFreeSpace(Drone drone) {
+        if (drone.holdPosition()) {
+            // A wait step of a cooperative route, letting another drone pass
+            return false;
+        }
         Position nextPossiblePosition = drone.getNextPossibleMove();
+        Position crtPosition = drone.getCurrentPosition();
+        int crtCell = navigationGrid.index(crtPosition.getPosX(), crtPosition.getPosY());
         boolean droneMoved = false;
+        if (nextPossiblePosition != null && isReservedByOther(drone, cellOf(nextPossiblePosition))) {
+            // A drone that could not reserve its window waits for the reserved drones to pass
+            metrics.blockedMove();
+            return false;
+        }
         if (nextPossiblePosition != null) {
-            if (isNavigationPlaneFree(nextPossiblePosition)) {
-                // Only if the drone can move into the space
-                recordDronePosition(drone.getName(), nextPossiblePosition);
+            if (navigationGrid.tryOccupy(navigationGrid.index(nextPossiblePosition.getPosX(), nextPossiblePosition.getPosY()), drone.getId())) {
+                // Only if the drone could reserve the space
                 drone.moveToNextPosition();
                 droneMoved = true;
                 //Otherwise wait for the plane to be vacated
             } else {
                 // Find another free space around the current position
-                System.out.println("Next location is blocked; finding free space for drone " + drone.getName());
-                nextPossiblePosition = findFreeSpace(drone.getCurrentPosition(), drone.getTargetPosition());
+                metrics.blockedMove();
+                nextPossiblePosition = findFreeSpace(drone, crtPosition);
                 if (nextPossiblePosition != null) {
-                    drone.getTargetPath().addFirst(drone.getCurrentPosition());
+                    metrics.reroute();
+                    drone.getTargetPath().addFirst(crtPosition);
                     drone.getTargetPath().addFirst(nextPossiblePosition);
-                    recordDronePosition(drone.getName(), nextPossiblePosition);
                     drone.moveToNextPosition();
                     // Force path recalculation
                     drone.setTargetPath(null);
@@ -212,21 +997,45 @@ public class PathServiceImpl implements PathService, Runnable {
                 }
             }
         }
+        if (droneMoved) {
+            navigationGrid.release(crtCell, drone.getId());
+        }
         return droneMoved;
     }
 
-    private synchronized Position findFreeSpace(Position crtPosition, Position targetPosition) {
+    /**
+     * Reserves the first free neighbour of the current position for the drone.
+     */
+    private Position findFreeSpace(Drone drone, Position crtPosition) {
         if (crtPosition == null) {
             return null;
         }
 
         List<Position> availablePositions = getNeighbours(crtPosition);
-        return availablePositions.stream().filter(this::isNavigationPlaneFree).findFirst().orElse(null);
+        return availablePositions.stream()
+                .filter(p -> !isReservedByOther(drone, cellOf(p)))
+                .filter(p -> navigationGrid.tryOccupy(navigationGrid.index(p.getPosX(), p.getPosY()), drone.getId()))
+                .findFirst().orElse(null);
+    }
+
+    // Cells other drones reserved for the next two ticks; unreserved moves and side-steps keep out of them.
+    // The table is only written between the parallel phases of a tick
+    private boolean isReservedByOther(Drone drone, int cell) {
+        if (spaceTimePlanner == null) {
+            return false;
+        }
+        for (int tick = reservationTick + 1; tick <= reservationTick + 2; tick++) {
+            int holder = reservations.getHolder(cell, tick);
+            if (holder >= 0 && holder != drone.getId()) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public synchronized List<Position> getNeighbours(Position crtPosition) {
+    private List<Position> getNeighbours(Position crtPosition) {
         List<Position> neighbours = new ArrayList<>();
-        if (navigationPlanes.isEmpty() || crtPosition == null) {
+        if (navigationGrid == null || crtPosition == null) {
             return neighbours;
         }
 
@@ -234,82 +1043,154 @@ public class PathServiceImpl implements PathService, Runnable {
             return neighbours;
         }
 
-        int height = navigationPlanes.size();
-        int width = navigationPlanes.getFirst().size();
+        int height = navigationGrid.getHeight();
+        int width = navigationGrid.getWidth();
+        int x = crtPosition.getPosX();
+        int y = crtPosition.getPosY();
 
-        if (crtPosition.getPosY() + 1 < height) {
-            neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY() + 1).get(crtPosition.getPosX())).build());
+        if (y + 1 < height) {
+            neighbours.add(navigationGrid.positionAt(x, y + 1));
         }
-        if (crtPosition.getPosY() - 1 >= 0) {
-            neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY() - 1).get(crtPosition.getPosX())).build());
+        if (y - 1 >= 0) {
+            neighbours.add(navigationGrid.positionAt(x, y - 1));
         }
-        if (crtPosition.getPosX() + 1 < width) {
-            neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY()).get(crtPosition.getPosX() + 1)).build());
-            if (crtPosition.getPosY() + 1 < height)
-                neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY() + 1).get(crtPosition.getPosX() + 1)).build());
-            if (crtPosition.getPosY() - 1 >= 0)
-                neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY() - 1).get(crtPosition.getPosX() + 1)).build());
+        if (x + 1 < width) {
+            neighbours.add(navigationGrid.positionAt(x + 1, y));
+            if (y + 1 < height)
+                neighbours.add(navigationGrid.positionAt(x + 1, y + 1));
+            if (y - 1 >= 0)
+                neighbours.add(navigationGrid.positionAt(x + 1, y - 1));
         }
-        if (crtPosition.getPosX() - 1 >= 0) {
-            neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY()).get(crtPosition.getPosX() - 1)).build());
-            if (crtPosition.getPosY() + 1 < height)
-                neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY() + 1).get(crtPosition.getPosX() - 1)).build());
-            if (crtPosition.getPosY() - 1 >= 0)
-                neighbours.add(Position.builder(navigationPlanes.get(crtPosition.getPosY() - 1).get(crtPosition.getPosX() - 1)).build());
+        if (x - 1 >= 0) {
+            neighbours.add(navigationGrid.positionAt(x - 1, y));
+            if (y + 1 < height)
+                neighbours.add(navigationGrid.positionAt(x - 1, y + 1));
+            if (y - 1 >= 0)
+                neighbours.add(navigationGrid.positionAt(x - 1, y - 1));
         }
         return neighbours;
     }
 
-    private synchronized boolean isNavigationPlaneFree(Position position) {
-        if (position == null) {
-            return true;
+    private boolean isVisited(Position position) {
+        if (position == null || positionOutOfBounds(position.getPosX(), position.getPosY())) {
+            return false;
         }
-        return !navigationPlanes.get(position.getPosY()).get(position.getPosX()).isOccupied();
+        return visitedCells.get(navigationGrid.index(position.getPosX(), position.getPosY()));
     }
 
-    private synchronized boolean isVisited(Position position) {
-        if (position == null) {
-            return false;
+    private void lockTarget(String droneName, Position target) {
+        Position previous = crtTargets.put(droneName, target);
+        if (previous != null && !positionOutOfBounds(previous.getPosX(), previous.getPosY())) {
+            lockedTargets.remove(navigationGrid.index(previous.getPosX(), previous.getPosY()));
         }
-        return visitedPositions.contains(position);
+        lockedTargets.add(navigationGrid.index(target.getPosX(), target.getPosY()));
     }
 
-    private synchronized void setNavigationPlaneOccupied(String droneName, Position position, boolean occupied) {
-        if (position == null) {
+    private void releaseTarget(String droneName) {
+        Position previous = crtTargets.remove(droneName);
+        if (previous != null && !positionOutOfBounds(previous.getPosX(), previous.getPosY())) {
+            lockedTargets.remove(navigationGrid.index(previous.getPosX(), previous.getPosY()));
+        }
+    }
+
+    private void releaseNavigationPlane(Drone drone, Position position) {
+        if (position == null || positionOutOfBounds(position.getPosX(), position.getPosY())) {
             return;
         }
-        navigationPlanes.get(position.getPosY()).get(position.getPosX()).setOccupied(occupied);
-        // Mark the change in the map service as well
-        if (occupied) {
-            mapService.setColor(position.getPosX(), position.getPosY(), (activeDrones.indexOf(findDroneByName(droneName)) + 4));
-        } else {
+        int cell = navigationGrid.index(position.getPosX(), position.getPosY());
+        navigationGrid.release(cell, drone.getId());
+        if (clusterGraph != null) {
+            clusterGraph.unblock(cell);
+        }
+        // Mark the change in the map service as well, unless another drone holds the cell
+        if (!navigationGrid.isOccupied(cell)) {
             mapService.setColor(position.getPosX(), position.getPosY(), 3);
         }
     }
 
-    private synchronized void applyDecayToNavigationPlanes(int decayVal, boolean clearAll) {
-        for (List<Position> row : navigationPlanes) {
-            for (Position p : row) {
-                if (clearAll) {
-                    p.setDecay(decayVal);
-                } else {
-                    p.setDecay(p.isOccupied() ? 0 : p.getDecay() + decayVal);
-                }
-            }
+    private void clearClusterRoutes() {
+        for (ClusterRoute route : clusterRoutes) {
+            route.clear();
+        }
+    }
+
+    private Trajectory newTrajectory(int droneId) {
+        return new Trajectory(historyChunks, historyDir == null ? null : historyDir.resolve(droneId + ".trj"));
+    }
+
+    // Drones leave the simulation only all at once; their spill files are deleted with them
+    private void discardDrones() {
+        for (Drone drone : activeDrones) {
+            drone.closeHistory();
         }
+        activeDrones.clear();
+        dronesByName.clear();
     }
 
-    private synchronized void restartNavigation() {
+    private void restartNavigation() {
+        pathCache.reset(navigationGrid);
+        reservations.clear();
+        clearClusterRoutes();
         crtTargets.clear();
-        visitedPositions.clear();
+        lockedTargets.clear();
+        visitedCells.clear();
+        visitedCount = 0;
+        if (targetIndex != null) {
+            targetIndex.reset();
+        }
         mapService.clear();
         for (Drone drone : activeDrones) {
             drone.setTargetPosition(null);
             drone.setTargetPath(null);
-            drone.clearHistoryPath();
-            setDronePositionInPlane(drone.getName(), drone.getCurrentPosition());
+            drone.clearHistory();
+            drone.publishPath();
+            setDronePositionInPlane(drone, drone.getCurrentPosition());
         }
         // Clear decay as well
-        applyDecayToNavigationPlanes(0, true);
+        if (navigationGrid != null) {
+            navigationGrid.resetDecay();
+        }
+    }
+
+    // Drone state taken between ticks; the history is copied later, as it only grows until it is cleared
+    private static class CapturedDrone {
+        private final Drone drone;
+        private final Position currentPosition;
+        private final Position targetPosition;
+        private final List<Position> targetPath;
+        private final long pathVersion;
+        private final int occupiedSince;
+        private final long historySize;
+        private final long travelledPathValue;
+        private final long historyEpoch;
+
+        private CapturedDrone(Drone drone, NavigationGrid grid) {
+            this.drone = drone;
+            this.currentPosition = drone.getCurrentPosition();
+            this.targetPosition = drone.getTargetPosition();
+            List<Position> path = drone.getTargetPath();
+            this.targetPath = path == null ? List.of() : List.copyOf(path);
+            this.pathVersion = drone.getPathVersion();
+            int cell = grid.index(currentPosition.getPosX(), currentPosition.getPosY());
+            this.occupiedSince = grid.getOccupant(cell) == drone.getId() ? grid.getOccupiedSince(cell) : -1;
+            this.historySize = drone.getHistorySize();
+            this.travelledPathValue = drone.getTravelledPathValue();
+            this.historyEpoch = drone.getHistoryEpoch();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordingStep {
+        void write(RecordingFile.Writer recorder) throws IOException;
+    }
+
+    private static class PathWatch {
+        private final long knownVersion;
+        private final Consumer<PathUpdate> listener;
+
+        private PathWatch(long knownVersion, Consumer<PathUpdate> listener) {
+            this.knownVersion = knownVersion;
+            this.listener = listener;
+        }
     }
 }
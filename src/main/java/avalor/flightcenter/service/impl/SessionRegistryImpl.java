@@ -0,0 +1,348 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.calculator.PathPlanner;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.service.SessionRegistry;
+import avalor.flightcenter.service.SimulationMetrics;
+import avalor.flightcenter.service.SimulationSession;
+import avalor.flightcenter.utils.CheckpointFile;
+import avalor.flightcenter.utils.RecordingFile;
+import avalor.flightcenter.utils.SimulationClock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+@Service
+public class SessionRegistryImpl implements SessionRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionRegistryImpl.class);
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final String plannerType;
+    private final int maxDrones;
+    private final int pathCacheCells;
+    private final int reservationWindow;
+    private final int clusterSize;
+    // Drone trajectories: chunks kept in memory per drone, and where older chunks are spilled (null drops them)
+    private final int historyChunks;
+    private final Path historyDir;
+    private final int tileCacheSize;
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final SimulationClock.Mode clockMode;
+    private final long clockPeriodMillis;
+    private final double clockSpeed;
+    // Planners only keep per-search state, so one per worker thread serves every session
+    private final ThreadLocal<PathPlanner> pathPlanners;
+    // Shared by the ticks of all sessions and the idle sweep
+    private final ScheduledThreadPoolExecutor workers;
+    // Plans and moves the drones of large fleets in parallel during their ticks, for all sessions
+    private final ForkJoinPool tickPool;
+    private final ConcurrentMap<String, SimulationSession> sessions = new ConcurrentHashMap<>();
+    private final List<Consumer<SimulationSession>> removalListeners = new CopyOnWriteArrayList<>();
+    private final SimulationMetrics metrics;
+    // Checkpoints are written by their own thread, so a large grid does not hold up the ticks of other sessions
+    private final Path checkpointDir;
+    private final long checkpointIntervalSeconds;
+    private final ScheduledThreadPoolExecutor checkpointWriter;
+    // Every session created while set records its inputs here, for a deterministic replay
+    private final Path recordingDir;
+
+    public SessionRegistryImpl(@Value("${flightcenter.path-planner:astar}") String plannerType,
+                               @Value("${flightcenter.fleet.max-drones:10000}") int maxDrones,
+                               @Value("${flightcenter.path-cache.max-cells:262144}") int pathCacheCells,
+                               @Value("${flightcenter.reservations.window:16}") int reservationWindow,
+                               @Value("${flightcenter.hierarchy.cluster-size:32}") int clusterSize,
+                               @Value("${flightcenter.history.memory-chunks:16}") int historyChunks,
+                               @Value("${flightcenter.history.spill-dir:}") String historyDir,
+                               @Value("${flightcenter.map.tile-cache-size:1024}") int tileCacheSize,
+                               @Value("${flightcenter.session.max-sessions:10000}") int maxSessions,
+                               @Value("${flightcenter.session.idle-timeout-seconds:1800}") long idleTimeoutSeconds,
+                               @Value("${flightcenter.session.worker-threads:0}") int workerThreads,
+                               @Value("${flightcenter.simulation.mode:realtime}") String clockMode,
+                               @Value("${flightcenter.simulation.period-ms:500}") long clockPeriodMillis,
+                               @Value("${flightcenter.simulation.speed:1}") double clockSpeed,
+                               @Value("${flightcenter.checkpoint.dir:}") String checkpointDir,
+                               @Value("${flightcenter.checkpoint.interval-seconds:300}") long checkpointIntervalSeconds,
+                               @Value("${flightcenter.recording.dir:}") String recordingDir,
+                               SimulationMetrics metrics,
+                               MeterRegistry meterRegistry) {
+        PathCalculator.createPlanner(plannerType); // fail fast on an unknown planner type
+        this.pathPlanners = ThreadLocal.withInitial(() -> PathCalculator.createPlanner(plannerType));
+        this.plannerType = plannerType;
+        this.maxDrones = maxDrones;
+        this.pathCacheCells = pathCacheCells;
+        this.reservationWindow = reservationWindow;
+        this.clusterSize = clusterSize;
+        this.historyChunks = historyChunks;
+        this.historyDir = historyDir == null || historyDir.isBlank() ? null : Path.of(historyDir);
+        this.tileCacheSize = tileCacheSize;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.clockMode = SimulationClock.Mode.parse(clockMode);
+        this.clockPeriodMillis = clockPeriodMillis;
+        this.clockSpeed = clockSpeed;
+        this.metrics = metrics;
+
+        int threads = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, "simulation-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Cancelled ticks of removed sessions must not pile up in the queue
+        this.workers.setRemoveOnCancelPolicy(true);
+        // Sized like the workers, so the parallel phases of many large sessions cannot take more threads than configured
+        this.tickPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("simulation-tick-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+        long sweepPeriodSeconds = Math.max(1, Math.min(60, idleTimeoutSeconds / 4));
+        workers.scheduleWithFixedDelay(this::evictIdleSessions, sweepPeriodSeconds, sweepPeriodSeconds, TimeUnit.SECONDS);
+
+        this.checkpointDir = checkpointDir == null || checkpointDir.isBlank() ? null : Path.of(checkpointDir);
+        this.checkpointIntervalSeconds = checkpointIntervalSeconds;
+        this.recordingDir = recordingDir == null || recordingDir.isBlank() ? null : Path.of(recordingDir);
+        this.checkpointWriter = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Totals over all sessions, computed when scraped
+        Gauge.builder("flightcenter.sessions", sessions, Map::size)
+                .description("Live simulation sessions")
+                .register(meterRegistry);
+        Gauge.builder("flightcenter.fleet.size", sessions, all -> sum(all, s -> s.getPathService().getDroneCount()))
+                .description("Drones in all sessions")
+                .register(meterRegistry);
+        Gauge.builder("flightcenter.grid.cells", sessions, all -> sum(all, s -> {
+                    NavigationGrid grid = s.getMapService().getNavigationGrid();
+                    return grid == null ? 0 : grid.size();
+                }))
+                .description("Cells of the maps loaded in all sessions")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public SimulationSession getOrCreate(String sessionId) {
+        if (sessionId == null || !SESSION_ID.matcher(sessionId).matches()) {
+            throw new IllegalArgumentException("Invalid session id: " + sessionId);
+        }
+        SimulationSession session = sessions.get(sessionId);
+        if (session == null) {
+            session = sessions.computeIfAbsent(sessionId, id -> {
+                if (sessions.size() >= maxSessions) {
+                    throw new IllegalStateException("Maximum number of sessions reached");
+                }
+                return createSession(id);
+            });
+        }
+        session.touch();
+        return session;
+    }
+
+    @Override
+    public SimulationSession find(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        SimulationSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    @Override
+    public boolean remove(String sessionId) {
+        SimulationSession session = sessionId == null ? null : sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        discard(session);
+        return true;
+    }
+
+    @Override
+    public Collection<String> getSessionIds() {
+        return List.copyOf(sessions.keySet());
+    }
+
+    @Override
+    public void addRemovalListener(Consumer<SimulationSession> listener) {
+        removalListeners.add(listener);
+    }
+
+    @Override
+    public long checkpoint(String sessionId) throws IOException {
+        SimulationSession session = find(sessionId);
+        if (checkpointDir == null || session == null) {
+            throw new IllegalStateException(checkpointDir == null ? "Checkpoints are disabled" : "Unknown session " + sessionId);
+        }
+        return session.getPathService().writeCheckpoint(checkpointFile(session.getId()));
+    }
+
+    @Override
+    public long restore(String sessionId) throws IOException {
+        if (checkpointDir == null) {
+            throw new IllegalStateException("Checkpoints are disabled");
+        }
+        SimulationSession session = getOrCreate(sessionId);
+        Path file = checkpointFile(session.getId());
+        session.getPathService().restoreCheckpoint(file);
+        return Files.size(file);
+    }
+
+    // Resumes the sessions checkpointed before the last shutdown, then starts the periodic checkpoints
+    @PostConstruct
+    public void startCheckpoints() throws IOException {
+        if (checkpointDir == null) {
+            return;
+        }
+        Files.createDirectories(checkpointDir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(checkpointDir, "*" + CheckpointFile.EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String sessionId = name.substring(0, name.length() - CheckpointFile.EXTENSION.length());
+                try {
+                    restore(sessionId);
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Failed to restore session {} from {}", sessionId, file, e);
+                }
+            }
+        }
+        if (checkpointIntervalSeconds > 0) {
+            checkpointWriter.scheduleWithFixedDelay(this::checkpointAll, checkpointIntervalSeconds,
+                    checkpointIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checkpointWriter.shutdownNow();
+        if (checkpointDir != null) {
+            // Last checkpoint, so a restart resumes where this process stopped
+            checkpointAll();
+        }
+        for (SimulationSession session : sessions.values()) {
+            session.getPathService().stopRecording();
+        }
+        workers.shutdownNow();
+        tickPool.shutdownNow();
+    }
+
+    private static double sum(Map<String, SimulationSession> all, ToLongFunction<SimulationSession> value) {
+        long total = 0;
+        for (SimulationSession session : all.values()) {
+            total += value.applyAsLong(session);
+        }
+        return total;
+    }
+
+    private SimulationSession createSession(String id) {
+        MapServiceImpl mapService = new MapServiceImpl();
+        SimulationClock clock = new SimulationClock(workers, clockMode, clockPeriodMillis, clockSpeed);
+        PathServiceImpl pathService = new PathServiceImpl(pathPlanners, tickPool, maxDrones, pathCacheCells,
+                reservationWindow, clusterSize, historyChunks, historyDir == null ? null : historyDir.resolve(id), clock, metrics);
+        pathService.setMapService(mapService);
+        if (recordingDir != null) {
+            // One log per session lifetime; a session created again with the same id gets a new one
+            Path file = recordingDir.resolve(id + "-" + System.currentTimeMillis() + RecordingFile.EXTENSION);
+            try {
+                pathService.startRecording(RecordingFile.create(file, plannerType, maxDrones, pathCacheCells,
+                        reservationWindow, clusterSize));
+            } catch (IOException e) {
+                LOG.warn("Failed to start recording session {} to {}", id, file, e);
+            }
+        }
+        TileServiceImpl tileService = new TileServiceImpl(mapService, tileCacheSize);
+        return new SimulationSession(id, mapService, pathService, tileService, clock);
+    }
+
+    private Path checkpointFile(String sessionId) {
+        return checkpointDir.resolve(sessionId + CheckpointFile.EXTENSION);
+    }
+
+    private void checkpointAll() {
+        for (SimulationSession session : sessions.values()) {
+            if (session.getMapService().getNavigationGrid() == null) {
+                continue;
+            }
+            try {
+                long start = System.nanoTime();
+                long size = session.getPathService().writeCheckpoint(checkpointFile(session.getId()));
+                LOG.debug("Checkpointed session {}: {} bytes in {} ms", session.getId(), size,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (IOException | RuntimeException e) {
+                // A failure must not cancel the periodic checkpoints
+                LOG.warn("Failed to checkpoint session {}", session.getId(), e);
+            }
+        }
+    }
+
+    private void evictIdleSessions() {
+        long now = System.nanoTime();
+        for (SimulationSession session : sessions.values()) {
+            if (now - session.getLastAccessNanos() > idleTimeoutNanos && sessions.remove(session.getId(), session)) {
+                LOG.info("Evicting idle session {}", session.getId());
+                try {
+                    discard(session);
+                } catch (RuntimeException e) {
+                    // A failure must not cancel the periodic sweep
+                    LOG.warn("Failed to evict session {}", session.getId(), e);
+                }
+            }
+        }
+    }
+
+    private void discard(SimulationSession session) {
+        session.getPathService().shutdown();
+        session.getMapService().reset();
+        // The spill files of the drones were deleted when the fleet was dropped
+        if (historyDir != null) {
+            try {
+                Files.deleteIfExists(historyDir.resolve(session.getId()));
+            } catch (IOException e) {
+                LOG.warn("Failed to delete the trajectory directory of session {}", session.getId(), e);
+            }
+        }
+        // A discarded session is not resumed after a restart
+        if (checkpointDir != null) {
+            try {
+                Files.deleteIfExists(checkpointFile(session.getId()));
+            } catch (IOException e) {
+                LOG.warn("Failed to delete the checkpoint of session {}", session.getId(), e);
+            }
+        }
+        for (Consumer<SimulationSession> listener : removalListeners) {
+            listener.accept(session);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.calculator.PathPlanner;
+import avalor.flightcenter.service.SimulationMetrics;
+import avalor.flightcenter.utils.RecordingFile;
+import avalor.flightcenter.utils.SimulationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+/**
+ * Re-runs a recorded session headless, as fast as the ticks allow: the inputs are applied in their recorded order
+ * and the recorded number of ticks is run between them. The ticks advance the drones deterministically, like the
+ * recorded session did, so a complete recording ends with the same state digest.
+ */
+public final class SimulationReplay {
+    private static final Logger LOG = LoggerFactory.getLogger(SimulationReplay.class);
+
+    private SimulationReplay() {
+    }
+
+    /**
+     * Replays a recording with the planner it was recorded with.
+     */
+    public static Result replay(Path recording) throws IOException {
+        return replay(recording, null);
+    }
+
+    /**
+     * Replays a recording, optionally with another planner, e.g. to compare planners on the same inputs. The
+     * digest then only matches if the planner finds the same routes.
+     */
+    public static Result replay(Path recording, String plannerType) throws IOException {
+        return replay(recording, plannerType, null);
+    }
+
+    /**
+     * Same as {@link #replay(Path, String)}, handing the state digest after every tick to {@code tickDigests}, e.g.
+     * to find the first tick a replay diverges at.
+     */
+    static Result replay(Path recording, String plannerType, LongConsumer tickDigests) throws IOException {
+        try (RecordingFile.Reader in = RecordingFile.open(recording)) {
+            String planner = plannerType == null ? in.getPlannerType() : plannerType;
+            PathCalculator.createPlanner(planner); // fail fast on an unknown planner type
+            ThreadLocal<PathPlanner> planners = ThreadLocal.withInitial(() -> PathCalculator.createPlanner(planner));
+            SimulationClock clock = SimulationClock.manual(SimulationClock.Mode.REALTIME);
+            MapServiceImpl mapService = new MapServiceImpl();
+            // The trajectory bound does not change the simulation, only what the history endpoint can page through
+            // Deterministic ticks advance the drones in fleet order, so no tick pool is needed
+            PathServiceImpl pathService = new PathServiceImpl(planners, null, in.getMaxDrones(), in.getPathCacheCells(),
+                    in.getReservationWindow(), in.getClusterSize(), 0, null, clock, new SimulationMetrics(new SimpleMeterRegistry()));
+            pathService.setMapService(mapService);
+            pathService.setDeterministicTicks(true);
+
+            long start = System.nanoTime();
+            long events = 0;
+            long ticks = 0;
+            Long recordedDigest = null;
+            for (int type = in.next(); type != RecordingFile.EOF; type = in.next()) {
+                if (type == RecordingFile.TICKS) {
+                    for (long i = 0; i < in.getTicks(); i++) {
+                        runTick(pathService);
+                        if (tickDigests != null) {
+                            tickDigests.accept(pathService.stateDigest());
+                        }
+                    }
+                    ticks += in.getTicks();
+                    continue;
+                }
+                events++;
+                try {
+                    switch (type) {
+                        case RecordingFile.GRID -> {
+                            mapService.init(in.getGrid());
+                            pathService.init(in.getGrid());
+                        }
+                        case RecordingFile.RESET -> {
+                            pathService.reset();
+                            mapService.reset();
+                        }
+                        case RecordingFile.ADD_DRONE -> pathService.addDrone(in.getDroneName(), in.getPosition());
+                        case RecordingFile.POSITION -> pathService.recordDronePosition(in.getDroneName(), in.getPosition());
+                        case RecordingFile.POSITIONS -> pathService.recordDronePositions(in.getReports());
+                        case RecordingFile.RESTORE -> restore(pathService, in.getCheckpoint());
+                        case RecordingFile.MODE -> clock.configure(in.getMode(), 1, 1);
+                        case RecordingFile.END -> recordedDigest = in.getDigest();
+                        default -> throw new IllegalStateException("Unexpected record type " + type);
+                    }
+                } catch (RuntimeException e) {
+                    // The recorded session failed the same request and went on
+                    LOG.debug("Recorded input {} failed in the replay as well", type, e);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (in.isTruncated()) {
+                LOG.warn("Recording {} ends inside a record; replayed up to the last complete one", recording);
+            }
+            return new Result(events, ticks, elapsed, pathService.stateDigest(), recordedDigest);
+        }
+    }
+
+    // Ticks of the recorded session caught their own failures, see SimulationClock
+    private static void runTick(PathServiceImpl pathService) {
+        try {
+            pathService.run();
+        } catch (RuntimeException e) {
+            LOG.error("Simulation tick failed", e);
+        }
+    }
+
+    private static void restore(PathServiceImpl pathService, ByteBuffer checkpoint) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("replay", ".fccp");
+            try (OutputStream out = Files.newOutputStream(file)) {
+                Channels.newChannel(out).write(checkpoint);
+            }
+            pathService.restoreCheckpoint(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to restore the recorded checkpoint", e);
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete {}", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Command line replay: {@code SimulationReplay <recording.fcrec> [planner]}. Exits with 1 if the final state
+     * differs from the recorded one.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: SimulationReplay <recording" + RecordingFile.EXTENSION + "> [planner]");
+            System.exit(2);
+        }
+        Result result = replay(Path.of(args[0]), args.length > 1 ? args[1] : null);
+        System.out.printf("%d inputs, %d ticks in %d ms (%.1f ticks/s), digest %016x%n", result.getEvents(),
+                result.getTicks(), result.getElapsedNanos() / 1_000_000, result.getTicksPerSecond(), result.getDigest());
+        if (result.getRecordedDigest() == null) {
+            System.out.println("The recording has no final digest; it was not finished");
+        } else if (!result.matches()) {
+            System.out.printf("Final state differs from the recorded one (%016x)%n", result.getRecordedDigest());
+            System.exit(1);
+        } else {
+            System.out.println("Final state matches the recording");
+        }
+    }
+
+    /**
+     * Outcome of a replay.
+     */
+    public static final class Result {
+        private final long events;
+        private final long ticks;
+        private final long elapsedNanos;
+        private final long digest;
+        private final Long recordedDigest;
+
+        private Result(long events, long ticks, long elapsedNanos, long digest, Long recordedDigest) {
+            this.events = events;
+            this.ticks = ticks;
+            this.elapsedNanos = elapsedNanos;
+            this.digest = digest;
+            this.recordedDigest = recordedDigest;
+        }
+
+        /** Inputs applied, not counting the ticks. */
+        public long getEvents() {
+            return events;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getTicksPerSecond() {
+            return elapsedNanos <= 0 ? 0 : ticks * 1e9 / elapsedNanos;
+        }
+
+        /** State digest after the replay. */
+        public long getDigest() {
+            return digest;
+        }
+
+        /** Digest recorded when the recording was finished, or null if it was cut short. */
+        public Long getRecordedDigest() {
+            return recordedDigest;
+        }
+
+        public boolean matches() {
+            return recordedDigest != null && recordedDigest == digest;
+        }
+    }
+}
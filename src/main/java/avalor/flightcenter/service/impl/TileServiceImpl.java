@@ -0,0 +1,280 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.domain.ColorDelta;
+import avalor.flightcenter.domain.ColorSnapshot;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.service.MapService;
+import avalor.flightcenter.service.TileService;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tile renderer with an LRU cache of encoded PNGs.
+ * Value tiles only depend on the grid and stay cached until another map is loaded; color tiles are evicted
+ * for every zoom level as soon as a published color delta touches a cell they cover.
+ * <p>
+ * On zoomed-out levels a tile pixel covers a block of cells: the value is sampled from the block's top-left cell,
+ * while the color is the highest palette index found in the block (sampled on a 16x16 lattice for large blocks),
+ * so drone trails stay visible.
+ * Instances are created by the session registry, one per session.
+ */
+public class TileServiceImpl implements TileService {
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TILE_SIZE);
+    // Colors of the lowest and highest cell values
+    private static final int LOW_VALUE_RGB = 0xf0f0f0;
+    private static final int HIGH_VALUE_RGB = 0x2166ac;
+    private static final int BLOCK_SAMPLES = 16;
+
+    private static final int LAYER_VALUES = 0;
+    private static final int LAYER_COLORS = 1;
+    private static final int LAYER_BOTH = 2;
+
+    private final MapService mapService;
+    private final Map<Long, byte[]> tileCache;
+
+    // Grid the cache belongs to
+    private NavigationGrid navigationGrid = null;
+    private int maxZoom = -1;
+    private int minValue;
+    private int maxValue;
+    // Bumped on every invalidation, so a tile rendered from older colors is not cached
+    private long generation = 0;
+
+    public TileServiceImpl(MapService mapService, int tileCacheSize) {
+        this.mapService = mapService;
+        this.tileCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > tileCacheSize;
+            }
+        };
+        mapService.addChangeListener(this::invalidate);
+    }
+
+    @Override
+    public synchronized int getMaxZoom() {
+        syncGrid(mapService.getNavigationGrid());
+        return maxZoom;
+    }
+
+    @Override
+    public byte[] getTile(int zoom, int tileX, int tileY, String layer) {
+        int layerId = parseLayer(layer);
+        NavigationGrid grid = mapService.getNavigationGrid();
+        long key;
+        long startGeneration;
+        int shift;
+        int low;
+        int high;
+        synchronized (this) {
+            syncGrid(grid);
+            if (grid == null || zoom < 0 || zoom > maxZoom || tileX < 0 || tileY < 0) {
+                return null;
+            }
+            shift = maxZoom - zoom;
+            if (((long) tileX << (TILE_SHIFT + shift)) >= grid.getWidth()
+                    || ((long) tileY << (TILE_SHIFT + shift)) >= grid.getHeight()) {
+                return null;
+            }
+            key = key(layerId, zoom, tileX, tileY);
+            byte[] cached = tileCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            startGeneration = generation;
+            low = minValue;
+            high = maxValue;
+        }
+
+        ColorSnapshot colors = layerId == LAYER_VALUES ? null : mapService.getColorSnapshot();
+        if (colors != null && (colors.getWidth() != grid.getWidth() || colors.getHeight() != grid.getHeight())) {
+            colors = null;
+        }
+        byte[] png = render(grid, colors, layerId != LAYER_COLORS, shift, tileX, tileY, low, high);
+
+        synchronized (this) {
+            if (navigationGrid == grid && (generation == startGeneration || layerId == LAYER_VALUES)) {
+                tileCache.put(key, png);
+            }
+        }
+        return png;
+    }
+
+    private byte[] render(NavigationGrid grid, ColorSnapshot colors, boolean drawValues, int shift,
+                          int tileX, int tileY, int low, int high) {
+        int scale = 1 << shift;
+        int x0 = tileX << (TILE_SHIFT + shift);
+        int y0 = tileY << (TILE_SHIFT + shift);
+        // Edge tiles are cropped to the map
+        int pixelsX = Math.min(TILE_SIZE, (grid.getWidth() - x0 + scale - 1) >> shift);
+        int pixelsY = Math.min(TILE_SIZE, (grid.getHeight() - y0 + scale - 1) >> shift);
+        int[] paletteRgb = colors == null ? null : paletteRgb(colors.getPalette());
+        int[] pixels = new int[pixelsX * pixelsY];
+        for (int py = 0; py < pixelsY; py++) {
+            int cellY = y0 + (py << shift);
+            for (int px = 0; px < pixelsX; px++) {
+                int cellX = x0 + (px << shift);
+                int rgb = drawValues ? valueRgb(grid.getValue(grid.index(cellX, cellY)), low, high) : LOW_VALUE_RGB;
+                if (colors != null) {
+                    int color = blockColor(colors.getColors(), grid, cellX, cellY, scale);
+                    if (color != 0) {
+                        rgb = paletteRgb[color];
+                    }
+                }
+                pixels[py * pixelsX + px] = rgb;
+            }
+        }
+        BufferedImage image = new BufferedImage(pixelsX, pixelsY, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, pixelsX, pixelsY, pixels, 0, pixelsX);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Highest palette index in the block; index 0 is the background
+    private static int blockColor(byte[] colors, NavigationGrid grid, int x0, int y0, int scale) {
+        int step = Math.max(1, scale / BLOCK_SAMPLES);
+        int x1 = Math.min(grid.getWidth(), x0 + scale);
+        int y1 = Math.min(grid.getHeight(), y0 + scale);
+        int best = 0;
+        for (int y = y0; y < y1; y += step) {
+            int row = y * grid.getWidth();
+            for (int x = x0; x < x1; x += step) {
+                int color = colors[row + x];
+                if (color > best) {
+                    best = color;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int valueRgb(int value, int low, int high) {
+        if (high <= low) {
+            return LOW_VALUE_RGB;
+        }
+        double t = ((double) value - low) / ((double) high - low);
+        int r = lerp(LOW_VALUE_RGB >> 16, HIGH_VALUE_RGB >> 16, t);
+        int g = lerp((LOW_VALUE_RGB >> 8) & 0xff, (HIGH_VALUE_RGB >> 8) & 0xff, t);
+        int b = lerp(LOW_VALUE_RGB & 0xff, HIGH_VALUE_RGB & 0xff, t);
+        return r << 16 | g << 8 | b;
+    }
+
+    private static int lerp(int from, int to, double t) {
+        return (int) Math.round(from + (to - from) * t);
+    }
+
+    private static int[] paletteRgb(String[] palette) {
+        int[] rgb = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            rgb[i] = Integer.parseInt(palette[i].substring(1), 16);
+        }
+        return rgb;
+    }
+
+    /**
+     * Evicts the color tiles covering the changed cells, on every zoom level.
+     * Runs on the simulation thread when a delta is published.
+     */
+    private void invalidate(ColorDelta delta) {
+        NavigationGrid grid = mapService.getNavigationGrid();
+        synchronized (this) {
+            generation++;
+            if (grid != navigationGrid || delta.isResync()) {
+                // Keep the value tiles of an unchanged map
+                tileCache.keySet().removeIf(key -> layerOf(key) != LAYER_VALUES);
+                syncGrid(grid);
+                return;
+            }
+            if (tileCache.isEmpty() || maxZoom < 0) {
+                return;
+            }
+            // Distinct tiles of the deepest level, then walk up the levels merging tiles into their parents
+            int[] cells = delta.getCells();
+            long[] tiles = new long[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                long tileX = navigationGrid.xOf(cells[i]) >> TILE_SHIFT;
+                long tileY = navigationGrid.yOf(cells[i]) >> TILE_SHIFT;
+                tiles[i] = tileX << 32 | tileY;
+            }
+            int count = tiles.length;
+            for (int zoom = maxZoom; zoom >= 0 && count > 0; zoom--) {
+                Arrays.sort(tiles, 0, count);
+                int unique = 0;
+                for (int i = 0; i < count; i++) {
+                    if (i == 0 || tiles[i] != tiles[i - 1]) {
+                        tiles[unique++] = tiles[i];
+                    }
+                }
+                count = unique;
+                for (int i = 0; i < count; i++) {
+                    int tileX = (int) (tiles[i] >>> 32);
+                    int tileY = (int) tiles[i];
+                    tileCache.remove(key(LAYER_COLORS, zoom, tileX, tileY));
+                    tileCache.remove(key(LAYER_BOTH, zoom, tileX, tileY));
+                    tiles[i] = (long) (tileX >> 1) << 32 | (tileY >> 1);
+                }
+            }
+        }
+    }
+
+    // Resets the cache when another map has been loaded
+    private void syncGrid(NavigationGrid grid) {
+        if (grid == navigationGrid) {
+            return;
+        }
+        navigationGrid = grid;
+        tileCache.clear();
+        generation++;
+        if (grid == null) {
+            maxZoom = -1;
+            return;
+        }
+        int zoom = 0;
+        while (((long) TILE_SIZE << zoom) < Math.max(grid.getWidth(), grid.getHeight())) {
+            zoom++;
+        }
+        maxZoom = zoom;
+        int low = Integer.MAX_VALUE;
+        int high = Integer.MIN_VALUE;
+        for (int i = 0; i < grid.size(); i++) {
+            int value = grid.getValue(i);
+            if (value < low) low = value;
+            if (value > high) high = value;
+        }
+        minValue = low;
+        maxValue = high;
+    }
+
+    private static int parseLayer(String layer) {
+        if (layer == null || "both".equalsIgnoreCase(layer)) {
+            return LAYER_BOTH;
+        }
+        if ("values".equalsIgnoreCase(layer)) {
+            return LAYER_VALUES;
+        }
+        if ("colors".equalsIgnoreCase(layer)) {
+            return LAYER_COLORS;
+        }
+        throw new IllegalArgumentException("Unknown tile layer: " + layer);
+    }
+
+    private static long key(int layer, int zoom, int tileX, int tileY) {
+        return (long) layer << 60 | (long) zoom << 54 | (long) tileX << 27 | tileY;
+    }
+
+    private static int layerOf(long key) {
+        return (int) (key >>> 60);
+    }
+}
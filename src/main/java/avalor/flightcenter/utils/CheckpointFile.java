@@ -0,0 +1,568 @@
+package avalor.flightcenter.utils;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary checkpoint of a whole simulation session: grid values and decay, visited cells, colors and the fleet.
+ * Checkpoints are loaded through {@link FileChannel#map}; the restored grid reads its values straight from the
+ * mapping, like a {@link GridFile}.
+ * <p>
+ * Layout, all fields little-endian:
+ * <pre>
+ * offset size
+ *   0     4   magic "FCCP"
+ *   4     2   format version (2)
+ *   6     2   reserved, 0
+ *   8     4   width (columns)
+ *  12     4   height (rows)
+ *  16     4   decay passes done
+ *  20     4   decay pass of the last decay reset
+ *  24     4   visited cell count
+ *  28     4   next drone id
+ *  32     4   drone count
+ *  36     4   decay tick entries
+ *  40     4   decay tick overrides
+ *  44     4   CRC32C of everything after the header
+ *  48    16   reserved, 0
+ *  64         width * height int32 values, row-major
+ *             width * height color palette indices, one byte each
+ *             (width * height + 63) / 64 int64 words of visited cells
+ *             decay tick entries: int32 cell, int32 decay tick
+ *             decay tick overrides: int32 cell, int32 decay tick; the first override of a cell wins
+ *             drones, one record each:
+ *               int32 id, int16 name length, UTF-8 name,
+ *               position (int32 x, y, value, decay) of the drone, int8 1 if a target position follows,
+ *               int64 path version, int32 pass the drone took its cell at (-1 if it does not hold it),
+ *               int32 route length, route positions, int64 history length, int64 travelled path value,
+ *               int32 count of the most recent history positions kept, history positions
+ * </pre>
+ * Only the decay ticks that still matter are stored: cells whose decay is capped or was cleared by the last reset
+ * read the same with a decay tick of 0.
+ */
+public final class CheckpointFile {
+    public static final String EXTENSION = ".fccp";
+    public static final int HEADER_SIZE = 64;
+    public static final short VERSION = 2;
+    private static final int MAGIC = 'F' | 'C' << 8 | 'C' << 16 | 'P' << 24;
+    private static final int WRITE_CHUNK = 1 << 20;
+    private static final int POSITION_SIZE = 4 * Integer.BYTES;
+
+    private final int width;
+    private final int height;
+    private final int tick;
+    private final int resetTick;
+    private final int visitedCount;
+    private final int nextDroneId;
+    private final IntBuffer values;
+    private final ByteBuffer colors;
+    private final LongBuffer visited;
+    private final IntBuffer decayTicks;
+    private final IntBuffer decayOverrides;
+    private final List<DroneRecord> drones;
+    private final ByteBuffer content;
+
+    private CheckpointFile(ByteBuffer mapped) {
+        content = mapped.asReadOnlyBuffer();
+        width = mapped.getInt(8);
+        height = mapped.getInt(12);
+        tick = mapped.getInt(16);
+        resetTick = mapped.getInt(20);
+        visitedCount = mapped.getInt(24);
+        nextDroneId = mapped.getInt(28);
+        int droneCount = mapped.getInt(32);
+        int decayCount = mapped.getInt(36);
+        int overrideCount = mapped.getInt(40);
+        long cells = (long) width * height;
+        if (width <= 0 || height <= 0 || cells > Integer.MAX_VALUE - 8 || droneCount < 0 || decayCount < 0
+                || overrideCount < 0) {
+            throw new IllegalArgumentException("Invalid checkpoint header.");
+        }
+        int size = (int) cells;
+        int words = (size + 63) >>> 6;
+        long offset = HEADER_SIZE;
+        values = slice(mapped, offset, (long) size * Integer.BYTES).asIntBuffer();
+        offset += (long) size * Integer.BYTES;
+        colors = slice(mapped, offset, size).asReadOnlyBuffer();
+        offset += size;
+        visited = slice(mapped, offset, (long) words * Long.BYTES).asLongBuffer();
+        offset += (long) words * Long.BYTES;
+        decayTicks = slice(mapped, offset, 2L * decayCount * Integer.BYTES).asIntBuffer();
+        offset += 2L * decayCount * Integer.BYTES;
+        decayOverrides = slice(mapped, offset, 2L * overrideCount * Integer.BYTES).asIntBuffer();
+        offset += 2L * overrideCount * Integer.BYTES;
+
+        ByteBuffer records = slice(mapped, offset, mapped.capacity() - offset);
+        drones = new ArrayList<>(droneCount);
+        try {
+            for (int i = 0; i < droneCount; i++) {
+                drones.add(readDrone(records));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated checkpoint drone records.");
+        }
+        if (records.hasRemaining()) {
+            throw new IllegalArgumentException("Checkpoint file size does not match its contents.");
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getVisitedCount() {
+        return visitedCount;
+    }
+
+    public int getNextDroneId() {
+        return nextDroneId;
+    }
+
+    public List<DroneRecord> getDrones() {
+        return drones;
+    }
+
+    /**
+     * The whole checkpoint file as loaded, e.g. to copy it into a session recording.
+     */
+    public ByteBuffer getContent() {
+        return content.duplicate();
+    }
+
+    /**
+     * Color palette indices of every cell, read from the mapping.
+     */
+    public ByteBuffer getColors() {
+        return colors.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public BitSet getVisitedCells() {
+        return BitSet.valueOf(visited.duplicate());
+    }
+
+    /**
+     * Creates the grid of the checkpoint: values are read from the mapping, decay and the cells held by the drones
+     * are restored.
+     */
+    public NavigationGrid createGrid() {
+        NavigationGrid grid = new NavigationGrid(width, height, values.duplicate());
+        grid.restoreTicks(tick, resetTick);
+        for (int i = 0; i < decayTicks.limit(); i += 2) {
+            grid.restoreZeroDecayTick(checkedCell(decayTicks.get(i)), decayTicks.get(i + 1));
+        }
+        // Backwards, so the first override of a cell is applied last
+        for (int i = decayOverrides.limit() - 2; i >= 0; i -= 2) {
+            grid.restoreZeroDecayTick(checkedCell(decayOverrides.get(i)), decayOverrides.get(i + 1));
+        }
+        for (DroneRecord drone : drones) {
+            Position position = drone.getCurrentPosition();
+            if (drone.getOccupiedSince() >= 0 && grid.isInBounds(position.getPosX(), position.getPosY())) {
+                grid.restoreOccupant(grid.index(position.getPosX(), position.getPosY()), drone.getId(), drone.getOccupiedSince());
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Maps a checkpoint file read-only and checks it against its CRC32C. The returned checkpoint (and the grid it
+     * creates) reads from the mapping, which stays valid after the file is closed, replaced or deleted (on POSIX
+     * systems).
+     *
+     * @throws IllegalArgumentException if the file is not a valid checkpoint
+     */
+    public static CheckpointFile load(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The provided file is not a checkpoint file.");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("The provided file is not a checkpoint file.");
+        }
+        short version = mapped.getShort(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(mapped.slice(HEADER_SIZE, mapped.capacity() - HEADER_SIZE));
+        if ((int) crc.getValue() != mapped.getInt(44)) {
+            throw new IllegalArgumentException("Checkpoint checksum mismatch.");
+        }
+        return new CheckpointFile(mapped);
+    }
+
+    /**
+     * Starts writing a checkpoint. The sections are written in file order; the checkpoint replaces the file
+     * atomically when it is finished, and is dropped if the writer is closed before.
+     */
+    public static Writer create(Path file, int width, int height) throws IOException {
+        return new Writer(file, width, height);
+    }
+
+    private int checkedCell(int cell) {
+        if (cell < 0 || cell >= values.limit()) {
+            throw new IllegalArgumentException("Invalid cell " + cell + " in checkpoint.");
+        }
+        return cell;
+    }
+
+    private static ByteBuffer slice(ByteBuffer mapped, long offset, long length) {
+        if (offset + length > mapped.capacity()) {
+            throw new IllegalArgumentException("Checkpoint file size does not match its dimensions.");
+        }
+        return mapped.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static DroneRecord readDrone(ByteBuffer in) {
+        int id = in.getInt();
+        byte[] name = new byte[in.getShort() & 0xFFFF];
+        in.get(name);
+        Position current = readPosition(in);
+        Position target = in.get() != 0 ? readPosition(in) : null;
+        long pathVersion = in.getLong();
+        int occupiedSince = in.getInt();
+        List<Position> route = readPositions(in);
+        long historySize = in.getLong();
+        long travelledPathValue = in.getLong();
+        List<Position> history = readPositions(in);
+        if (historySize < history.size()) {
+            throw new IllegalArgumentException("Invalid history length in checkpoint.");
+        }
+        return new DroneRecord(id, new String(name, StandardCharsets.UTF_8), current, target, route, pathVersion,
+                occupiedSince, historySize, travelledPathValue, history);
+    }
+
+    private static Position readPosition(ByteBuffer in) {
+        return new Position(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+    }
+
+    private static List<Position> readPositions(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || (long) count * POSITION_SIZE > in.remaining()) {
+            throw new IllegalArgumentException("Invalid position count in checkpoint.");
+        }
+        List<Position> positions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            positions.add(readPosition(in));
+        }
+        return positions;
+    }
+
+    /**
+     * Drone state stored in a checkpoint.
+     */
+    public static final class DroneRecord {
+        private final int id;
+        private final String name;
+        private final Position currentPosition;
+        private final Position targetPosition;
+        private final List<Position> targetPath;
+        private final long pathVersion;
+        private final int occupiedSince;
+        private final long historySize;
+        private final long travelledPathValue;
+        private final List<Position> history;
+
+        private DroneRecord(int id, String name, Position currentPosition, Position targetPosition,
+                            List<Position> targetPath, long pathVersion, int occupiedSince, long historySize,
+                            long travelledPathValue, List<Position> history) {
+            this.id = id;
+            this.name = name;
+            this.currentPosition = currentPosition;
+            this.targetPosition = targetPosition;
+            this.targetPath = targetPath;
+            this.pathVersion = pathVersion;
+            this.occupiedSince = occupiedSince;
+            this.historySize = historySize;
+            this.travelledPathValue = travelledPathValue;
+            this.history = history;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Position getCurrentPosition() {
+            return currentPosition;
+        }
+
+        public Position getTargetPosition() {
+            return targetPosition;
+        }
+
+        public List<Position> getTargetPath() {
+            return targetPath;
+        }
+
+        public long getPathVersion() {
+            return pathVersion;
+        }
+
+        /**
+         * Decay pass at which the drone took its cell, or -1 if it does not hold it.
+         */
+        public int getOccupiedSince() {
+            return occupiedSince;
+        }
+
+        public long getHistorySize() {
+            return historySize;
+        }
+
+        public long getTravelledPathValue() {
+            return travelledPathValue;
+        }
+
+        /**
+         * Most recent positions of the history, the ones the drone kept in memory.
+         */
+        public List<Position> getHistory() {
+            return history;
+        }
+    }
+
+    /**
+     * Streams a checkpoint to a temporary file next to the target. Sections must be written in file order:
+     * values, colors, visited cells, decay ticks, decay overrides, then the drones.
+     */
+    public static final class Writer implements Closeable {
+        private static final int VALUES = 0;
+        private static final int COLORS = 1;
+        private static final int VISITED = 2;
+        private static final int DECAY = 3;
+        private static final int OVERRIDES = 4;
+        private static final int DRONES = 5;
+
+        private final Path file;
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private final ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        private final int width;
+        private final int height;
+        private int section = VALUES;
+        private int tick;
+        private int resetTick;
+        private int visitedCount;
+        private int decayCount;
+        private int overrideCount;
+        private int droneCount;
+        private boolean finished = false;
+
+        private Writer(Path file, int width, int height) throws IOException {
+            this.file = file;
+            this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.width = width;
+            this.height = height;
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+        }
+
+        public void writeValues(NavigationGrid grid) throws IOException {
+            enter(VALUES);
+            int size = grid.size();
+            for (int i = 0; i < size; i++) {
+                ensure(Integer.BYTES);
+                chunk.putInt(grid.getValue(i));
+            }
+        }
+
+        public void writeColors(byte[] colors) throws IOException {
+            enter(COLORS);
+            for (int offset = 0; offset < colors.length; ) {
+                ensure(1);
+                int length = Math.min(chunk.remaining(), colors.length - offset);
+                chunk.put(colors, offset, length);
+                offset += length;
+            }
+        }
+
+        public void writeVisited(BitSet visited, int count) throws IOException {
+            enter(VISITED);
+            visitedCount = count;
+            long[] words = visited.toLongArray();
+            int wordCount = (width * height + 63) >>> 6;
+            for (int i = 0; i < wordCount; i++) {
+                ensure(Long.BYTES);
+                chunk.putLong(i < words.length ? words[i] : 0);
+            }
+        }
+
+        /**
+         * Writes the decay ticks that still matter at the given decay pass. The grid may keep running meanwhile,
+         * as long as the ticks it overwrites are recorded ({@link NavigationGrid#startDecayLog}) and written as
+         * overrides.
+         */
+        public void writeDecay(NavigationGrid grid, int tick, int resetTick) throws IOException {
+            enter(DECAY);
+            this.tick = tick;
+            this.resetTick = resetTick;
+            int size = grid.size();
+            for (int i = 0; i < size; i++) {
+                int decayTick = grid.getZeroDecayTick(i);
+                if (decayTick > resetTick && tick - decayTick < NavigationGrid.MAX_DECAY_VAL) {
+                    ensure(2 * Integer.BYTES);
+                    chunk.putInt(i).putInt(decayTick);
+                    decayCount++;
+                }
+            }
+        }
+
+        /**
+         * Writes cell and decay tick pairs that replace the ones written by {@link #writeDecay}; the first pair
+         * of a cell wins.
+         */
+        public void writeDecayOverrides(int[] pairs) throws IOException {
+            enter(OVERRIDES);
+            for (int i = 0; i + 1 < pairs.length; i += 2) {
+                ensure(2 * Integer.BYTES);
+                chunk.putInt(pairs[i]).putInt(pairs[i + 1]);
+                overrideCount++;
+            }
+        }
+
+        public void writeDrone(int id, String name, Position currentPosition, Position targetPosition,
+                               List<Position> targetPath, long pathVersion, int occupiedSince, long historySize,
+                               long travelledPathValue, List<Position> history) throws IOException {
+            enter(DRONES);
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Drone name too long: " + name.substring(0, 32) + "...");
+            }
+            ensure(Integer.BYTES + Short.BYTES);
+            chunk.putInt(id).putShort((short) nameBytes.length);
+            for (int offset = 0; offset < nameBytes.length; ) {
+                ensure(1);
+                int length = Math.min(chunk.remaining(), nameBytes.length - offset);
+                chunk.put(nameBytes, offset, length);
+                offset += length;
+            }
+            writePosition(currentPosition);
+            ensure(1);
+            chunk.put((byte) (targetPosition != null ? 1 : 0));
+            if (targetPosition != null) {
+                writePosition(targetPosition);
+            }
+            ensure(Long.BYTES + Integer.BYTES);
+            chunk.putLong(pathVersion).putInt(occupiedSince);
+            writePositions(targetPath);
+            ensure(2 * Long.BYTES);
+            chunk.putLong(historySize).putLong(travelledPathValue);
+            writePositions(history);
+            droneCount++;
+        }
+
+        /**
+         * Completes the checkpoint and moves it over the target file.
+         *
+         * @return the size of the checkpoint in bytes
+         */
+        public long finish(int nextDroneId) throws IOException {
+            enter(DRONES);
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort((short) 0)
+                    .putInt(width)
+                    .putInt(height)
+                    .putInt(tick)
+                    .putInt(resetTick)
+                    .putInt(visitedCount)
+                    .putInt(nextDroneId)
+                    .putInt(droneCount)
+                    .putInt(decayCount)
+                    .putInt(overrideCount)
+                    .putInt((int) crc.getValue())
+                    .position(HEADER_SIZE)
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            long size = channel.size();
+            channel.force(true);
+            channel.close();
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            channel.close();
+            Files.deleteIfExists(tempFile);
+        }
+
+        private void writePositions(List<Position> positions) throws IOException {
+            int count = positions == null ? 0 : positions.size();
+            ensure(Integer.BYTES);
+            chunk.putInt(count);
+            for (int i = 0; i < count; i++) {
+                writePosition(positions.get(i));
+            }
+        }
+
+        private void writePosition(Position position) throws IOException {
+            ensure(POSITION_SIZE);
+            chunk.putInt(position.getPosX()).putInt(position.getPosY()).putInt(position.getValue()).putInt(position.getDecay());
+        }
+
+        private void enter(int next) {
+            // Every section is written, possibly empty, so the reader can find the next one
+            if (finished || next < section || next > section + 1) {
+                throw new IllegalStateException("Checkpoint sections must be written in order");
+            }
+            section = next;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (chunk.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            chunk.flip();
+            crc.update(chunk.duplicate());
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+            chunk.clear();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package avalor.flightcenter.utils;
+
+import avalor.flightcenter.domain.NavigationGrid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary navigation map format, loaded through {@link FileChannel#map} so the grid values stay
+ * in the page cache and no parse step is needed.
+ * <p>
+ * Layout, all fields little-endian:
+ * <pre>
+ * offset size
+ *   0     4   magic "FCGD"
+ *   4     2   format version (1)
+ *   6     1   value type (1 = int32)
+ *   7     1   reserved, 0
+ *   8     4   width (columns)
+ *  12     4   height (rows)
+ *  16     4   tile size, 0 for plain row-major values
+ *  20     4   min value
+ *  24     4   max value
+ *  28     4   CRC32C of the values
+ *  32         width * height values, row-major
+ * </pre>
+ * Only untiled files are written and accepted for now; the tile size field is reserved so a tiled
+ * layout can be added without changing the header.
+ */
+public final class GridFile {
+    public static final String EXTENSION = ".fcgrid";
+    public static final int HEADER_SIZE = 32;
+    public static final short VERSION = 1;
+    public static final byte VALUE_TYPE_INT32 = 1;
+    private static final int MAGIC = 'F' | 'C' << 8 | 'G' << 16 | 'D' << 24;
+    private static final int WRITE_CHUNK = 1 << 20;
+
+    private final NavigationGrid grid;
+    private final int minValue;
+    private final int maxValue;
+
+    private GridFile(NavigationGrid grid, int minValue, int maxValue) {
+        this.grid = grid;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    public NavigationGrid getGrid() {
+        return grid;
+    }
+
+    public int getMinValue() {
+        return minValue;
+    }
+
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Maps a binary map file read-only. The returned grid reads its values straight from the mapping,
+     * which stays valid after the file is closed (or deleted, on POSIX systems).
+     *
+     * @param verifyChecksum whether to check the values against the stored CRC32C (one sequential pass)
+     * @throws IllegalArgumentException if the file is not a valid map file
+     */
+    public static GridFile load(Path file, boolean verifyChecksum) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IllegalArgumentException("The provided file is not a binary map file.");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("The provided file is not a binary map file.");
+        }
+        short version = mapped.getShort(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported map file version " + version);
+        }
+        byte valueType = mapped.get(6);
+        if (valueType != VALUE_TYPE_INT32) {
+            throw new IllegalArgumentException("Unsupported map value type " + valueType);
+        }
+        int width = mapped.getInt(8);
+        int height = mapped.getInt(12);
+        int tileSize = mapped.getInt(16);
+        if (tileSize != 0) {
+            throw new IllegalArgumentException("Tiled map files are not supported.");
+        }
+        long cells = (long) width * height;
+        if (width <= 0 || height <= 0 || cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Invalid map dimensions " + height + "x" + width);
+        }
+        long payloadSize = cells * Integer.BYTES;
+        if (mapped.capacity() != HEADER_SIZE + payloadSize) {
+            throw new IllegalArgumentException("Map file size does not match its dimensions " + height + "x" + width);
+        }
+
+        ByteBuffer payload = mapped.slice(HEADER_SIZE, (int) payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (verifyChecksum) {
+            CRC32C crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != mapped.getInt(28)) {
+                throw new IllegalArgumentException("Map file checksum mismatch.");
+            }
+        }
+        IntBuffer values = payload.asIntBuffer();
+        return new GridFile(new NavigationGrid(width, height, values), mapped.getInt(20), mapped.getInt(24));
+    }
+
+    /**
+     * Writes the grid values as an untiled binary map file, replacing any existing file.
+     */
+    public static void write(NavigationGrid grid, int minValue, int maxValue, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C crc = new CRC32C();
+            ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_SIZE);
+            int size = grid.size();
+            for (int i = 0; i < size; i++) {
+                if (!chunk.hasRemaining()) {
+                    flush(channel, chunk, crc);
+                }
+                chunk.putInt(grid.getValue(i));
+            }
+            flush(channel, chunk, crc);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC)
+                    .putShort(VERSION)
+                    .put(VALUE_TYPE_INT32)
+                    .put((byte) 0)
+                    .putInt(grid.getWidth())
+                    .putInt(grid.getHeight())
+                    .putInt(0)
+                    .putInt(minValue)
+                    .putInt(maxValue)
+                    .putInt((int) crc.getValue())
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * Converts a whitespace-separated text matrix into a binary map file.
+     *
+     * @throws IllegalArgumentException if the text is not a valid matrix
+     */
+    public static void convert(Path textFile, Path binaryFile) throws IOException {
+        MatrixParser.ParsedMatrix matrix;
+        try (InputStream in = Files.newInputStream(textFile)) {
+            matrix = MatrixParser.parse(in, Files.size(textFile));
+        }
+        NavigationGrid grid = new NavigationGrid(matrix.getCols(), matrix.getRows(), matrix.getValues());
+        write(grid, matrix.getMinValue(), matrix.getMaxValue(), binaryFile);
+    }
+
+    /**
+     * Command line converter: {@code GridFile <matrix.txt> <map.fcgrid>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: GridFile <matrix.txt> <map" + EXTENSION + ">");
+            System.exit(2);
+        }
+        convert(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk, CRC32C crc) throws IOException {
+        chunk.flip();
+        crc.update(chunk.duplicate());
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+    }
+}
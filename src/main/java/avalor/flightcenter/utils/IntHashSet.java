@@ -0,0 +1,116 @@
+package avalor.flightcenter.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of non-negative ints (e.g. grid cell indices), without boxing.
+ * Uses linear probing with backward-shift deletion, so no tombstones accumulate. Not thread-safe.
+ */
+public class IntHashSet {
+    private static final int FREE = -1;
+
+    private int[] slots;
+    private int size = 0;
+    private int mask;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        for (int slot = hash(value); ; slot = (slot + 1) & mask) {
+            int current = slots[slot];
+            if (current == FREE) {
+                return false;
+            }
+            if (current == value) {
+                return true;
+            }
+        }
+    }
+
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non-negative values can be stored: " + value);
+        }
+        int slot = hash(value);
+        for (; slots[slot] != FREE; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) {
+                return false;
+            }
+        }
+        slots[slot] = value;
+        if (++size * 2 > slots.length) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+
+    public boolean remove(int value) {
+        // Negative values are never stored, and -1 would match the free slots
+        if (value < 0) {
+            return false;
+        }
+        int slot = hash(value);
+        for (; slots[slot] != value; slot = (slot + 1) & mask) {
+            if (slots[slot] == FREE) {
+                return false;
+            }
+        }
+        // Shift back the following entries of the probe run to close the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; slots[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(slots[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+        }
+        slots[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(slots, FREE);
+            size = 0;
+        }
+    }
+
+    private int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        mask = capacity - 1;
+        size = 0;
+        for (int value : old) {
+            if (value != FREE) {
+                add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package avalor.flightcenter.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative longs to ints, without boxing, e.g. for keys combining a tick and a
+ * cell index. Uses linear probing with backward-shift deletion like {@link IntHashSet}. Not thread-safe.
+ */
+public class LongIntHashMap {
+    private static final long FREE = -1;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+
+    /**
+     * @param missingValue value returned by {@link #get} for keys that are not in the map
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(long key) {
+        // Negative keys are never stored, and -1 would match the free slots
+        if (key < 0) {
+            return missingValue;
+        }
+        for (int slot = hash(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == FREE) {
+                return missingValue;
+            }
+            if (current == key) {
+                return values[slot];
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        // Negative keys are never stored, and -1 would match the free slots
+        if (key < 0) {
+            return false;
+        }
+        for (int slot = hash(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == FREE) {
+                return false;
+            }
+            if (current == key) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value of the key, or the missing value
+     */
+    public int put(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Only non-negative keys can be stored: " + key);
+        }
+        int slot = hash(key);
+        for (; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return the value of the removed key, or the missing value
+     */
+    public int remove(long key) {
+        // Negative keys are never stored, and -1 would match the free slots
+        if (key < 0) {
+            return missingValue;
+        }
+        int slot = hash(key);
+        for (; keys[slot] != key; slot = (slot + 1) & mask) {
+            if (keys[slot] == FREE) {
+                return missingValue;
+            }
+        }
+        int removed = values[slot];
+        // Shift back the following entries of the probe run to close the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = FREE;
+        size--;
+        return removed;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, FREE);
+            size = 0;
+        }
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
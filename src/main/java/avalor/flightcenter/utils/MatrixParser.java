@@ -0,0 +1,171 @@
+package avalor.flightcenter.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for whitespace-separated integer matrices.
+ * Bytes are tokenized straight from the input stream and the ASCII integers are accumulated into a flat,
+ * row-major int array, so no lines, strings or boxed values are created. Min and max are computed in the same pass.
+ * Blank lines are skipped; every other line must hold the same number of values.
+ */
+public final class MatrixParser {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    // Prevent instantiation
+    private MatrixParser() {}
+
+    /**
+     * Parsed matrix: dimensions, row-major values and the value range.
+     */
+    public static final class ParsedMatrix {
+        private final int rows;
+        private final int cols;
+        private final int[] values;
+        private final int minValue;
+        private final int maxValue;
+
+        private ParsedMatrix(int rows, int cols, int[] values, int minValue, int maxValue) {
+            this.rows = rows;
+            this.cols = cols;
+            this.values = values;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getCols() {
+            return cols;
+        }
+
+        public int[] getValues() {
+            return values;
+        }
+
+        public int getMinValue() {
+            return minValue;
+        }
+
+        public int getMaxValue() {
+            return maxValue;
+        }
+    }
+
+    /**
+     * Parses the whole stream. The stream is not closed.
+     *
+     * @param sizeHint expected number of bytes, used to presize the value array (0 if unknown)
+     * @throws IllegalArgumentException with the offending line number if the content is not a valid matrix
+     */
+    public static ParsedMatrix parse(InputStream in, long sizeHint) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        // Presize for values of a few digits; the array grows if the guess is too small
+        int[] values = new int[(int) Math.min(Math.max(INITIAL_CAPACITY, sizeHint / 4), Integer.MAX_VALUE - 8)];
+        int count = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        int lineNo = 1;
+        int rowValues = 0;
+        int expectedCols = -1;
+        boolean previousWasCr = false;
+
+        // Current token state
+        byte[] token = new byte[32];
+        int tokenLength = 0;
+        long number = 0;
+        boolean negative = false;
+        boolean validToken = true;
+
+        boolean endOfStream = false;
+        while (!endOfStream) {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                endOfStream = true;
+                read = 0;
+            }
+            // At the end of the stream a virtual newline flushes the last token and row
+            int limit = endOfStream ? read + 1 : read;
+            for (int i = 0; i < limit; i++) {
+                int b = i < read ? buffer[i] : '\n';
+                boolean newline = b == '\n' || b == '\r';
+                if (newline || b == ' ' || b == '\t' || b == 0x0B || b == '\f') {
+                    if (tokenLength > 0) {
+                        if (!validToken || (tokenLength == 1 && (token[0] == '-' || token[0] == '+'))) {
+                            throw new IllegalArgumentException("Invalid number at line " + lineNo + ": '"
+                                    + new String(token, 0, tokenLength, StandardCharsets.UTF_8) + "'");
+                        }
+                        int value = (int) (negative ? -number : number);
+                        if (count == values.length) {
+                            if (count >= Integer.MAX_VALUE - 8) {
+                                throw new IllegalArgumentException("The provided matrix is too large.");
+                            }
+                            values = Arrays.copyOf(values, (int) Math.min(count + ((long) count >> 1), Integer.MAX_VALUE - 8));
+                        }
+                        values[count++] = value;
+                        if (value < min) min = value;
+                        if (value > max) max = value;
+                        rowValues++;
+                        tokenLength = 0;
+                        number = 0;
+                        negative = false;
+                        validToken = true;
+                    }
+                    if (newline) {
+                        // "\r\n" ends a single line
+                        if (b == '\n' && previousWasCr) {
+                            previousWasCr = false;
+                            continue;
+                        }
+                        previousWasCr = b == '\r';
+                        if (rowValues > 0) {
+                            if (expectedCols == -1) {
+                                expectedCols = rowValues;
+                            } else if (rowValues != expectedCols) {
+                                throw new IllegalArgumentException("Inconsistent row length at line " + lineNo + ". Expected " + expectedCols + ", got " + rowValues);
+                            }
+                            rowValues = 0;
+                        }
+                        lineNo++;
+                    } else {
+                        previousWasCr = false;
+                    }
+                    continue;
+                }
+                previousWasCr = false;
+                if (tokenLength == token.length) {
+                    token = Arrays.copyOf(token, tokenLength * 2);
+                }
+                token[tokenLength++] = (byte) b;
+                if (!validToken) {
+                    continue;
+                }
+                if (b >= '0' && b <= '9') {
+                    number = number * 10 + (b - '0');
+                    if (number > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                        validToken = false;
+                    }
+                } else if (tokenLength == 1 && (b == '-' || b == '+')) {
+                    negative = b == '-';
+                } else {
+                    validToken = false;
+                }
+            }
+        }
+
+        if (count == 0) {
+            throw new IllegalArgumentException("The provided file does not contain any numbers.");
+        }
+        int rows = count / expectedCols;
+        if (values.length != count) {
+            values = Arrays.copyOf(values, count);
+        }
+        return new ParsedMatrix(rows, expectedCols, values, min, max);
+    }
+}
@@ -0,0 +1,486 @@
+package avalor.flightcenter.utils;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.PositionReport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary log of every input of a simulation session, in the order the session applied them, with the ticks run
+ * in between. Replaying the log against a session that runs its ticks deterministically gives the same state.
+ * <p>
+ * Layout: a header (magic "FCRL", int16 format version (2), int16 reservation window (0 without cooperative
+ * planning), int32 maximum fleet size, int32 path cache cells, int16 planner name length, the UTF-8 planner name and
+ * int16 cluster size (0 without hierarchical planning); fixed-size fields little-endian), then one record per input,
+ * each a type byte followed by its payload. Numbers in the payloads are unsigned LEB128 varints, zigzag-encoded when
+ * they can be negative.
+ * <pre>
+ * GRID       width, height, width * height cell values
+ * RESET
+ * ADD_DRONE  drone, position
+ * POSITION   drone, position
+ * POSITIONS  count, count times drone and position; applied as one transition
+ * RESTORE    length, checkpoint file content
+ * TICKS      number of ticks run since the previous record
+ * MODE       clock mode ordinal seen by the following ticks
+ * END        int64 digest of the final state (little-endian), ticks run in total
+ * </pre>
+ * Drones are 0 for no name, 1 followed by the length and UTF-8 bytes of a name not seen before, or 2 plus the
+ * number of an earlier name. Positions are a byte 0 for none, or 1 followed by x, y, value and decay.
+ * A log without an END record was cut short, e.g. by a crash; it still replays up to its last record.
+ */
+public final class RecordingFile {
+    public static final String EXTENSION = ".fcrec";
+    public static final short VERSION = 2;
+    public static final int GRID = 1;
+    public static final int RESET = 2;
+    public static final int ADD_DRONE = 3;
+    public static final int POSITION = 4;
+    public static final int POSITIONS = 5;
+    public static final int RESTORE = 6;
+    public static final int TICKS = 7;
+    public static final int MODE = 8;
+    public static final int END = 9;
+    /** Returned by {@link Reader#next()} at the end of the log. */
+    public static final int EOF = -1;
+    private static final int MAGIC = 'F' | 'C' << 8 | 'R' << 16 | 'L' << 24;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private RecordingFile() {
+    }
+
+    /**
+     * Starts a log, replacing the file. The header records the settings a replay needs to plan like the session.
+     */
+    public static Writer create(Path file, String plannerType, int maxDrones, int pathCacheCells,
+                                int reservationWindow, int clusterSize) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return new Writer(Files.newOutputStream(file), plannerType, maxDrones, pathCacheCells, reservationWindow,
+                clusterSize);
+    }
+
+    public static Reader open(Path file) throws IOException {
+        return new Reader(Files.newInputStream(file));
+    }
+
+    /**
+     * Appends records to a log. Runs of ticks are collapsed into one record. Not thread-safe: the session writes
+     * it under its state lock.
+     */
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+        private long pendingTicks = 0;
+        private long ticks = 0;
+        private SimulationClock.Mode mode = null;
+        private boolean finished = false;
+
+        private Writer(OutputStream out, String plannerType, int maxDrones, int pathCacheCells,
+                       int reservationWindow, int clusterSize) throws IOException {
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+            byte[] planner = plannerType.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer header = ByteBuffer.allocate(20 + planner.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) reservationWindow).putInt(maxDrones).putInt(pathCacheCells)
+                    .putShort((short) planner.length).put(planner).putShort((short) clusterSize);
+            this.out.write(header.array());
+        }
+
+        public void grid(NavigationGrid grid) throws IOException {
+            record(GRID);
+            writeVarint(grid.getWidth());
+            writeVarint(grid.getHeight());
+            int size = grid.size();
+            for (int i = 0; i < size; i++) {
+                writeVarint(zigzag(grid.getValue(i)));
+            }
+        }
+
+        public void reset() throws IOException {
+            record(RESET);
+        }
+
+        public void addDrone(String droneName, Position position) throws IOException {
+            record(ADD_DRONE);
+            writeDrone(droneName);
+            writePosition(position);
+        }
+
+        public void position(String droneName, Position position) throws IOException {
+            record(POSITION);
+            writeDrone(droneName);
+            writePosition(position);
+        }
+
+        public void positions(List<PositionReport> reports) throws IOException {
+            record(POSITIONS);
+            writeVarint(reports.size());
+            for (PositionReport report : reports) {
+                writeDrone(report.getDroneName());
+                writePosition(report.getPosition());
+            }
+        }
+
+        /**
+         * Records a restore from the given checkpoint content, so the log does not depend on the checkpoint file.
+         */
+        public void restore(ByteBuffer checkpoint) throws IOException {
+            record(RESTORE);
+            ByteBuffer content = checkpoint.duplicate();
+            writeVarint(content.remaining());
+            byte[] chunk = new byte[Math.min(BUFFER_SIZE, content.remaining())];
+            while (content.hasRemaining()) {
+                int length = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+
+        /**
+         * Counts a tick, run with the given clock mode.
+         */
+        public void tick(SimulationClock.Mode tickMode) throws IOException {
+            if (tickMode != mode) {
+                record(MODE);
+                out.write(tickMode.ordinal());
+                mode = tickMode;
+            }
+            pendingTicks++;
+            ticks++;
+        }
+
+        /**
+         * Writes the buffered records, so they survive a crash of the process.
+         */
+        public void flush() throws IOException {
+            writeTicks();
+            out.flush();
+        }
+
+        /**
+         * Ends the log with a digest of the final state, which a replay must reproduce, and closes it.
+         */
+        public void finish(long digest) throws IOException {
+            record(END);
+            for (int i = 0; i < Long.BYTES; i++) {
+                out.write((int) (digest >>> (8 * i)));
+            }
+            writeVarint(ticks);
+            finished = true;
+            out.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                finished = true;
+                flush();
+                out.close();
+            }
+        }
+
+        private void record(int type) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("The recording is finished");
+            }
+            writeTicks();
+            out.write(type);
+        }
+
+        private void writeTicks() throws IOException {
+            if (pendingTicks > 0) {
+                out.write(TICKS);
+                writeVarint(pendingTicks);
+                pendingTicks = 0;
+            }
+        }
+
+        private void writeDrone(String droneName) throws IOException {
+            if (droneName == null) {
+                writeVarint(0);
+                return;
+            }
+            Integer known = names.get(droneName);
+            if (known != null) {
+                writeVarint(known + 2L);
+                return;
+            }
+            names.put(droneName, names.size());
+            byte[] bytes = droneName.getBytes(StandardCharsets.UTF_8);
+            writeVarint(1);
+            writeVarint(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writePosition(Position position) throws IOException {
+            if (position == null) {
+                out.write(0);
+                return;
+            }
+            out.write(1);
+            writeVarint(zigzag(position.getPosX()));
+            writeVarint(zigzag(position.getPosY()));
+            writeVarint(zigzag(position.getValue()));
+            writeVarint(zigzag(position.getDecay()));
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Reads a log record by record. The payload of the current record is available through the getters matching
+     * its type.
+     */
+    public static final class Reader implements Closeable {
+        private final InputStream in;
+        private final String plannerType;
+        private final int maxDrones;
+        private final int pathCacheCells;
+        private final int reservationWindow;
+        private final int clusterSize;
+        private final List<String> names = new ArrayList<>();
+        private boolean truncated = false;
+        private NavigationGrid grid;
+        private String droneName;
+        private Position position;
+        private List<PositionReport> reports;
+        private ByteBuffer checkpoint;
+        private long ticks;
+        private SimulationClock.Mode mode;
+        private long digest;
+
+        private Reader(InputStream in) throws IOException {
+            this.in = new BufferedInputStream(in, BUFFER_SIZE);
+            ByteBuffer header = ByteBuffer.wrap(readBytes(16)).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IllegalArgumentException("The provided file is not a simulation recording.");
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported recording version " + version);
+            }
+            reservationWindow = header.getShort() & 0xFFFF;
+            maxDrones = header.getInt();
+            pathCacheCells = header.getInt();
+            ByteBuffer length = ByteBuffer.wrap(readBytes(2)).order(ByteOrder.LITTLE_ENDIAN);
+            plannerType = new String(readBytes(length.getShort() & 0xFFFF), StandardCharsets.UTF_8);
+            clusterSize = ByteBuffer.wrap(readBytes(2)).order(ByteOrder.LITTLE_ENDIAN).getShort() & 0xFFFF;
+        }
+
+        public String getPlannerType() {
+            return plannerType;
+        }
+
+        public int getMaxDrones() {
+            return maxDrones;
+        }
+
+        public int getPathCacheCells() {
+            return pathCacheCells;
+        }
+
+        public int getReservationWindow() {
+            return reservationWindow;
+        }
+
+        /**
+         * Side of the clusters the session planned long routes over; 0 if it planned every route on the grid.
+         */
+        public int getClusterSize() {
+            return clusterSize;
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return its type, or {@link #EOF} at the end of the log
+         */
+        public int next() throws IOException {
+            int type = in.read();
+            if (type < 0) {
+                return EOF;
+            }
+            try {
+                switch (type) {
+                    case GRID -> readGrid();
+                    case RESET -> {
+                    }
+                    case ADD_DRONE, POSITION -> {
+                        droneName = readDrone();
+                        position = readPosition();
+                    }
+                    case POSITIONS -> {
+                        int count = (int) readVarint();
+                        reports = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            reports.add(new PositionReport(readDrone(), readPosition()));
+                        }
+                    }
+                    case RESTORE -> checkpoint = ByteBuffer.wrap(readBytes((int) readVarint()));
+                    case TICKS -> ticks = readVarint();
+                    case MODE -> {
+                        int ordinal = readByte();
+                        SimulationClock.Mode[] modes = SimulationClock.Mode.values();
+                        if (ordinal >= modes.length) {
+                            throw new IllegalArgumentException("Invalid clock mode in recording: " + ordinal);
+                        }
+                        mode = modes[ordinal];
+                    }
+                    case END -> {
+                        ByteBuffer value = ByteBuffer.wrap(readBytes(Long.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+                        digest = value.getLong();
+                        ticks = readVarint();
+                    }
+                    default -> throw new IllegalArgumentException("Invalid record type in recording: " + type);
+                }
+            } catch (EOFException e) {
+                // The last record was cut short
+                truncated = true;
+                return EOF;
+            }
+            return type;
+        }
+
+        /**
+         * Whether the log ended inside a record.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public NavigationGrid getGrid() {
+            return grid;
+        }
+
+        public String getDroneName() {
+            return droneName;
+        }
+
+        public Position getPosition() {
+            return position;
+        }
+
+        public List<PositionReport> getReports() {
+            return reports;
+        }
+
+        public ByteBuffer getCheckpoint() {
+            return checkpoint;
+        }
+
+        /**
+         * Ticks of a TICKS record, or all ticks of the recording for END.
+         */
+        public long getTicks() {
+            return ticks;
+        }
+
+        public SimulationClock.Mode getMode() {
+            return mode;
+        }
+
+        public long getDigest() {
+            return digest;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void readGrid() throws IOException {
+            int width = (int) readVarint();
+            int height = (int) readVarint();
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Invalid grid size in recording: " + width + "x" + height);
+            }
+            int[] values = new int[width * height];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = unzigzag(readVarint());
+            }
+            grid = new NavigationGrid(width, height, values);
+        }
+
+        private String readDrone() throws IOException {
+            long ref = readVarint();
+            if (ref == 0) {
+                return null;
+            }
+            if (ref == 1) {
+                String name = new String(readBytes((int) readVarint()), StandardCharsets.UTF_8);
+                names.add(name);
+                return name;
+            }
+            if (ref - 2 >= names.size()) {
+                throw new IllegalArgumentException("Unknown drone reference in recording: " + ref);
+            }
+            return names.get((int) (ref - 2));
+        }
+
+        private Position readPosition() throws IOException {
+            if (readByte() == 0) {
+                return null;
+            }
+            return new Position(unzigzag(readVarint()), unzigzag(readVarint()), unzigzag(readVarint()),
+                    unzigzag(readVarint()));
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException();
+            }
+            return bytes;
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Invalid varint in recording");
+        }
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long value) {
+        int v = (int) value;
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,72 @@
+package avalor.flightcenter.utils;
+
+import java.util.Arrays;
+
+/**
+ * Run-length encoding for palette index arrays.
+ * Every run is written as its length (unsigned LEB128 varint) followed by the repeated byte.
+ */
+public final class RunLength {
+
+    // Prevent instantiation
+    private RunLength() {}
+
+    public static byte[] encode(byte[] values) {
+        byte[] out = new byte[Math.max(16, values.length / 8)];
+        int size = 0;
+        int i = 0;
+        while (i < values.length) {
+            byte value = values[i];
+            int run = 1;
+            while (i + run < values.length && values[i + run] == value) {
+                run++;
+            }
+            // At most 5 varint bytes plus the value
+            if (size + 6 > out.length) {
+                out = Arrays.copyOf(out, out.length << 1);
+            }
+            int remaining = run;
+            while (remaining >= 0x80) {
+                out[size++] = (byte) (remaining | 0x80);
+                remaining >>>= 7;
+            }
+            out[size++] = (byte) remaining;
+            out[size++] = value;
+            i += run;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * Decodes {@code length} values.
+     *
+     * @throws IllegalArgumentException if the data does not hold exactly {@code length} values
+     */
+    public static byte[] decode(byte[] encoded, int length) {
+        byte[] values = new byte[length];
+        int pos = 0;
+        int i = 0;
+        while (i < encoded.length) {
+            int run = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (i >= encoded.length || shift > 28) {
+                    throw new IllegalArgumentException("Truncated run length");
+                }
+                b = encoded[i++];
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (i >= encoded.length || run <= 0 || run > length - pos) {
+                throw new IllegalArgumentException("Invalid run at offset " + i);
+            }
+            Arrays.fill(values, pos, pos + run, encoded[i++]);
+            pos += run;
+        }
+        if (pos != length) {
+            throw new IllegalArgumentException("Expected " + length + " values, got " + pos);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,264 @@
+package avalor.flightcenter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the simulation ticks of one session on a scheduler shared by all sessions.
+ * <p>
+ * Every tick is scheduled when the previous one has finished, so a tick never runs concurrently with itself.
+ * In the timed modes a tick that ends past the start of the next one counts as an overrun; the schedule then
+ * restarts from the end of that tick instead of firing the missed ticks back-to-back.
+ */
+public final class SimulationClock {
+    private static final Logger LOG = LoggerFactory.getLogger(SimulationClock.class);
+
+    public enum Mode {
+        /** One tick per period of wall-clock time. */
+        REALTIME,
+        /** One tick per period divided by the speed factor. */
+        ACCELERATED,
+        /** Ticks back-to-back until the clock is stopped, typically by the simulation once it is complete. */
+        MAX_THROUGHPUT;
+
+        public static Mode parse(String mode) {
+            try {
+                return valueOf(mode.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("Unknown simulation clock mode: " + mode);
+            }
+        }
+    }
+
+    // Null for a manual clock, whose ticks are run by its owner
+    private final ScheduledExecutorService scheduler;
+    private Mode mode;
+    private long periodMillis;
+    private double speed;
+    private Runnable task = null;
+    private ScheduledFuture<?> nextTick = null;
+    // Bumped on every start and stop, so a tick of a previous run does not schedule another one
+    private long run = 0;
+    // Planned start of the next timed tick
+    private long deadlineNanos;
+
+    private long startNanos;
+    private long stopNanos;
+    private long ticks;
+    private long overruns;
+    private long lastTickNanos;
+    private long maxTickNanos;
+    private long totalTickNanos;
+
+    public SimulationClock(ScheduledExecutorService scheduler, Mode mode, long periodMillis, double speed) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+        configure(mode, periodMillis, speed);
+    }
+
+    private SimulationClock(Mode mode) {
+        this.scheduler = null;
+        configure(mode, 1, 1);
+    }
+
+    /**
+     * Creates a clock that never schedules ticks: starting it only marks it as running, and its owner runs the
+     * ticks, e.g. to replay a recorded session at full speed.
+     */
+    public static SimulationClock manual(Mode mode) {
+        return new SimulationClock(mode);
+    }
+
+    /**
+     * Changes the mode, the simulated period between ticks in milliseconds and the speed factor
+     * (only used by {@link Mode#ACCELERATED}). A running clock is restarted with the new settings.
+     */
+    public synchronized void configure(Mode mode, long periodMillis, double speed) {
+        if (mode == null || periodMillis <= 0 || !(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Invalid data to configure the simulation clock with");
+        }
+        this.mode = mode;
+        this.periodMillis = periodMillis;
+        this.speed = mode == Mode.ACCELERATED ? speed : 1;
+        if (task != null) {
+            start(task);
+        }
+    }
+
+    /**
+     * Starts ticking the task right away. A clock that is already running is restarted, with fresh statistics.
+     */
+    public synchronized void start(Runnable tick) {
+        if (tick == null) {
+            throw new IllegalArgumentException("Invalid data to start the simulation clock with");
+        }
+        stop();
+        task = tick;
+        startNanos = System.nanoTime();
+        ticks = 0;
+        overruns = 0;
+        lastTickNanos = 0;
+        maxTickNanos = 0;
+        totalTickNanos = 0;
+        deadlineNanos = startNanos;
+        if (scheduler == null) {
+            return;
+        }
+        long startedRun = run;
+        nextTick = scheduler.schedule(() -> runTick(startedRun), 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the clock if running. A tick in progress is allowed to finish; a tick may also stop its own clock.
+     */
+    public synchronized void stop() {
+        run++;
+        if (nextTick != null) {
+            nextTick.cancel(false);
+            nextTick = null;
+        }
+        if (task != null) {
+            task = null;
+            stopNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    public synchronized Stats getStats() {
+        long elapsed = (task != null ? System.nanoTime() : stopNanos) - startNanos;
+        return new Stats(mode, periodMillis, speed, task != null, ticks, overruns, elapsed,
+                lastTickNanos, ticks == 0 ? 0 : totalTickNanos / ticks, maxTickNanos);
+    }
+
+    private void runTick(long tickRun) {
+        Runnable tick;
+        synchronized (this) {
+            if (tickRun != run) {
+                return;
+            }
+            tick = task;
+        }
+        long started = System.nanoTime();
+        try {
+            tick.run();
+        } catch (RuntimeException e) {
+            // Keep ticking; a periodic task would be silently cancelled here
+            LOG.error("Simulation tick failed", e);
+        }
+        long ended = System.nanoTime();
+
+        synchronized (this) {
+            // The last tick before a stop still counts
+            boolean stoppedByTick = task == null && run == tickRun + 1;
+            if (tickRun != run && !stoppedByTick) {
+                return;
+            }
+            long duration = ended - started;
+            ticks++;
+            lastTickNanos = duration;
+            totalTickNanos += duration;
+            maxTickNanos = Math.max(maxTickNanos, duration);
+            if (stoppedByTick) {
+                return;
+            }
+            if (mode == Mode.MAX_THROUGHPUT) {
+                // Through the scheduler queue, so the ticks of other sessions are not starved
+                nextTick = scheduler.schedule(() -> runTick(tickRun), 0, TimeUnit.NANOSECONDS);
+                return;
+            }
+            deadlineNanos += (long) (TimeUnit.MILLISECONDS.toNanos(periodMillis) / speed);
+            if (ended - deadlineNanos > 0) {
+                overruns++;
+                deadlineNanos = ended;
+            }
+            nextTick = scheduler.schedule(() -> runTick(tickRun), deadlineNanos - ended, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Clock settings and tick statistics at one point in time.
+     */
+    public static final class Stats {
+        private final Mode mode;
+        private final long periodMillis;
+        private final double speed;
+        private final boolean running;
+        private final long ticks;
+        private final long overruns;
+        private final long elapsedNanos;
+        private final long lastTickNanos;
+        private final long meanTickNanos;
+        private final long maxTickNanos;
+
+        private Stats(Mode mode, long periodMillis, double speed, boolean running, long ticks, long overruns,
+                      long elapsedNanos, long lastTickNanos, long meanTickNanos, long maxTickNanos) {
+            this.mode = mode;
+            this.periodMillis = periodMillis;
+            this.speed = speed;
+            this.running = running;
+            this.ticks = ticks;
+            this.overruns = overruns;
+            this.elapsedNanos = elapsedNanos;
+            this.lastTickNanos = lastTickNanos;
+            this.meanTickNanos = meanTickNanos;
+            this.maxTickNanos = maxTickNanos;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public long getPeriodMillis() {
+            return periodMillis;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public long getOverruns() {
+            return overruns;
+        }
+
+        /** Wall-clock time since the clock was started, up to when it stopped. */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getTicksPerSecond() {
+            return elapsedNanos <= 0 ? 0 : ticks * 1e9 / elapsedNanos;
+        }
+
+        public long getLastTickNanos() {
+            return lastTickNanos;
+        }
+
+        public long getMeanTickNanos() {
+            return meanTickNanos;
+        }
+
+        public long getMaxTickNanos() {
+            return maxTickNanos;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterGraphTest {
+    private static final int CLUSTER_SIZE = 5;
+
+    @Test
+    void needsEnoughClusters() {
+        assertThat(ClusterGraph.create(new NavigationGrid(19, 19, new int[19 * 19]), CLUSTER_SIZE)).isNull();
+        assertThat(ClusterGraph.create(new NavigationGrid(20, 3, new int[20 * 3]), CLUSTER_SIZE)).isNotNull();
+        assertThat(ClusterGraph.create(new NavigationGrid(20, 20, new int[20 * 20]), 0)).isNull();
+    }
+
+    @Test
+    void updatesMatchAFreshGraphAfterBlockingBordersAndCorners() {
+        Random random = new Random(5);
+        // Uneven sizes leave narrow clusters on the right and bottom
+        NavigationGrid grid = new NavigationGrid(23, 21, new int[23 * 21]);
+        ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+        for (int round = 0; round < 200; round++) {
+            for (int change = random.nextInt(6); change >= 0; change--) {
+                int cell = borderCell(random, grid);
+                if (random.nextInt(3) == 0) {
+                    graph.unblock(cell);
+                } else {
+                    graph.block(cell);
+                }
+            }
+            graph.update();
+
+            ClusterGraph fresh = ClusterGraph.create(grid, CLUSTER_SIZE);
+            for (int cell = 0; cell < grid.size(); cell++) {
+                if (graph.isBlocked(cell)) {
+                    fresh.block(cell);
+                }
+            }
+            fresh.update();
+            assertSameGraph(grid, graph, fresh);
+        }
+    }
+
+    @Test
+    void unblockingEverythingRestoresTheOpenGraph() {
+        NavigationGrid grid = new NavigationGrid(20, 20, new int[20 * 20]);
+        ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+        ClusterGraph open = ClusterGraph.create(grid, CLUSTER_SIZE);
+        // A wall along the border of the first two cluster rows, corners included
+        for (int x = 0; x < 20; x++) {
+            graph.block(grid.index(x, 4));
+            graph.block(grid.index(x, 5));
+        }
+        graph.update();
+
+        for (int cluster = 0; cluster < 4; cluster++) {
+            for (int cell : graph.getEntrances(cluster)) {
+                assertThat(grid.yOf(cell)).isNotEqualTo(4);
+            }
+        }
+
+        for (int x = 0; x < 20; x++) {
+            graph.unblock(grid.index(x, 4));
+            graph.unblock(grid.index(x, 5));
+        }
+        assertThat(graph.update()).isEqualTo(8);
+        assertSameGraph(grid, graph, open);
+    }
+
+    @Test
+    void entrancesFaceEachOther() {
+        Random random = new Random(9);
+        NavigationGrid grid = new NavigationGrid(30, 25, new int[30 * 25]);
+        ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+        for (int i = 0; i < 150; i++) {
+            graph.block(borderCell(random, grid));
+        }
+        graph.update();
+
+        for (int cluster = 0; cluster < clusterCount(grid); cluster++) {
+            int[] entrances = graph.getEntrances(cluster);
+            int[] peers = graph.getPeers(cluster);
+            for (int i = 0; i < entrances.length; i++) {
+                assertThat(graph.isBlocked(entrances[i])).isFalse();
+                assertThat(graph.clusterOf(entrances[i])).isEqualTo(cluster);
+                assertThat(peers[2 * i]).isNotNegative();
+                for (int peer : new int[]{peers[2 * i], peers[2 * i + 1]}) {
+                    if (peer >= 0) {
+                        int across = graph.clusterOf(peer);
+                        assertThat(graph.isBlocked(peer)).isFalse();
+                        assertThat(graph.clusterDistance(cluster, across)).isEqualTo(1);
+                        assertThat(graph.entranceIndex(across, peer)).as("entrance across from %d", entrances[i])
+                                .isNotNegative();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertSameGraph(NavigationGrid grid, ClusterGraph actual, ClusterGraph expected) {
+        for (int cluster = 0; cluster < clusterCount(grid); cluster++) {
+            int[] entrances = expected.getEntrances(cluster);
+            assertThat(actual.getEntrances(cluster)).as("entrances of cluster %d", cluster).isEqualTo(entrances);
+            assertThat(actual.getPeers(cluster)).as("peers of cluster %d", cluster).isEqualTo(expected.getPeers(cluster));
+            for (int i = 0; i < entrances.length; i++) {
+                for (int j = 0; j < entrances.length; j++) {
+                    assertThat(actual.getDistance(cluster, i, j)).as("distance %d -> %d in cluster %d", i, j, cluster)
+                            .isEqualTo(expected.getDistance(cluster, i, j));
+                }
+            }
+        }
+    }
+
+    // A cell on a cluster border, often a corner
+    private static int borderCell(Random random, NavigationGrid grid) {
+        int x = random.nextInt(grid.getWidth());
+        int y = random.nextInt(grid.getHeight());
+        if (random.nextBoolean()) {
+            x = edge(random, x, grid.getWidth());
+        }
+        if (random.nextBoolean()) {
+            y = edge(random, y, grid.getHeight());
+        }
+        return grid.index(x, y);
+    }
+
+    private static int edge(Random random, int coordinate, int size) {
+        int cluster = coordinate / CLUSTER_SIZE;
+        int edge = random.nextBoolean() ? cluster * CLUSTER_SIZE : cluster * CLUSTER_SIZE + CLUSTER_SIZE - 1;
+        return Math.min(edge, size - 1);
+    }
+
+    private static int clusterCount(NavigationGrid grid) {
+        return ((grid.getWidth() + CLUSTER_SIZE - 1) / CLUSTER_SIZE) * ((grid.getHeight() + CLUSTER_SIZE - 1) / CLUSTER_SIZE);
+    }
+}
@@ -0,0 +1,87 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClusterSearchTest {
+    private static final int CLUSTER_SIZE = 8;
+    private static final int SIZE = 4 * CLUSTER_SIZE;
+
+    @Test
+    void openClustersHaveOctileDistances() {
+        NavigationGrid grid = new NavigationGrid(SIZE, SIZE, new int[SIZE * SIZE]);
+        ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+        int cluster = graph.clusterOf(grid.index(9, 9));
+        ClusterSearch search = new ClusterSearch();
+        search.prepare(graph, cluster);
+
+        int source = grid.index(8, 9);
+        int[] targets = {grid.index(15, 15), grid.index(12, 8)};
+        search.run(source, targets, 0, targets.length);
+
+        assertThat(search.distanceTo(targets[0])).isEqualTo(GridSearchPlanner.octile(7, 6));
+        assertThat(search.distanceTo(targets[1])).isEqualTo(GridSearchPlanner.octile(4, 1));
+    }
+
+    @Test
+    void matchesBoundedAStarAroundBlockedCells() {
+        Random random = new Random(17);
+        AStarPlanner aStar = new AStarPlanner();
+        ClusterSearch search = new ClusterSearch();
+        for (int g = 0; g < 100; g++) {
+            // The grid planner sees the blocked cells of the graph as occupied
+            NavigationGrid grid = new NavigationGrid(SIZE, SIZE, new int[SIZE * SIZE]);
+            ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+            double ratio = random.nextDouble() * 0.4;
+            for (int cell = 0; cell < grid.size(); cell++) {
+                if (random.nextDouble() < ratio) {
+                    graph.block(cell);
+                    grid.occupy(cell, cell);
+                }
+            }
+            graph.update();
+            int cluster = random.nextInt(16);
+            search.prepare(graph, cluster);
+            int[] targets = new int[10];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = freeCell(random, graph, cluster, grid);
+            }
+            int source = freeCell(random, graph, cluster, grid);
+
+            search.run(source, targets, 0, targets.length);
+
+            for (int target : targets) {
+                int expected = target == source ? 0 : cost(grid, source, aStar.plan(grid, source, target,
+                        graph.minX(cluster), graph.minY(cluster), graph.maxX(cluster), graph.maxY(cluster)));
+                assertThat(search.distanceTo(target)).as("distance %d -> %d", source, target).isEqualTo(expected);
+            }
+        }
+    }
+
+    private static int freeCell(Random random, ClusterGraph graph, int cluster, NavigationGrid grid) {
+        int cell;
+        do {
+            cell = grid.index(graph.minX(cluster) + random.nextInt(CLUSTER_SIZE), graph.minY(cluster) + random.nextInt(CLUSTER_SIZE));
+        } while (graph.isBlocked(cell));
+        return cell;
+    }
+
+    // -1 for no route, like the cluster search
+    private static int cost(NavigationGrid grid, int start, int[] route) {
+        if (route.length == 0) {
+            return -1;
+        }
+        int total = 0;
+        int from = start;
+        for (int cell : route) {
+            boolean diagonal = grid.xOf(cell) != grid.xOf(from) && grid.yOf(cell) != grid.yOf(from);
+            total += diagonal ? GridSearchPlanner.DIAGONAL_COST : GridSearchPlanner.STRAIGHT_COST;
+            from = cell;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,117 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static avalor.flightcenter.domain.TestGrids.randomFreeCell;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HierarchicalPlannerTest {
+    private static final int GRIDS = 100;
+    private static final int QUERIES_PER_GRID = 20;
+    private static final int CLUSTER_SIZE = 6;
+
+    @Test
+    void stretchesLeadToTheGoalWhereverAStarFindsARoute() {
+        Random random = new Random(23);
+        AStarPlanner aStar = new AStarPlanner();
+        HierarchicalPlanner planner = new HierarchicalPlanner();
+        for (int g = 0; g < GRIDS; g++) {
+            int width = 24 + random.nextInt(40);
+            int height = 24 + random.nextInt(40);
+            NavigationGrid grid = new NavigationGrid(width, height, new int[width * height]);
+            ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+            buildWalls(random, grid, graph);
+            for (int q = 0; q < QUERIES_PER_GRID; q++) {
+                int start = randomFreeCell(random, grid);
+                int goal = randomFreeCell(random, grid);
+                if (start == goal) {
+                    continue;
+                }
+                boolean reachable = aStar.plan(grid, start, goal).length > 0;
+                ClusterRoute route = new ClusterRoute();
+
+                int[] stretch = planner.plan(graph, aStar, start, goal, route);
+
+                assertThat(stretch.length > 0).as("reachability of %d -> %d", start, goal).isEqualTo(reachable);
+                // Follow the stretches like a drone does, asking for the next ones where the last ones end
+                int from = start;
+                for (int calls = 1; stretch.length > 0; calls++) {
+                    assertConnected(grid, from, goal, stretch);
+                    from = stretch[stretch.length - 1];
+                    if (from == goal) {
+                        break;
+                    }
+                    assertThat(calls).as("calls to reach %d from %d", goal, start).isLessThan(grid.size());
+                    stretch = planner.plan(graph, aStar, from, goal, route);
+                    assertThat(stretch).as("next stretch from %d to %d", from, goal).isNotEmpty();
+                }
+                assertThat(from == goal).isEqualTo(reachable);
+            }
+        }
+    }
+
+    @Test
+    void nearbyGoalsArePlannedInOneGo() {
+        NavigationGrid grid = new NavigationGrid(40, 40, new int[40 * 40]);
+        ClusterGraph graph = ClusterGraph.create(grid, CLUSTER_SIZE);
+        int start = grid.index(3, 3);
+        int goal = grid.index(10, 8);
+        ClusterRoute route = new ClusterRoute();
+
+        int[] cells = new HierarchicalPlanner().plan(graph, new AStarPlanner(), start, goal, route);
+
+        assertThat(cells).hasSize(7).endsWith(goal);
+        assertThat(new HierarchicalPlanner().plan(graph, new AStarPlanner(), start, start, route)).isEmpty();
+    }
+
+    // Walls across the grid with a few gaps, some closed, blocked in the graph and occupied on the grid
+    private static void buildWalls(Random random, NavigationGrid grid, ClusterGraph graph) {
+        for (int wall = random.nextInt(6); wall >= 0; wall--) {
+            boolean vertical = random.nextBoolean();
+            int length = vertical ? grid.getHeight() : grid.getWidth();
+            int position = random.nextInt(vertical ? grid.getWidth() : grid.getHeight());
+            int gaps = random.nextInt(3);
+            int[] gapAt = new int[gaps];
+            for (int i = 0; i < gaps; i++) {
+                gapAt[i] = random.nextInt(length);
+            }
+            for (int i = 0; i < length; i++) {
+                boolean gap = false;
+                for (int at : gapAt) {
+                    gap |= Math.abs(i - at) <= 1;
+                }
+                int cell = vertical ? grid.index(position, i) : grid.index(i, position);
+                if (!gap && !grid.isOccupied(cell)) {
+                    grid.occupy(cell, cell);
+                    graph.block(cell);
+                }
+            }
+        }
+        for (int cell = 0; cell < grid.size(); cell++) {
+            if (random.nextInt(20) == 0 && !grid.isOccupied(cell)) {
+                grid.occupy(cell, cell);
+                graph.block(cell);
+            }
+        }
+        graph.update();
+    }
+
+    // Every step moves to a free neighbour (or the goal), and diagonal steps do not cut occupied corners
+    private static void assertConnected(NavigationGrid grid, int from, int goal, int[] stretch) {
+        for (int cell : stretch) {
+            int dx = grid.xOf(cell) - grid.xOf(from);
+            int dy = grid.yOf(cell) - grid.yOf(from);
+            assertThat(Math.max(Math.abs(dx), Math.abs(dy))).as("step %d -> %d", from, cell).isEqualTo(1);
+            assertThat(cell == goal || !grid.isOccupied(cell)).as("step into %d", cell).isTrue();
+            if (dx != 0 && dy != 0) {
+                assertThat(grid.isOccupied(grid.index(grid.xOf(from) + dx, grid.yOf(from)))
+                        || grid.isOccupied(grid.index(grid.xOf(from), grid.yOf(from) + dy)))
+                        .as("corner cut %d -> %d", from, cell).isFalse();
+            }
+            from = cell;
+        }
+    }
+}
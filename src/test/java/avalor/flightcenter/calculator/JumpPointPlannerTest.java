@@ -0,0 +1,99 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static avalor.flightcenter.domain.TestGrids.randomFreeCell;
+import static avalor.flightcenter.domain.TestGrids.randomGrid;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JumpPointPlannerTest {
+    private static final int GRIDS = 200;
+    private static final int QUERIES_PER_GRID = 20;
+    private static final int VALUES = 100;
+
+    @Test
+    void findsRoutesAsShortAsAStarOnRandomGrids() {
+        Random random = new Random(42);
+        AStarPlanner aStar = new AStarPlanner();
+        JumpPointPlanner jps = new JumpPointPlanner();
+        for (int g = 0; g < GRIDS; g++) {
+            NavigationGrid grid = randomGrid(random, 8 + random.nextInt(40), 8 + random.nextInt(40), VALUES, random.nextDouble() * 0.4);
+            for (int q = 0; q < QUERIES_PER_GRID; q++) {
+                int start = randomFreeCell(random, grid);
+                int goal = random.nextInt(grid.size());
+                int[] expected = aStar.plan(grid, start, goal);
+                int[] actual = jps.plan(grid, start, goal);
+
+                assertThat(actual.length == 0).as("reachability of %d -> %d", start, goal).isEqualTo(expected.length == 0);
+                assertValidRoute(grid, start, goal, actual);
+                assertThat(cost(grid, start, actual)).as("cost of %d -> %d", start, goal).isEqualTo(cost(grid, start, expected));
+            }
+        }
+    }
+
+    @Test
+    void boundedSearchesMatchAStar() {
+        Random random = new Random(7);
+        AStarPlanner aStar = new AStarPlanner();
+        JumpPointPlanner jps = new JumpPointPlanner();
+        for (int g = 0; g < GRIDS; g++) {
+            NavigationGrid grid = randomGrid(random, 32, 32, VALUES, random.nextDouble() * 0.3);
+            int minX = random.nextInt(12);
+            int minY = random.nextInt(12);
+            int maxX = minX + 8 + random.nextInt(12);
+            int maxY = minY + 8 + random.nextInt(12);
+            for (int q = 0; q < QUERIES_PER_GRID; q++) {
+                int start = grid.index(minX + random.nextInt(maxX - minX + 1), minY + random.nextInt(maxY - minY + 1));
+                int goal = grid.index(minX + random.nextInt(maxX - minX + 1), minY + random.nextInt(maxY - minY + 1));
+                int[] expected = aStar.plan(grid, start, goal, minX, minY, maxX, maxY);
+                int[] actual = jps.plan(grid, start, goal, minX, minY, maxX, maxY);
+
+                assertThat(actual.length == 0).isEqualTo(expected.length == 0);
+                assertValidRoute(grid, start, goal, actual);
+                assertThat(cost(grid, start, actual)).isEqualTo(cost(grid, start, expected));
+                for (int cell : actual) {
+                    assertThat(grid.xOf(cell)).isBetween(minX, maxX);
+                    assertThat(grid.yOf(cell)).isBetween(minY, maxY);
+                }
+            }
+        }
+    }
+
+    // Every step moves to a neighbour that is free (or the goal), and diagonal steps do not cut occupied corners
+    private static void assertValidRoute(NavigationGrid grid, int start, int goal, int[] route) {
+        if (route.length == 0) {
+            return;
+        }
+        assertThat(route[route.length - 1]).isEqualTo(goal);
+        int from = start;
+        for (int cell : route) {
+            int dx = grid.xOf(cell) - grid.xOf(from);
+            int dy = grid.yOf(cell) - grid.yOf(from);
+            assertThat(Math.max(Math.abs(dx), Math.abs(dy))).isEqualTo(1);
+            assertThat(cell == goal || !grid.isOccupied(cell)).isTrue();
+            if (dx != 0 && dy != 0) {
+                assertThat(isPassable(grid, grid.index(grid.xOf(from) + dx, grid.yOf(from)), goal)).isTrue();
+                assertThat(isPassable(grid, grid.index(grid.xOf(from), grid.yOf(from) + dy), goal)).isTrue();
+            }
+            from = cell;
+        }
+    }
+
+    private static boolean isPassable(NavigationGrid grid, int cell, int goal) {
+        return cell == goal || !grid.isOccupied(cell);
+    }
+
+    private static int cost(NavigationGrid grid, int start, int[] route) {
+        int total = 0;
+        int from = start;
+        for (int cell : route) {
+            boolean diagonal = grid.xOf(cell) != grid.xOf(from) && grid.yOf(cell) != grid.yOf(from);
+            total += diagonal ? GridSearchPlanner.DIAGONAL_COST : GridSearchPlanner.STRAIGHT_COST;
+            from = cell;
+        }
+        return total;
+    }
+}
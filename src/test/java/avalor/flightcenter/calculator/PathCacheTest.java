@@ -0,0 +1,48 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathCacheTest {
+
+    @Test
+    void reusesTheSuffixFromACellOnTheRoute() {
+        NavigationGrid grid = new NavigationGrid(20, 20, new int[400]);
+        PathCache cache = new PathCache(1000);
+        cache.reset(grid);
+        cache.put(grid.index(0, 5), row(grid, 5, 1, 10));
+
+        assertThat(cache.find(grid.index(4, 5), grid.index(10, 5))).isEqualTo(row(grid, 5, 5, 10));
+        assertThat(cache.find(grid.index(4, 5), grid.index(9, 5))).isNull();
+    }
+
+    @Test
+    void splicesDiagonalStepsOnlyBetweenFreeCorners() {
+        NavigationGrid grid = new NavigationGrid(20, 20, new int[400]);
+        PathCache cache = new PathCache(1000);
+        cache.reset(grid);
+        cache.put(grid.index(0, 5), row(grid, 5, 1, 10));
+        int start = grid.index(4, 4);
+
+        assertThat(cache.find(start, grid.index(10, 5))).isEqualTo(row(grid, 5, 5, 10));
+
+        // (5, 4) is a corner of the diagonal step from (4, 4) to (5, 5); the step straight down stays possible
+        grid.occupy(grid.index(5, 4), 1);
+        cache.occupied(grid.index(5, 4));
+        assertThat(cache.find(start, grid.index(10, 5))).isEqualTo(row(grid, 5, 4, 10));
+
+        grid.occupy(grid.index(4, 5), 2);
+        cache.occupied(grid.index(4, 5));
+        assertThat(cache.find(start, grid.index(10, 5))).isNull();
+    }
+
+    private static int[] row(NavigationGrid grid, int y, int fromX, int toX) {
+        int[] cells = new int[toX - fromX + 1];
+        for (int x = fromX; x <= toX; x++) {
+            cells[x - fromX] = grid.index(x, y);
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,118 @@
+package avalor.flightcenter.calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservationTableTest {
+
+    @Test
+    void reservesTheStartCellThenTheStepsThenHoldsTheLastOne() {
+        ReservationTable table = new ReservationTable();
+
+        table.reserve(0, 10, 5, new int[]{6, 7}, 2, 14);
+
+        assertThat(table.getCell(0, 9)).isEqualTo(-1);
+        assertThat(table.getCell(0, 10)).isEqualTo(5);
+        assertThat(table.getCell(0, 11)).isEqualTo(6);
+        for (int tick = 12; tick <= 14; tick++) {
+            assertThat(table.getCell(0, tick)).isEqualTo(7);
+            assertThat(table.getHolder(7, tick)).isZero();
+        }
+        assertThat(table.getCell(0, 15)).isEqualTo(-1);
+        assertThat(table.getHolder(7, 15)).isEqualTo(-1);
+        assertThat(table.getHolder(5, 11)).isEqualTo(-1);
+        assertThat(table.getPlannedUntil(0)).isEqualTo(12);
+        assertThat(table.size()).isEqualTo(5);
+    }
+
+    @Test
+    void reserveReplacesAndReleaseDropsTheRunOfTheDrone() {
+        ReservationTable table = new ReservationTable();
+        table.reserve(0, 10, 5, new int[]{6, 7}, 2, 14);
+
+        table.reserve(0, 11, 6, new int[]{16}, 1, 12);
+
+        assertThat(table.getHolder(5, 10)).isEqualTo(-1);
+        assertThat(table.getHolder(7, 12)).isEqualTo(-1);
+        assertThat(table.getCell(0, 11)).isEqualTo(6);
+        assertThat(table.getCell(0, 12)).isEqualTo(16);
+        assertThat(table.size()).isEqualTo(2);
+
+        table.release(0);
+        table.release(3);
+
+        assertThat(table.size()).isZero();
+        assertThat(table.getCell(0, 11)).isEqualTo(-1);
+        assertThat(table.getHolder(6, 11)).isEqualTo(-1);
+    }
+
+    @Test
+    void advanceToDropsThePassedTicks() {
+        ReservationTable table = new ReservationTable();
+        table.reserve(0, 10, 5, new int[]{6, 7}, 2, 14);
+        table.reserve(1, 10, 1, new int[]{2}, 1, 11);
+
+        table.advanceTo(12);
+
+        assertThat(table.getCell(0, 11)).isEqualTo(-1);
+        assertThat(table.getHolder(5, 10)).isEqualTo(-1);
+        assertThat(table.getHolder(6, 11)).isEqualTo(-1);
+        assertThat(table.getCell(0, 12)).isEqualTo(7);
+        assertThat(table.getCell(1, 11)).isEqualTo(-1);
+        assertThat(table.size()).isEqualTo(3);
+
+        table.advanceTo(20);
+
+        assertThat(table.size()).isZero();
+        assertThat(table.getCell(0, 14)).isEqualTo(-1);
+    }
+
+    @Test
+    void advanceToDropsTicksAcrossTheWrapAround() {
+        ReservationTable table = new ReservationTable();
+        int tick = Integer.MAX_VALUE - 1;
+        table.reserve(0, tick, 5, new int[]{6, 7, 8}, 3, tick + 3);
+
+        assertThat(table.getCell(0, Integer.MIN_VALUE + 1)).isEqualTo(8);
+        assertThat(table.getHolder(8, Integer.MIN_VALUE + 1)).isZero();
+
+        table.advanceTo(Integer.MIN_VALUE + 1);
+
+        assertThat(table.getCell(0, Integer.MAX_VALUE)).isEqualTo(-1);
+        assertThat(table.getHolder(7, Integer.MIN_VALUE)).isEqualTo(-1);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    void holdsTheLastCellOnlyUntilAnotherDroneNeedsIt() {
+        ReservationTable table = new ReservationTable();
+        // Drone 1 passes through cell 7 at tick 14
+        table.reserve(1, 13, 8, new int[]{7, 9}, 2, 15);
+
+        table.reserve(0, 10, 5, new int[]{6, 7}, 2, 20);
+
+        // The hold stops before the tick ahead of drone 1 arriving, so the cell is free on both sides of it
+        assertThat(table.getCell(0, 12)).isEqualTo(7);
+        assertThat(table.getCell(0, 13)).isEqualTo(-1);
+        assertThat(table.getHolder(7, 13)).isEqualTo(-1);
+        assertThat(table.getHolder(7, 14)).isEqualTo(1);
+    }
+
+    @Test
+    void neverTakesCellsHeldByAnotherDrone() {
+        ReservationTable table = new ReservationTable();
+        table.reserve(1, 13, 8, new int[]{7, 9}, 2, 15);
+
+        // A drone that could not plan around drone 1
+        table.reserve(0, 12, 6, new int[]{7, 7}, 2, 14);
+
+        assertThat(table.getHolder(7, 14)).isEqualTo(1);
+        assertThat(table.getHolder(7, 13)).isZero();
+
+        table.release(0);
+
+        assertThat(table.getHolder(7, 14)).isEqualTo(1);
+        assertThat(table.getHolder(7, 13)).isEqualTo(-1);
+    }
+}
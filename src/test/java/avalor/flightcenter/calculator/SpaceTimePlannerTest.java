@@ -0,0 +1,145 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpaceTimePlannerTest {
+    private static final int SIZE = 12;
+    private static final int WINDOW = 6;
+    private static final int MAX_TICKS = 100;
+
+    @Test
+    void crossingDronesNeverShareOrSwapCells() {
+        NavigationGrid grid = new NavigationGrid(SIZE, SIZE, new int[SIZE * SIZE]);
+        int[] starts = {grid.index(0, 5), grid.index(5, 0)};
+        int[] goals = {grid.index(SIZE - 1, 6), grid.index(6, SIZE - 1)};
+
+        fly(grid, starts, goals);
+    }
+
+    @Test
+    void headOnDronesNeverShareOrSwapCells() {
+        NavigationGrid grid = new NavigationGrid(SIZE, SIZE, new int[SIZE * SIZE]);
+        int[] starts = {grid.index(0, 5), grid.index(SIZE - 1, 5)};
+        int[] goals = {grid.index(SIZE - 1, 5), grid.index(0, 5)};
+
+        fly(grid, starts, goals);
+    }
+
+    @Test
+    void boxedInDroneGetsNoMoves() {
+        NavigationGrid grid = new NavigationGrid(SIZE, SIZE, new int[SIZE * SIZE]);
+        int start = grid.index(5, 5);
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx != 0 || dy != 0) {
+                    grid.occupy(grid.index(5 + dx, 5 + dy), 10 + grid.index(5 + dx, 5 + dy));
+                }
+            }
+        }
+        grid.occupy(start, 0);
+        SpaceTimePlanner planner = new SpaceTimePlanner(WINDOW);
+
+        int[] route = {grid.index(6, 5), grid.index(7, 5), grid.index(8, 5)};
+        int[] steps = planner.plan(grid, new ReservationTable(), 0, start, route, route.length, true, 0);
+
+        assertThat(steps).isNull();
+        assertThat(planner.getRejoinIndex()).isEqualTo(-1);
+    }
+
+    @Test
+    void walledOffDroneGetsAsCloseAsItCan() {
+        NavigationGrid grid = new NavigationGrid(SIZE, SIZE, new int[SIZE * SIZE]);
+        // A wall across the grid, closed after the route was planned
+        for (int y = 0; y < SIZE; y++) {
+            grid.occupy(grid.index(3, y), 100 + y);
+        }
+        int start = grid.index(0, 0);
+        grid.occupy(start, 0);
+        int[] route = {grid.index(1, 0), grid.index(2, 0), grid.index(3, 0), grid.index(4, 0)};
+        SpaceTimePlanner planner = new SpaceTimePlanner(WINDOW);
+
+        int[] steps = planner.plan(grid, new ReservationTable(), 0, start, route, route.length, true, 0);
+
+        assertThat(steps).isNotNull().isNotEmpty();
+        assertThat(planner.getRejoinIndex()).isEqualTo(-1);
+        int end = steps[steps.length - 1];
+        assertThat(chebyshev(grid, end, route[route.length - 1])).isLessThan(chebyshev(grid, start, route[route.length - 1]));
+        int previous = start;
+        for (int step : steps) {
+            assertThat(grid.isOccupied(step) && step != start).as("step into the wall").isFalse();
+            assertThat(chebyshev(grid, previous, step)).isLessThanOrEqualTo(1);
+            previous = step;
+        }
+    }
+
+    /**
+     * Flies the drones to their goals the way the path service does: every drone plans its next window when its
+     * reserved moves run low, then all drones move to the cell they reserved for the next tick.
+     */
+    private static void fly(NavigationGrid grid, int[] starts, int[] goals) {
+        // Routes are planned without the other drones, like the routes the space-time search follows
+        NavigationGrid map = new NavigationGrid(grid.getWidth(), grid.getHeight(), new int[grid.size()]);
+        AStarPlanner routes = new AStarPlanner();
+        SpaceTimePlanner planner = new SpaceTimePlanner(WINDOW);
+        ReservationTable table = new ReservationTable();
+        int drones = starts.length;
+        int[] cells = Arrays.copyOf(starts, drones);
+        for (int id = 0; id < drones; id++) {
+            grid.occupy(cells[id], id);
+        }
+        int tick = 0;
+        for (; tick < MAX_TICKS && !Arrays.equals(cells, goals); tick++) {
+            table.advanceTo(tick);
+            boolean[] due = new boolean[drones];
+            for (int id = 0; id < drones; id++) {
+                due[id] = cells[id] != goals[id] && (table.getCell(id, tick) != cells[id]
+                        || table.getPlannedUntil(id) - tick < WINDOW / 2);
+                if (due[id]) {
+                    table.release(id);
+                }
+            }
+            for (int id = 0; id < drones; id++) {
+                if (!due[id]) {
+                    continue;
+                }
+                int[] route = routes.plan(map, cells[id], goals[id]);
+                int length = Math.min(WINDOW, route.length);
+                int[] steps = planner.plan(grid, table, id, cells[id], route, length, length == route.length, tick);
+                if (steps != null) {
+                    table.reserve(id, tick, cells[id], steps, steps.length, tick + planner.getHorizon());
+                }
+            }
+            int[] next = new int[drones];
+            for (int id = 0; id < drones; id++) {
+                int reserved = table.getCell(id, tick + 1);
+                next[id] = reserved >= 0 ? reserved : cells[id];
+                assertThat(chebyshev(grid, cells[id], next[id])).as("move of drone %d at tick %d", id, tick)
+                        .isLessThanOrEqualTo(1);
+            }
+            for (int a = 0; a < drones; a++) {
+                for (int b = a + 1; b < drones; b++) {
+                    assertThat(next[a]).as("cell shared at tick %d", tick + 1).isNotEqualTo(next[b]);
+                    assertThat(next[a] == cells[b] && next[b] == cells[a]).as("cells swapped at tick %d", tick + 1)
+                            .isFalse();
+                }
+            }
+            for (int id = 0; id < drones; id++) {
+                grid.release(cells[id], id);
+            }
+            for (int id = 0; id < drones; id++) {
+                grid.occupy(next[id], id);
+                cells[id] = next[id];
+            }
+        }
+        assertThat(cells).as("drones at their goals after %d ticks", tick).isEqualTo(goals);
+    }
+
+    private static int chebyshev(NavigationGrid grid, int a, int b) {
+        return Math.max(Math.abs(grid.xOf(a) - grid.xOf(b)), Math.abs(grid.yOf(a) - grid.yOf(b)));
+    }
+}
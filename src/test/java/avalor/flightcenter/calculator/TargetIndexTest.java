@@ -0,0 +1,102 @@
+package avalor.flightcenter.calculator;
+
+import avalor.flightcenter.domain.NavigationGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static avalor.flightcenter.domain.TestGrids.randomGrid;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TargetIndexTest {
+
+    @Test
+    void matchesBruteForceWithFewValues() {
+        Random random = new Random(1);
+        for (int g = 0; g < 50; g++) {
+            int width = 1 + random.nextInt(40);
+            int height = 1 + random.nextInt(40);
+            checkAgainstBruteForce(random, width, height, 1 + random.nextInt(5));
+        }
+    }
+
+    @Test
+    void matchesBruteForceWithWideValueRange() {
+        // Values spread over more than the lookup table covers are tiered by sorting
+        Random random = new Random(2);
+        for (int g = 0; g < 20; g++) {
+            checkAgainstBruteForce(random, 1 + random.nextInt(30), 1 + random.nextInt(30), Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    void resetPutsEveryCellBack() {
+        Random random = new Random(3);
+        NavigationGrid grid = randomGrid(random, 20, 20, 4);
+        TargetIndex index = new TargetIndex(grid);
+        BitSet removed = new BitSet();
+        for (int i = 0; i < 150; i++) {
+            int cell = index.findClosestMostValuable(random.nextInt(20), random.nextInt(20), null);
+            index.remove(cell);
+            removed.set(cell);
+        }
+        index.reset();
+
+        assertThat(index.getAvailableCells()).isEqualTo(grid.size());
+        for (int cell = 0; cell < grid.size(); cell++) {
+            assertThat(index.isAvailable(cell)).isTrue();
+        }
+        assertThat(index.findClosestMostValuable(5, 5, null)).isEqualTo(bruteForce(grid, new BitSet(), 5, 5, null));
+    }
+
+    private static void checkAgainstBruteForce(Random random, int width, int height, int valueBound) {
+        NavigationGrid grid = randomGrid(random, width, height, valueBound);
+        TargetIndex index = new TargetIndex(grid);
+        BitSet removed = new BitSet();
+        while (true) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            BitSet locked = new BitSet();
+            for (int i = 0; i < 3; i++) {
+                locked.set(random.nextInt(grid.size()));
+            }
+            IntPredicate excluded = random.nextBoolean() ? null : locked::get;
+
+            int expected = bruteForce(grid, removed, x, y, excluded);
+            assertThat(index.findClosestMostValuable(x, y, excluded)).as("closest to (%d, %d)", x, y).isEqualTo(expected);
+            if (expected < 0) {
+                break;
+            }
+            index.remove(expected);
+            removed.set(expected);
+            // Removing again, or removing a cell the queries did not return, keeps the count right
+            index.remove(expected);
+            int other = random.nextInt(grid.size());
+            index.remove(other);
+            removed.set(other);
+            assertThat(index.getAvailableCells()).isEqualTo(grid.size() - removed.cardinality());
+        }
+        assertThat(index.findClosestMostValuable(0, 0, null)).isEqualTo(bruteForce(grid, removed, 0, 0, null));
+    }
+
+    private static int bruteForce(NavigationGrid grid, BitSet removed, int x, int y, IntPredicate excluded) {
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int cell = 0; cell < grid.size(); cell++) {
+            if (removed.get(cell) || (excluded != null && excluded.test(cell))) {
+                continue;
+            }
+            long dx = grid.xOf(cell) - x;
+            long dy = grid.yOf(cell) - y;
+            long distance = dx * dx + dy * dy;
+            if (best < 0 || grid.getValue(cell) > grid.getValue(best)
+                    || (grid.getValue(cell) == grid.getValue(best) && distance < bestDistance)) {
+                best = cell;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,81 @@
+package avalor.flightcenter.controller;
+
+import avalor.flightcenter.api.mapper.PositionMapper;
+import avalor.flightcenter.api.mapper.WaypointMapper;
+import avalor.flightcenter.service.SessionRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class LocationControllerTest {
+
+    private static final int MAX_BATCH_SIZE = 2;
+    private static final String LOCATION =
+            "{\"droneName\":\"d%d\",\"currentLocation\":{\"x\":1,\"y\":2,\"value\":0}}";
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        // No session is registered, so a batch that parses is answered with 404
+        LocationController controller = new LocationController(mock(SessionRegistry.class), mock(PositionMapper.class),
+                mock(WaypointMapper.class), new ObjectMapper(), MAX_BATCH_SIZE);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void jsonBatchWithinLimitReachesTheSession() throws Exception {
+        postJson("[" + location(0) + "," + location(1) + "]").andExpect(status().isNotFound());
+    }
+
+    @Test
+    void malformedJsonBatchIsBadRequest() throws Exception {
+        postJson("[" + location(0) + ",{\"droneName\":").andExpect(status().isBadRequest());
+        postJson("[" + location(0) + ",{oops}]").andExpect(status().isBadRequest());
+        postJson(location(0)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void oversizedJsonBatchIsPayloadTooLarge() throws Exception {
+        postJson("[" + location(0) + "," + location(1) + "," + location(2) + "]")
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void ndjsonBatchWithinLimitReachesTheSession() throws Exception {
+        postNdjson(location(0) + "\n" + location(1) + "\n").andExpect(status().isNotFound());
+    }
+
+    @Test
+    void malformedNdjsonBatchIsBadRequest() throws Exception {
+        postNdjson(location(0) + "\n{\"droneName\":\n").andExpect(status().isBadRequest());
+        postNdjson(location(0) + "\n{oops}\n").andExpect(status().isBadRequest());
+        postNdjson("{\"currentLocation\":{\"x\":\"north\"}}\n").andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void oversizedNdjsonBatchIsPayloadTooLarge() throws Exception {
+        postNdjson(location(0) + "\n" + location(1) + "\n" + location(2) + "\n")
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    private static String location(int drone) {
+        return String.format(LOCATION, drone);
+    }
+
+    private ResultActions postJson(String body) throws Exception {
+        return mvc.perform(post("/location/batch").contentType(MediaType.APPLICATION_JSON).content(body));
+    }
+
+    private ResultActions postNdjson(String body) throws Exception {
+        return mvc.perform(post("/location/batch").contentType(MediaType.APPLICATION_NDJSON).content(body));
+    }
+}
@@ -0,0 +1,76 @@
+package avalor.flightcenter.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NavigationGridTest {
+
+    @Test
+    void decaysFreeCellsLazily() {
+        NavigationGrid grid = new NavigationGrid(4, 1, new int[4]);
+        grid.occupy(1, 7);
+        for (int i = 0; i < 5; i++) {
+            grid.advanceTick();
+        }
+
+        assertThat(grid.getDecay(0)).isEqualTo(5);
+        assertThat(grid.getDecay(1)).isZero();
+        grid.release(1, 7);
+        grid.advanceTick();
+        grid.advanceTick();
+        assertThat(grid.getDecay(1)).isEqualTo(2);
+        grid.resetDecay();
+        assertThat(grid.getDecay(0)).isZero();
+    }
+
+    @Test
+    void decayLogKeepsTheOverwrittenTicksInWriteOrder() {
+        NavigationGrid grid = new NavigationGrid(3, 1, new int[3]);
+        grid.occupy(0, 1);
+        grid.advanceTick();
+        grid.startDecayLog();
+        grid.release(0, 1);
+        grid.advanceTick();
+        grid.occupy(0, 1);
+        grid.advanceTick();
+        grid.release(0, 1);
+        // A cell freed in the pass it was taken keeps its tick, so there is nothing to log
+        grid.occupy(2, 2);
+        grid.release(2, 2);
+
+        assertThat(grid.stopDecayLog()).containsExactly(0, 0, 0, 1);
+        assertThat(grid.stopDecayLog()).isNull();
+    }
+
+    @Test
+    void decayLogCannotRunTwice() {
+        NavigationGrid grid = new NavigationGrid(1, 1, new int[1]);
+        grid.startDecayLog();
+
+        assertThatThrownBy(grid::startDecayLog).isInstanceOf(IllegalStateException.class);
+        grid.stopDecayLog();
+        grid.startDecayLog();
+    }
+
+    @Test
+    void rebasingTheTicksBreaksTheDecayLog() {
+        NavigationGrid grid = new NavigationGrid(2, 1, new int[2]);
+        grid.restoreTicks(Integer.MAX_VALUE - 1, 0);
+        grid.occupy(0, 1);
+        grid.advanceTick();
+        grid.startDecayLog();
+        grid.release(0, 1);
+        int decay = grid.getDecay(0);
+        grid.advanceTick();
+
+        assertThat(grid.getTick()).isLessThan(Integer.MAX_VALUE);
+        assertThat(grid.getDecay(0)).isEqualTo(decay + 1);
+        assertThat(grid.getDecay(1)).isEqualTo(NavigationGrid.MAX_DECAY_VAL);
+        assertThat(grid.stopDecayLog()).isNull();
+        // The next log starts clean
+        grid.startDecayLog();
+        assertThat(grid.stopDecayLog()).isEmpty();
+    }
+}
@@ -0,0 +1,45 @@
+package avalor.flightcenter.domain;
+
+import java.util.Random;
+
+/**
+ * Random navigation grids shared by the tests.
+ */
+public final class TestGrids {
+
+    private TestGrids() {
+    }
+
+    /**
+     * @param valueBound cell values are drawn below it; {@link Integer#MAX_VALUE} draws from the whole int range
+     */
+    public static NavigationGrid randomGrid(Random random, int width, int height, int valueBound) {
+        int[] values = new int[width * height];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = valueBound == Integer.MAX_VALUE ? random.nextInt() : random.nextInt(valueBound);
+        }
+        return new NavigationGrid(width, height, values);
+    }
+
+    /**
+     * Same as {@link #randomGrid(Random, int, int, int)}, with about the given share of cells occupied, each by a
+     * drone id equal to its cell.
+     */
+    public static NavigationGrid randomGrid(Random random, int width, int height, int valueBound, double obstacleRatio) {
+        NavigationGrid grid = randomGrid(random, width, height, valueBound);
+        for (int i = 0; i < grid.size(); i++) {
+            if (random.nextDouble() < obstacleRatio) {
+                grid.occupy(i, i);
+            }
+        }
+        return grid;
+    }
+
+    public static int randomFreeCell(Random random, NavigationGrid grid) {
+        int cell;
+        do {
+            cell = random.nextInt(grid.size());
+        } while (grid.isOccupied(cell));
+        return cell;
+    }
+}
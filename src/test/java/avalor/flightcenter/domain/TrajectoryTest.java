@@ -0,0 +1,141 @@
+package avalor.flightcenter.domain;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrajectoryTest {
+    private static final int FLIGHT = 5 * Trajectory.CHUNK_ENTRIES + 300;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesAcrossSpilledAndInMemoryChunks() {
+        Path spillFile = dir.resolve("drone.trj");
+        Trajectory trajectory = new Trajectory(2, spillFile);
+        List<Position> flight = randomFlight(1);
+        flight.forEach(trajectory::add);
+
+        assertThat(spillFile).exists();
+        assertThat(trajectory.getFirstAvailable()).isZero();
+        // Pages straddle the chunk borders and the border between the spill file and memory
+        List<Position> read = readAll(trajectory, 0, 700, FLIGHT, pathValue(flight));
+        assertSamePositions(read, flight);
+
+        trajectory.close();
+        assertThat(spillFile).doesNotExist();
+    }
+
+    @Test
+    void dropsOldChunksWithoutSpillFile() {
+        Trajectory trajectory = new Trajectory(2, null);
+        List<Position> flight = randomFlight(2);
+        flight.forEach(trajectory::add);
+
+        // Two full chunks and the active one are left
+        long firstAvailable = 3L * Trajectory.CHUNK_ENTRIES;
+        assertThat(trajectory.getFirstAvailable()).isEqualTo(firstAvailable);
+        HistoryPage page = trajectory.read(0, 10);
+        assertThat(page.getFrom()).isEqualTo(firstAvailable);
+        assertThat(page.getFirstAvailable()).isEqualTo(firstAvailable);
+        // Size and value still cover the whole flight
+        List<Position> read = readAll(trajectory, 0, 1000, FLIGHT, pathValue(flight));
+        assertSamePositions(read, flight.subList((int) firstAvailable, FLIGHT));
+    }
+
+    @Test
+    void keepsEverythingInMemoryWithoutBound() {
+        Trajectory trajectory = new Trajectory(0, dir.resolve("unused.trj"));
+        List<Position> flight = randomFlight(3);
+        flight.forEach(trajectory::add);
+
+        assertThat(dir.resolve("unused.trj")).doesNotExist();
+        assertSamePositions(readAll(trajectory, 0, 333, FLIGHT, pathValue(flight)), flight);
+    }
+
+    @Test
+    void copiesAndRestoresTheRecentPositions() {
+        Trajectory trajectory = new Trajectory(1, null);
+        List<Position> flight = randomFlight(4);
+        flight.forEach(trajectory::add);
+        long epoch = trajectory.getEpoch();
+        long end = trajectory.size() - 100;
+
+        List<Position> recent = trajectory.copyRecent(epoch, end);
+        trajectory.add(new Position(0, 0, 1, 1));
+        assertThat(trajectory.copyRecent(epoch, end)).isEqualTo(recent);
+        assertSamePositions(recent, flight.subList((int) (end - recent.size()), (int) end));
+
+        Trajectory restored = new Trajectory(1, null);
+        restored.restore(end, 12345, recent);
+        assertThat(restored.size()).isEqualTo(end);
+        assertThat(restored.getPathValue()).isEqualTo(12345);
+        assertSamePositions(restored.read(0, recent.size()).getPositions(), recent);
+
+        trajectory.clear();
+        assertThat(trajectory.copyRecent(epoch, end)).isNull();
+        assertThat(trajectory.size()).isZero();
+    }
+
+    // Pages through the whole trajectory, checking that every page reports the whole flight
+    private static List<Position> readAll(Trajectory trajectory, long from, int limit, long size, long pathValue) {
+        List<Position> read = new ArrayList<>();
+        long next = from;
+        while (true) {
+            HistoryPage page = trajectory.read(next, limit);
+            assertThat(page.getSize()).isEqualTo(size);
+            assertThat(page.getPathValue()).isEqualTo(pathValue);
+            if (page.getPositions().isEmpty()) {
+                return read;
+            }
+            assertThat(page.getFrom()).isEqualTo(Math.max(next, page.getFirstAvailable()));
+            read.addAll(page.getPositions());
+            next = page.getFrom() + page.getPositions().size();
+        }
+    }
+
+    private static void assertSamePositions(List<Position> actual, List<Position> expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            Position a = actual.get(i);
+            Position e = expected.get(i);
+            assertThat(new int[]{a.getPosX(), a.getPosY(), a.getValue(), a.getDecay()})
+                    .as("position %d", i)
+                    .containsExactly(e.getPosX(), e.getPosY(), e.getValue(), e.getDecay());
+        }
+    }
+
+    // A walk over neighbour cells, with an occasional jump as after a reset
+    private static List<Position> randomFlight(long seed) {
+        Random random = new Random(seed);
+        List<Position> flight = new ArrayList<>(FLIGHT);
+        int x = 500;
+        int y = 500;
+        for (int i = 0; i < FLIGHT; i++) {
+            if (random.nextInt(200) == 0) {
+                x = random.nextInt(4096);
+                y = random.nextInt(4096);
+            } else {
+                x = Math.max(0, x + random.nextInt(3) - 1);
+                y = Math.max(0, y + random.nextInt(3) - 1);
+            }
+            flight.add(new Position(x, y, random.nextInt(100), random.nextInt(NavigationGrid.MAX_DECAY_VAL + 1)));
+        }
+        return flight;
+    }
+
+    private static long pathValue(List<Position> flight) {
+        long value = 0;
+        for (Position position : flight) {
+            value += position.getValue() + position.getDecay();
+        }
+        return value;
+    }
+}
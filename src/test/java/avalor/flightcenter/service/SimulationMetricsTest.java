@@ -0,0 +1,30 @@
+package avalor.flightcenter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimulationMetricsTest {
+
+    @Test
+    void pathCacheHitRatioSurvivesGarbageCollection() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new SimulationMetrics(registry).pathCacheLookups(3, 1);
+
+        System.gc();
+
+        assertThat(registry.get("flightcenter.path.cache.hit.ratio").gauge().value()).isEqualTo(0.75);
+    }
+
+    @Test
+    void pathCacheHitRatioIsZeroBeforeTheFirstLookup() {
+        SimulationMetrics metrics = new SimulationMetrics(new SimpleMeterRegistry());
+
+        assertThat(metrics.pathCacheHitRatio()).isZero();
+        metrics.pathCacheLookups(0, 4);
+        assertThat(metrics.pathCacheHitRatio()).isZero();
+        metrics.pathCacheLookups(4, 0);
+        assertThat(metrics.pathCacheHitRatio()).isEqualTo(0.5);
+    }
+}
@@ -0,0 +1,103 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.service.SimulationMetrics;
+import avalor.flightcenter.utils.SimulationClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds path services for the tests, with named settings instead of the positional constructor. Defaults to
+ * sequential A* ticks on a manual clock, with the path cache on and the reservations, clusters and history spill
+ * off.
+ */
+final class PathServiceBuilder {
+    static final int MAX_DRONES = 100;
+    static final int CACHE_CELLS = 4096;
+    static final int HISTORY_CHUNKS = 4;
+
+    private String planner = PathCalculator.ASTAR_PLANNER;
+    private ForkJoinPool tickPool;
+    private int maxDrones = MAX_DRONES;
+    private int cacheCells = CACHE_CELLS;
+    private int reservationWindow = 0;
+    private int clusterSize = 0;
+    private int historyChunks = HISTORY_CHUNKS;
+    private Path historyDir;
+    private SimulationClock clock;
+    private MapServiceImpl mapService;
+    private boolean deterministicTicks;
+
+    PathServiceBuilder planner(String planner) {
+        this.planner = planner;
+        return this;
+    }
+
+    PathServiceBuilder tickPool(ForkJoinPool tickPool) {
+        this.tickPool = tickPool;
+        return this;
+    }
+
+    PathServiceBuilder maxDrones(int maxDrones) {
+        this.maxDrones = maxDrones;
+        return this;
+    }
+
+    PathServiceBuilder cacheCells(int cacheCells) {
+        this.cacheCells = cacheCells;
+        return this;
+    }
+
+    PathServiceBuilder reservationWindow(int reservationWindow) {
+        this.reservationWindow = reservationWindow;
+        return this;
+    }
+
+    PathServiceBuilder clusterSize(int clusterSize) {
+        this.clusterSize = clusterSize;
+        return this;
+    }
+
+    PathServiceBuilder historyChunks(int historyChunks) {
+        this.historyChunks = historyChunks;
+        return this;
+    }
+
+    PathServiceBuilder historyDir(Path historyDir) {
+        this.historyDir = historyDir;
+        return this;
+    }
+
+    PathServiceBuilder clock(SimulationClock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    PathServiceBuilder mapService(MapServiceImpl mapService) {
+        this.mapService = mapService;
+        return this;
+    }
+
+    PathServiceBuilder deterministicTicks() {
+        this.deterministicTicks = true;
+        return this;
+    }
+
+    PathServiceImpl build() {
+        String plannerName = planner;
+        PathServiceImpl service = new PathServiceImpl(
+                ThreadLocal.withInitial(() -> PathCalculator.createPlanner(plannerName)), tickPool,
+                maxDrones, cacheCells, reservationWindow, clusterSize, historyChunks, historyDir,
+                clock != null ? clock : SimulationClock.manual(SimulationClock.Mode.REALTIME),
+                new SimulationMetrics(new SimpleMeterRegistry()));
+        if (mapService != null) {
+            service.setMapService(mapService);
+        }
+        if (deterministicTicks) {
+            service.setDeterministicTicks(true);
+        }
+        return service;
+    }
+}
@@ -0,0 +1,163 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.domain.ColorSnapshot;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.utils.CheckpointFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static avalor.flightcenter.domain.TestGrids.randomGrid;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PathServiceCheckpointTest {
+    private static final int SIZE = 48;
+    private static final int DRONES = 20;
+    private static final int VALUES = 10;
+    private static final int RESERVATION_WINDOW = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoresTheStateCapturedWhileTicksKeepRunning() throws IOException {
+        NavigationGrid grid = randomGrid(new Random(1), SIZE, SIZE, VALUES);
+        HookedMapService mapService = new HookedMapService();
+        PathServiceImpl service = newService(mapService);
+        startFleet(service, mapService, grid, 2);
+        runTicks(service, 200);
+        long captured = service.stateDigest();
+        int[] decayAtCapture = decay(grid);
+        // Ticks run after the state is captured and before the writer copies the decay ticks, so drones leaving
+        // their cells overwrite ticks the checkpoint must correct
+        mapService.duringCheckpoint = () -> runTicks(service, 30);
+
+        Path file = dir.resolve("session" + CheckpointFile.EXTENSION);
+        service.writeCheckpoint(file);
+
+        assertThat(service.stateDigest()).isNotEqualTo(captured);
+        assertThat(decay(grid)).isNotEqualTo(decayAtCapture);
+        MapServiceImpl restoredMap = new MapServiceImpl();
+        PathServiceImpl restored = newService(restoredMap);
+        restored.restoreCheckpoint(file);
+        assertThat(restored.stateDigest()).isEqualTo(captured);
+        assertThat(decay(restoredMap.getNavigationGrid())).isEqualTo(decayAtCapture);
+    }
+
+    @Test
+    void failsWhenTheDecayTicksAreRebasedDuringTheCheckpoint() throws IOException {
+        NavigationGrid grid = randomGrid(new Random(5), SIZE, SIZE, VALUES);
+        HookedMapService mapService = new HookedMapService();
+        PathServiceImpl service = newService(mapService);
+        startFleet(service, mapService, grid, 6);
+        runTicks(service, 20);
+        // The tick counter wraps within the ticks run during the checkpoint
+        grid.restoreTicks(Integer.MAX_VALUE - 5, grid.getResetTick());
+        mapService.duringCheckpoint = () -> runTicks(service, 10);
+        Path file = dir.resolve("session" + CheckpointFile.EXTENSION);
+
+        assertThatThrownBy(() -> service.writeCheckpoint(file))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("rebased");
+        assertThat(file).doesNotExist();
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+
+        // The failed checkpoint stopped its decay log, so the next one can start
+        long captured = service.stateDigest();
+        service.writeCheckpoint(file);
+        PathServiceImpl restored = newService(new MapServiceImpl());
+        restored.restoreCheckpoint(file);
+        assertThat(restored.stateDigest()).isEqualTo(captured);
+    }
+
+    @Test
+    void rejectsCorruptedCheckpoints() throws IOException {
+        MapServiceImpl mapService = new MapServiceImpl();
+        PathServiceImpl service = newService(mapService);
+        startFleet(service, mapService, randomGrid(new Random(7), SIZE, SIZE, VALUES), 8);
+        runTicks(service, 10);
+        Path file = dir.resolve("session" + CheckpointFile.EXTENSION);
+        service.writeCheckpoint(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer cell = ByteBuffer.allocate(1);
+            long offset = CheckpointFile.HEADER_SIZE + 17;
+            channel.read(cell, offset);
+            cell.put(0, (byte) (cell.get(0) ^ 1));
+            channel.write(cell.rewind(), offset);
+        }
+
+        assertThatThrownBy(() -> CheckpointFile.load(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("checksum");
+    }
+
+    private static PathServiceImpl newService(MapServiceImpl mapService) {
+        return new PathServiceBuilder()
+                .maxDrones(DRONES)
+                .reservationWindow(RESERVATION_WINDOW)
+                .mapService(mapService)
+                .deterministicTicks()
+                .build();
+    }
+
+    private static void startFleet(PathServiceImpl service, MapServiceImpl mapService, NavigationGrid grid, long seed) {
+        mapService.init(grid);
+        service.init(grid);
+        Random random = new Random(seed);
+        for (int i = 0; i < DRONES; i++) {
+            service.addDrone("drone-" + i, new Position(random.nextInt(SIZE), random.nextInt(SIZE), 0));
+        }
+    }
+
+    private static void runTicks(PathServiceImpl service, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            service.run();
+        }
+    }
+
+    private static int[] decay(NavigationGrid grid) {
+        int[] decay = new int[grid.size()];
+        for (int i = 0; i < decay.length; i++) {
+            decay[i] = grid.getDecay(i);
+        }
+        return decay;
+    }
+
+    /**
+     * Runs a task the first time the checkpoint writer reads the colors, i.e. after the state was captured under
+     * the service lock and before the decay ticks are copied.
+     */
+    private static final class HookedMapService extends MapServiceImpl {
+        private Runnable duringCheckpoint;
+
+        @Override
+        public ColorSnapshot getColorSnapshot() {
+            ColorSnapshot snapshot = super.getColorSnapshot();
+            if (duringCheckpoint == null) {
+                return snapshot;
+            }
+            Runnable task = duringCheckpoint;
+            duringCheckpoint = null;
+            byte[] colors = snapshot.getColors();
+            return new ColorSnapshot(snapshot.getSeq(), snapshot.getWidth(), snapshot.getHeight(), snapshot.getPalette(),
+                    new byte[][]{colors}, 30) {
+                @Override
+                public synchronized byte[] getColors() {
+                    task.run();
+                    return colors;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.domain.Drone;
+import avalor.flightcenter.domain.HistoryPage;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.Trajectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static avalor.flightcenter.domain.TestGrids.randomGrid;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pages the drone histories served by /path/history while their older chunks leave memory.
+ */
+class PathServiceHistoryTest {
+    private static final int SIZE = 160;
+    private static final int TICKS = 3 * Trajectory.CHUNK_ENTRIES + 200;
+    private static final int PAGE = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesTheWholeFlightFromTheSpillFiles() {
+        PathServiceImpl service = flyFleet(dir.resolve("history"));
+
+        for (int i = 0; i < 2; i++) {
+            Drone drone = service.findDroneByName("drone-" + i);
+            assertThat(drone.getHistorySize()).isGreaterThan(2L * Trajectory.CHUNK_ENTRIES);
+            assertThat(dir.resolve("history").resolve(drone.getId() + ".trj")).exists();
+
+            Flight flight = page(service, drone);
+            assertThat(flight.firstAvailable).isZero();
+            assertThat(flight.positions).isEqualTo(drone.getHistorySize());
+            // Every position was read back, so their values add up to the value of the whole flight
+            assertThat(flight.value).isEqualTo(drone.getTravelledPathValue());
+        }
+    }
+
+    @Test
+    void dropsOldChunksWithoutSpillDirectory() {
+        PathServiceImpl service = flyFleet(null);
+
+        for (int i = 0; i < 2; i++) {
+            Drone drone = service.findDroneByName("drone-" + i);
+            Flight flight = page(service, drone);
+            assertThat(flight.firstAvailable).isPositive();
+            assertThat(flight.positions).isEqualTo(drone.getHistorySize() - flight.firstAvailable);
+            assertThat(flight.value).isLessThan(drone.getTravelledPathValue());
+        }
+    }
+
+    private static PathServiceImpl flyFleet(Path historyDir) {
+        MapServiceImpl mapService = new MapServiceImpl();
+        // One chunk in memory per drone, so the older ones spill or drop
+        PathServiceImpl service = new PathServiceBuilder()
+                .maxDrones(2)
+                .historyChunks(1)
+                .historyDir(historyDir)
+                .mapService(mapService)
+                .build();
+        NavigationGrid grid = randomGrid(new Random(9), SIZE, SIZE, 10);
+        mapService.init(grid);
+        service.init(grid);
+        service.addDrone("drone-0", new Position(10, 10, 0));
+        service.addDrone("drone-1", new Position(150, 150, 0));
+        for (int tick = 0; tick < TICKS; tick++) {
+            service.run();
+        }
+        return service;
+    }
+
+    // Reads the history page by page, as a client of /path/history does
+    private static Flight page(PathServiceImpl service, Drone drone) {
+        Flight flight = new Flight();
+        long from = 0;
+        while (true) {
+            HistoryPage page = service.getHistory(drone.getName(), from, PAGE);
+            assertThat(page.getSize()).isEqualTo(drone.getHistorySize());
+            assertThat(page.getPathValue()).isEqualTo(drone.getTravelledPathValue());
+            if (page.getPositions().isEmpty()) {
+                return flight;
+            }
+            if (from == 0) {
+                flight.firstAvailable = page.getFirstAvailable();
+            }
+            for (Position position : page.getPositions()) {
+                flight.value += position.getValue() + position.getDecay();
+            }
+            flight.positions += page.getPositions().size();
+            from = page.getFrom() + page.getPositions().size();
+        }
+    }
+
+    private static final class Flight {
+        private long firstAvailable;
+        private long positions;
+        private long value;
+    }
+}
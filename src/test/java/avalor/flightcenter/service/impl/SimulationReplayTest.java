@@ -0,0 +1,153 @@
+package avalor.flightcenter.service.impl;
+
+import avalor.flightcenter.calculator.PathCalculator;
+import avalor.flightcenter.domain.NavigationGrid;
+import avalor.flightcenter.domain.Position;
+import avalor.flightcenter.domain.PositionReport;
+import avalor.flightcenter.utils.CheckpointFile;
+import avalor.flightcenter.utils.RecordingFile;
+import avalor.flightcenter.utils.SimulationClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static avalor.flightcenter.domain.TestGrids.randomGrid;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SimulationReplayTest {
+    private static final int SIZE = 128;
+    private static final int VALUES = 10;
+    private static final int MAX_DRONES = PathServiceBuilder.MAX_DRONES;
+    private static final int CACHE_CELLS = PathServiceBuilder.CACHE_CELLS;
+    private static final int RESERVATION_WINDOW = 8;
+    private static final int CLUSTER_SIZE = 16;
+    // Above the parallel tick threshold: recorded sessions must still advance their drones in fleet order
+    private static final int FLEET = 80;
+
+    private final ForkJoinPool tickPool = new ForkJoinPool(4);
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void shutdownPool() {
+        tickPool.shutdownNow();
+    }
+
+    @Test
+    void replayMatchesTheRecordedSessionAtEveryTick() throws IOException {
+        Path log = dir.resolve("session" + RecordingFile.EXTENSION);
+        SimulationClock clock = SimulationClock.manual(SimulationClock.Mode.REALTIME);
+        MapServiceImpl mapService = new MapServiceImpl();
+        PathServiceImpl service = new PathServiceBuilder()
+                .tickPool(tickPool)
+                .reservationWindow(RESERVATION_WINDOW)
+                .clusterSize(CLUSTER_SIZE)
+                .clock(clock)
+                .mapService(mapService)
+                .build();
+        service.startRecording(RecordingFile.create(log, PathCalculator.ASTAR_PLANNER, MAX_DRONES, CACHE_CELLS,
+                RESERVATION_WINDOW, CLUSTER_SIZE));
+
+        Random random = new Random(17);
+        NavigationGrid grid = randomGrid(random, SIZE, SIZE, VALUES);
+        mapService.init(grid);
+        service.init(grid);
+        for (int i = 0; i < FLEET; i++) {
+            service.addDrone("drone-" + i, randomPosition(random));
+        }
+        List<Long> recorded = new ArrayList<>();
+        for (int tick = 0; tick < 240; tick++) {
+            // Inputs between the ticks, as drones and clients send them
+            if (tick % 7 == 3) {
+                service.recordDronePosition("drone-" + random.nextInt(FLEET), randomPosition(random));
+            }
+            if (tick % 11 == 5) {
+                List<PositionReport> reports = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    reports.add(new PositionReport("drone-" + random.nextInt(FLEET + 5), randomPosition(random)));
+                }
+                service.recordDronePositions(reports);
+            }
+            if (tick == 60) {
+                service.addDrone("late-drone", randomPosition(random));
+            }
+            if (tick == 100) {
+                clock.configure(SimulationClock.Mode.ACCELERATED, 1, 4);
+            }
+            if (tick == 150) {
+                Path checkpoint = dir.resolve("session" + CheckpointFile.EXTENSION);
+                service.writeCheckpoint(checkpoint);
+                service.restoreCheckpoint(checkpoint);
+            }
+            service.run();
+            recorded.add(service.stateDigest());
+        }
+        service.stopRecording();
+
+        List<Long> replayed = new ArrayList<>();
+        SimulationReplay.Result result = SimulationReplay.replay(log, null, replayed::add);
+
+        assertThat(result.getTicks()).isEqualTo(recorded.size());
+        assertThat(replayed).hasSameSizeAs(recorded);
+        for (int tick = 0; tick < recorded.size(); tick++) {
+            assertThat(replayed.get(tick)).as("digest after tick %d", tick).isEqualTo(recorded.get(tick));
+        }
+        assertThat(result.matches()).isTrue();
+        assertThat(result.getDigest()).isEqualTo(recorded.getLast());
+        // The ticks did change the state
+        assertThat(recorded.getFirst()).isNotEqualTo(recorded.getLast());
+    }
+
+    @Test
+    void replaysCutShortRecordingsUpToTheirLastRecord() throws IOException {
+        Path log = dir.resolve("session" + RecordingFile.EXTENSION);
+        MapServiceImpl mapService = new MapServiceImpl();
+        PathServiceImpl service = new PathServiceBuilder().mapService(mapService).build();
+        RecordingFile.Writer writer = RecordingFile.create(log, PathCalculator.ASTAR_PLANNER, MAX_DRONES, CACHE_CELLS, 0, 0);
+        service.startRecording(writer);
+        Random random = new Random(23);
+        NavigationGrid grid = randomGrid(random, SIZE, SIZE, VALUES);
+        mapService.init(grid);
+        service.init(grid);
+        service.addDrone("drone", randomPosition(random));
+        for (int tick = 0; tick < 20; tick++) {
+            service.run();
+        }
+        writer.flush();
+
+        SimulationReplay.Result result = SimulationReplay.replay(log);
+
+        assertThat(result.getRecordedDigest()).isNull();
+        assertThat(result.matches()).isFalse();
+        assertThat(result.getTicks()).isEqualTo(20);
+        assertThat(result.getDigest()).isEqualTo(service.stateDigest());
+    }
+
+    @Test
+    void rejectsOtherFormatVersions() throws IOException {
+        Path log = dir.resolve("session" + RecordingFile.EXTENSION);
+        RecordingFile.create(log, PathCalculator.ASTAR_PLANNER, MAX_DRONES, CACHE_CELLS, 0, 0).finish(0);
+        byte[] content = Files.readAllBytes(log);
+        content[4] = 1;
+        content[5] = 0;
+        Files.write(log, content);
+
+        assertThatThrownBy(() -> SimulationReplay.replay(log))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("version 1");
+    }
+
+    private static Position randomPosition(Random random) {
+        return new Position(random.nextInt(SIZE), random.nextInt(SIZE), 0);
+    }
+}
@@ -0,0 +1,80 @@
+package avalor.flightcenter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IntHashSetTest {
+
+    @Test
+    void addsAndRemovesValues() {
+        IntHashSet set = new IntHashSet();
+
+        assertThat(set.isEmpty()).isTrue();
+        assertThat(set.add(3)).isTrue();
+        assertThat(set.add(0)).isTrue();
+        assertThat(set.add(3)).isFalse();
+        assertThat(set.size()).isEqualTo(2);
+        assertThat(set.contains(3)).isTrue();
+        assertThat(set.contains(0)).isTrue();
+        assertThat(set.contains(4)).isFalse();
+
+        assertThat(set.remove(3)).isTrue();
+        assertThat(set.remove(3)).isFalse();
+        assertThat(set.contains(3)).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+
+        set.clear();
+        assertThat(set.isEmpty()).isTrue();
+        assertThat(set.contains(0)).isFalse();
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        IntHashSet set = new IntHashSet(2);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(set.add(i * 7)).isTrue();
+        }
+
+        assertThat(set.size()).isEqualTo(10_000);
+        for (int i = 0; i < 70_000; i++) {
+            assertThat(set.contains(i)).isEqualTo(i % 7 == 0);
+        }
+    }
+
+    @Test
+    void rejectsNegativeValues() {
+        IntHashSet set = new IntHashSet();
+        set.add(1);
+
+        assertThatThrownBy(() -> set.add(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(set.contains(-1)).isFalse();
+        assertThat(set.remove(-1)).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+    }
+
+    @Test
+    void matchesHashSetUnderRandomOperations() {
+        // A small value range keeps the probe runs long, so removals have entries to shift back
+        Random random = new Random(11);
+        IntHashSet set = new IntHashSet(4);
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            int value = random.nextInt(512);
+            switch (random.nextInt(3)) {
+                case 0 -> assertThat(set.add(value)).isEqualTo(expected.add(value));
+                case 1 -> assertThat(set.remove(value)).isEqualTo(expected.remove(value));
+                default -> assertThat(set.contains(value)).isEqualTo(expected.contains(value));
+            }
+            assertThat(set.size()).isEqualTo(expected.size());
+        }
+        for (int value = 0; value < 512; value++) {
+            assertThat(set.contains(value)).isEqualTo(expected.contains(value));
+        }
+    }
+}
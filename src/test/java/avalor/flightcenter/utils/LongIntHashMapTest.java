@@ -0,0 +1,100 @@
+package avalor.flightcenter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongIntHashMapTest {
+
+    private static final int MISSING = -7;
+
+    @Test
+    void putsAndRemovesKeys() {
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.put(3, 30)).isEqualTo(MISSING);
+        assertThat(map.put(0, 0)).isEqualTo(MISSING);
+        assertThat(map.put(3, 31)).isEqualTo(30);
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get(3)).isEqualTo(31);
+        assertThat(map.get(0)).isZero();
+        assertThat(map.get(4)).isEqualTo(MISSING);
+        assertThat(map.containsKey(0)).isTrue();
+        assertThat(map.containsKey(4)).isFalse();
+
+        assertThat(map.remove(3)).isEqualTo(31);
+        assertThat(map.remove(3)).isEqualTo(MISSING);
+        assertThat(map.containsKey(3)).isFalse();
+        assertThat(map.size()).isEqualTo(1);
+
+        map.clear();
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.containsKey(0)).isFalse();
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        LongIntHashMap map = new LongIntHashMap(2, MISSING);
+        for (int i = 0; i < 10_000; i++) {
+            // Keys above the int range, as a tick in the high half and a cell in the low half
+            map.put((long) i << 32 | i * 7, i);
+        }
+
+        assertThat(map.size()).isEqualTo(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(map.get((long) i << 32 | i * 7)).isEqualTo(i);
+            assertThat(map.containsKey((long) i << 32 | i * 7 + 1)).isFalse();
+        }
+    }
+
+    @Test
+    void rejectsNegativeKeys() {
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+        map.put(1, 10);
+
+        assertThatThrownBy(() -> map.put(-1, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(map.get(-1)).isEqualTo(MISSING);
+        assertThat(map.containsKey(-1)).isFalse();
+        assertThat(map.remove(-1)).isEqualTo(MISSING);
+        assertThat(map.remove(Long.MIN_VALUE)).isEqualTo(MISSING);
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.get(1)).isEqualTo(10);
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        // A small key range keeps the probe runs long, so removals have entries to shift back
+        Random random = new Random(11);
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = (long) random.nextInt(8) << 32 | random.nextInt(64);
+            int value = random.nextInt(1000);
+            switch (random.nextInt(3)) {
+                case 0 -> assertThat(map.put(key, value)).isEqualTo(orMissing(expected.put(key, value)));
+                case 1 -> assertThat(map.remove(key)).isEqualTo(orMissing(expected.remove(key)));
+                default -> assertThat(map.get(key)).isEqualTo(expected.getOrDefault(key, MISSING).intValue());
+            }
+            if (random.nextInt(1000) == 0) {
+                expected.clear();
+                map.clear();
+            }
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        for (long key = 0; key < 8L << 32; key += 1L << 32) {
+            for (int cell = 0; cell < 64; cell++) {
+                assertThat(map.containsKey(key | cell)).isEqualTo(expected.containsKey(key | cell));
+            }
+        }
+    }
+
+    private static int orMissing(Integer value) {
+        return value == null ? MISSING : value;
+    }
+}
@@ -0,0 +1,59 @@
+package avalor.flightcenter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RunLengthTest {
+
+    @Test
+    void roundTripsRandomRuns() {
+        Random random = new Random(5);
+        for (int n = 0; n < 500; n++) {
+            byte[] values = new byte[random.nextInt(5000)];
+            int i = 0;
+            while (i < values.length) {
+                // Mostly short runs, some long enough for multi-byte lengths
+                int run = Math.min(values.length - i, random.nextInt(10) == 0 ? random.nextInt(400) + 1 : random.nextInt(4) + 1);
+                Arrays.fill(values, i, i + run, (byte) random.nextInt(8));
+                i += run;
+            }
+
+            assertThat(RunLength.decode(RunLength.encode(values), values.length)).isEqualTo(values);
+        }
+    }
+
+    @Test
+    void encodesLongRunsAsVarints() {
+        byte[] values = new byte[300_000];
+        Arrays.fill(values, (byte) 3);
+
+        byte[] encoded = RunLength.encode(values);
+
+        // 300000 = 0x493E0: three varint bytes, then the value
+        assertThat(encoded).containsExactly((byte) 0xE0, (byte) 0xA7, (byte) 0x12, (byte) 3);
+        assertThat(RunLength.decode(encoded, values.length)).isEqualTo(values);
+    }
+
+    @Test
+    void roundTripsEmptyArray() {
+        assertThat(RunLength.encode(new byte[0])).isEmpty();
+        assertThat(RunLength.decode(new byte[0], 0)).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedData() {
+        byte[] encoded = RunLength.encode(new byte[]{1, 1, 2});
+
+        assertThatThrownBy(() -> RunLength.decode(encoded, 4)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RunLength.decode(encoded, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RunLength.decode(Arrays.copyOf(encoded, encoded.length - 1), 3))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RunLength.decode(new byte[]{(byte) 0x80}, 3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RunLength.decode(new byte[]{0, 1}, 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+}